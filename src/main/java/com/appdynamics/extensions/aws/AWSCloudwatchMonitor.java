@@ -8,9 +8,18 @@
 package com.appdynamics.extensions.aws;
 
 import com.appdynamics.extensions.ABaseMonitor;
+import com.appdynamics.extensions.MetricWriteHelper;
 import com.appdynamics.extensions.TasksExecutionServiceProvider;
+import com.appdynamics.extensions.aws.collectors.AWSClientCache;
+import com.appdynamics.extensions.aws.collectors.CollectorRuntime;
+import com.appdynamics.extensions.aws.collectors.CycleDeadline;
+import com.appdynamics.extensions.aws.collectors.MetricSink;
+import com.appdynamics.extensions.aws.collectors.SeriesWatermarkStore;
+import com.appdynamics.extensions.aws.config.ConcurrencyConfig;
 import com.appdynamics.extensions.aws.config.Configuration;
+import com.appdynamics.extensions.aws.config.MetricsConfig;
 import com.appdynamics.extensions.aws.config.TaskSchedule;
+import com.appdynamics.extensions.aws.metric.processors.MetricDiscoveryCache;
 import com.appdynamics.extensions.aws.providers.RegionEndpointProvider;
 import com.appdynamics.extensions.conf.MonitorContext;
 import com.appdynamics.extensions.conf.MonitorContextConfiguration;
@@ -25,6 +34,7 @@ import java.io.FileNotFoundException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @param <T> Configuration class
@@ -32,11 +42,20 @@ import java.util.Map;
  */
 public abstract class AWSCloudwatchMonitor<T> extends ABaseMonitor {
 
+    // share of the task interval a run may take, the rest is left for the upload
+    private static final int CYCLE_DEADLINE_PERCENT_OF_INTERVAL = 90;
+
     private Class<T> clazz;
     private T config;
 
     private JobScheduleModule jobScheduleModule = new JobScheduleModule();
 
+    private volatile int taskDelaySeconds = -1;
+
+    private volatile MetricSink metricSink;
+
+    private volatile CycleDeadline cycleDeadline;
+
     public AWSCloudwatchMonitor(Class<T> clazz) {
         this.clazz = clazz;
     }
@@ -50,6 +69,23 @@ public abstract class AWSCloudwatchMonitor<T> extends ABaseMonitor {
             getLogger().error("Error wile reading the config file", e);
         }
 
+        //Watermarks of the previous config may no longer match the configured series
+        SeriesWatermarkStore.getInstance().clear();
+
+        //Metrics are listed again with the reloaded dimension filters, those saved by the previous run
+        //are only used until then
+        MetricsConfig metricsConfig = config != null ? ((Configuration) config).getMetricsConfig() : null;
+        MetricDiscoveryCache.getInstance().reset(metricsConfig != null ? metricsConfig.getDiscoverySnapshotFile() : null);
+
+        //Async clients share the event loop configured by the previous config
+        AWSClientCache.getInstance().clearAsync();
+
+        //Collector thread pools live across cycles, restart them with the reloaded thread counts
+        ConcurrencyConfig concurrencyConfig = config != null ? ((Configuration) config).getConcurrencyConfig() : null;
+        if (concurrencyConfig != null) {
+            CollectorRuntime.getInstance().start(concurrencyConfig, getNoOfConcurrentNamespaces(config));
+        }
+
         initialize(config);
         initializeJobScheduler();
     }
@@ -87,6 +123,8 @@ public abstract class AWSCloudwatchMonitor<T> extends ABaseMonitor {
 
         dynamicConfig.put("taskSchedule", taskScheduleMap);
 
+        this.taskDelaySeconds = taskDelaySeconds;
+
         jobScheduleModule.initScheduledJob(dynamicConfig, monitorName, monitorJob);
 
         MonitorContextConfiguration contextConfiguration = getContextConfiguration();
@@ -98,17 +136,85 @@ public abstract class AWSCloudwatchMonitor<T> extends ABaseMonitor {
     protected void doRun(TasksExecutionServiceProvider serviceProvider) {
         getLogger().info("Starting AWS Cloudwatch Monitoring task");
 
+        MetricWriteHelper metricWriteHelper = serviceProvider.getMetricWriteHelper();
+        MetricWriteHelperSink streamingSink = isStreamingUpload() ? new MetricWriteHelperSink(metricWriteHelper) : null;
+        metricSink = streamingSink;
+        cycleDeadline = newCycleDeadline();
+
+        boolean uploaded = false;
+
         try {
             List<Metric> statsForUpload = getStatsForUpload(config);
 
-            serviceProvider.getMetricWriteHelper().transformAndPrintMetrics(statsForUpload);
-            serviceProvider.getMetricWriteHelper().onComplete();
+            if (streamingSink != null) {
+                streamingSink.write(statsForUpload);
+
+            } else {
+                metricWriteHelper.transformAndPrintMetrics(statsForUpload);
+            }
+
+            uploaded = true;
 
         } catch (Exception ex) {
             getLogger().error("Unfortunately an issue has occurred: ", ex);
+
+        } finally {
+            if (streamingSink != null) {
+                streamingSink.close();
+            }
+
+            metricSink = null;
+            cycleDeadline = null;
+        }
+
+        //Once the sink is closed, so that regions completing late are not written after it
+        if (uploaded) {
+            metricWriteHelper.onComplete();
         }
     }
 
+    /**
+     * The run has to be over before the next one is scheduled, i.e. within the task interval,
+     * or it would delay it. Collectors stop at the deadline and the metrics collected by then
+     * are uploaded.
+     */
+    private CycleDeadline newCycleDeadline() {
+        if (taskDelaySeconds <= 0) {
+            return null;
+        }
+
+        return CycleDeadline.after(TimeUnit.SECONDS.toMillis(taskDelaySeconds) * CYCLE_DEADLINE_PERCENT_OF_INTERVAL / 100,
+                TimeUnit.MILLISECONDS);
+    }
+
+    private boolean isStreamingUpload() {
+        ConcurrencyConfig concurrencyConfig = config != null ? ((Configuration) config).getConcurrencyConfig() : null;
+        return concurrencyConfig != null && concurrencyConfig.isStreamingUpload();
+    }
+
+    /**
+     * @return the sink to set on the namespace collectors of the current run
+     * if streamingUpload is enabled, null otherwise
+     */
+    protected MetricSink getMetricSink() {
+        return metricSink;
+    }
+
+    /**
+     * @return the deadline to set on the namespace collectors of the current run,
+     * null if the task interval is unknown
+     */
+    protected CycleDeadline getCycleDeadline() {
+        return cycleDeadline;
+    }
+
+    /**
+     * @return the number of namespaces collected at the same time, which share the collector thread pools
+     */
+    protected int getNoOfConcurrentNamespaces(T config) {
+        return 1;
+    }
+
     protected void initialiseRegionServiceProviders(T config) {
         Configuration thisConfig = (Configuration) config;
         RegionEndpointProvider regionEndpointProvider = RegionEndpointProvider.getInstance();
@@ -122,4 +228,38 @@ public abstract class AWSCloudwatchMonitor<T> extends ABaseMonitor {
     protected abstract List<Metric> getStatsForUpload(T config);
 
     protected abstract Logger getLogger();
+
+    /**
+     * Uploads the metrics of each region as it is collected. Regions completing after
+     * the run, i.e. after their collector timed out, are dropped rather than uploaded
+     * with the next run.
+     */
+    private class MetricWriteHelperSink implements MetricSink {
+
+        private final MetricWriteHelper metricWriteHelper;
+
+        private boolean closed;
+
+        private MetricWriteHelperSink(MetricWriteHelper metricWriteHelper) {
+            this.metricWriteHelper = metricWriteHelper;
+        }
+
+        public void write(List<Metric> metrics) {
+            synchronized (metricWriteHelper) {
+                if (closed) {
+                    getLogger().warn(String.format("Dropping %s metrics collected after the end of the run",
+                            metrics.size()));
+                    return;
+                }
+
+                metricWriteHelper.transformAndPrintMetrics(metrics);
+            }
+        }
+
+        private void close() {
+            synchronized (metricWriteHelper) {
+                closed = true;
+            }
+        }
+    }
 }
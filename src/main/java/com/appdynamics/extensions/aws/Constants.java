@@ -21,5 +21,11 @@ public class Constants {
 
     public static final int DEFAULT_MAX_ERROR_RETRY = 0;
 
+    public static final int MAX_METRIC_DATA_QUERIES_PER_REQUEST = 500;
+
+    public static final int GET_METRIC_STATISTICS_REQUESTS_PER_SECOND_QUOTA = 400;
+
+    public static final int GET_METRIC_DATA_REQUESTS_PER_SECOND_QUOTA = 50;
+
     public static final String METRIC_PATH_SEPARATOR = "|";
 }
\ No newline at end of file
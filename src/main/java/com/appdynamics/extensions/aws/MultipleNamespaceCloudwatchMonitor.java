@@ -10,6 +10,7 @@ package com.appdynamics.extensions.aws;
 import static com.appdynamics.extensions.aws.Constants.DEFAULT_NO_OF_THREADS;
 import static com.appdynamics.extensions.aws.Constants.DEFAULT_THREAD_TIMEOUT;
 
+import com.appdynamics.extensions.aws.collectors.CycleDeadline;
 import com.appdynamics.extensions.aws.collectors.NamespaceMetricStatisticsCollector;
 import com.appdynamics.extensions.metrics.Metric;
 
@@ -21,8 +22,8 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 /**
  * @param <T> Configuration class
@@ -70,32 +71,52 @@ public abstract class MultipleNamespaceCloudwatchMonitor<T> extends AWSCloudwatc
                 new ExecutorCompletionService<List<Metric>>(threadPool);
 
         for (NamespaceMetricStatisticsCollector namespaceCollector : namespaceMetricsCollectors) {
+            namespaceCollector.setMetricSink(getMetricSink());
+            namespaceCollector.setCycleDeadline(getCycleDeadline());
             namespaceCollectorTasks.submit(namespaceCollector);
         }
 
         return namespaceCollectorTasks;
     }
 
+    /**
+     * Waits for the namespaces as they complete, until the deadline of the run plus the grace
+     * period of the namespaces, or if unknown, up to DEFAULT_THREAD_TIMEOUT seconds for all of them
+     */
     private void collectMetrics(CompletionService<List<Metric>> parallelTasks,
                                 int taskSize, List<Metric> allNamespacesStats) {
+        CycleDeadline cycleDeadline = getCycleDeadline();
+        long deadline = cycleDeadline != null ? cycleDeadline.getDeadlineNanos(CycleDeadline.Level.NAMESPACE) :
+                System.nanoTime() + TimeUnit.SECONDS.toNanos(DEFAULT_THREAD_TIMEOUT);
 
         for (int index = 0; index < taskSize; index++) {
             try {
-                List<Metric> namespaceStats =
-                        parallelTasks.take().get(DEFAULT_THREAD_TIMEOUT, TimeUnit.SECONDS);
+                Future<List<Metric>> namespaceTask =
+                        parallelTasks.poll(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
 
-                allNamespacesStats.addAll(namespaceStats);
+                if (namespaceTask == null) {
+                    getLogger().error(String.format("Task timed out. %s of %s namespaces did not complete in time",
+                            taskSize - index, taskSize));
+                    break;
+                }
+
+                allNamespacesStats.addAll(namespaceTask.get());
 
             } catch (InterruptedException e) {
                 getLogger().error("Task interrupted. ", e);
+                Thread.currentThread().interrupt();
+                break;
             } catch (ExecutionException e) {
                 getLogger().error("Task execution failed. ", e);
-            } catch (TimeoutException e) {
-                getLogger().error("Task timed out. ", e);
             }
         }
     }
 
+    @Override
+    protected int getNoOfConcurrentNamespaces(T config) {
+        return getNoOfNamespaceThreadsToUse(config);
+    }
+
     private int getNoOfNamespaceThreadsToUse(T config) {
         int noOfThreads = getNoOfNamespaceThreads(config);
         return noOfThreads > 0 ? noOfThreads : DEFAULT_NO_OF_THREADS;
@@ -28,7 +28,10 @@ public abstract class SingleNamespaceCloudwatchMonitor<T> extends AWSCloudwatchM
      */
     @Override
     protected List<Metric> getStatsForUpload(T config) {
-        return getNamespaceMetricsCollector(config).call();
+        NamespaceMetricStatisticsCollector namespaceMetricsCollector = getNamespaceMetricsCollector(config);
+        namespaceMetricsCollector.setMetricSink(getMetricSink());
+        namespaceMetricsCollector.setCycleDeadline(getCycleDeadline());
+        return namespaceMetricsCollector.call();
     }
 
     protected abstract NamespaceMetricStatisticsCollector getNamespaceMetricsCollector(T config);
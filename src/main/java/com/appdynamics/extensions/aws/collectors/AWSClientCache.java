@@ -1,9 +1,13 @@
 package com.appdynamics.extensions.aws.collectors;
 
+import com.appdynamics.extensions.aws.config.AwsAsyncClientConfig;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchAsyncClient;
 import software.amazon.awssdk.services.cloudwatch.CloudWatchClient;
 
+import java.util.function.Supplier;
+
 /**
  * @author Akshay Srivastava
  */
@@ -13,8 +17,13 @@ public class AWSClientCache {
 
     private final Cache<String, CloudWatchClient> cloudwatchClientCache;
 
+    private final Cache<String, CloudWatchAsyncClient> cloudwatchAsyncClientCache;
+
+    private AwsAsyncClientConfig asyncClientConfig;
+
     public AWSClientCache() {
         cloudwatchClientCache = CacheBuilder.newBuilder().build();
+        cloudwatchAsyncClientCache = CacheBuilder.newBuilder().build();
     }
 
     public void put(Object regionInfo, CloudWatchClient cloudwatchClient) {
@@ -25,6 +34,42 @@ public class AWSClientCache {
         return cloudwatchClientCache.getIfPresent(String.valueOf(regionInfo));
     }
 
+    public void putAsync(Object regionInfo, CloudWatchAsyncClient cloudwatchAsyncClient) {
+        cloudwatchAsyncClientCache.put(String.valueOf(regionInfo), cloudwatchAsyncClient);
+    }
+
+    public CloudWatchAsyncClient getAsync(Object regionInfo) {
+        return cloudwatchAsyncClientCache.getIfPresent(String.valueOf(regionInfo));
+    }
+
+    /**
+     * Returns the config shared by all async clients, so that they
+     * all run on the same event loop. Created on first use, until {@link #clearAsync()}.
+     */
+    public synchronized AwsAsyncClientConfig getAsyncClientConfig(Supplier<AwsAsyncClientConfig> asyncClientConfigSupplier) {
+        if (asyncClientConfig == null) {
+            asyncClientConfig = asyncClientConfigSupplier.get();
+        }
+
+        return asyncClientConfig;
+    }
+
+    /**
+     * Closes the async clients along with the event loop they share,
+     * so that they are created again with the config of the next use
+     */
+    public synchronized void clearAsync() {
+        for (CloudWatchAsyncClient cloudwatchAsyncClient : cloudwatchAsyncClientCache.asMap().values()) {
+            cloudwatchAsyncClient.close();
+        }
+        cloudwatchAsyncClientCache.invalidateAll();
+
+        if (asyncClientConfig != null) {
+            asyncClientConfig.getHttpClient().close();
+            asyncClientConfig = null;
+        }
+    }
+
     public static AWSClientCache getInstance() {
         if (instance == null) {
             instance = new AWSClientCache();
@@ -18,25 +18,16 @@ import com.appdynamics.extensions.aws.metric.AccountMetricStatistics;
 import com.appdynamics.extensions.aws.metric.RegionMetricStatistics;
 import com.appdynamics.extensions.aws.metric.processors.MetricsProcessor;
 import com.appdynamics.extensions.aws.util.AWSUtil;
-import com.appdynamics.extensions.executorservice.MonitorExecutorService;
-import com.appdynamics.extensions.executorservice.MonitorThreadPoolExecutor;
 import com.appdynamics.extensions.logging.ExtensionsLoggerFactory;
-import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.RateLimiter;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
 
 
-import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executors;
 import java.util.concurrent.FutureTask;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.LongAdder;
 
 import static com.appdynamics.extensions.aws.Constants.DEFAULT_MAX_ERROR_RETRY;
@@ -78,6 +69,14 @@ public class AccountMetricStatisticsCollector implements Callable<AccountMetricS
 
     private MetricsConfig metricsConfig;
 
+    private boolean virtualThreads;
+
+    private int maxConcurrentRequestsPerRegion;
+
+    private MetricSink metricSink;
+
+    private CycleDeadline cycleDeadline;
+
     private AccountMetricStatisticsCollector(Builder builder) {
         this.account = builder.account;
         this.noOfMetricThreadsPerRegion = builder.noOfMetricThreadsPerRegion;
@@ -90,6 +89,10 @@ public class AccountMetricStatisticsCollector implements Callable<AccountMetricS
         this.metricPrefix = builder.metricPrefix;
         this.metricsConfig = builder.metricsConfig;
         this.threadTimeOut = builder.threadTimeOut;
+        this.virtualThreads = builder.virtualThreads;
+        this.maxConcurrentRequestsPerRegion = builder.maxConcurrentRequestsPerRegion;
+        this.metricSink = builder.metricSink;
+        this.cycleDeadline = builder.cycleDeadline;
 
         setNoOfRegionThreadsPerAccount(builder.noOfRegionThreadsPerAccount);
         setMaxErrorRetrySize(builder.maxErrorRetrySize);
@@ -99,12 +102,13 @@ public class AccountMetricStatisticsCollector implements Callable<AccountMetricS
      * Loops through each region for specified account and hands
      * off region metrics retrieval to {@link RegionMetricStatisticsCollector}
      * <p>
-     * Returns the accumulated metrics statistics for specified account
+     * Returns the accumulated metrics statistics for specified account, without the
+     * regions already written to the {@link MetricSink} if any
      */
     public AccountMetricStatistics call() {
         AccountMetricStatistics accountStats = null;
 
-        MonitorExecutorService executorService = null;
+        CollectorExecutor executorService = null;
 
         try {
             validateAccount(account);
@@ -123,12 +127,12 @@ public class AccountMetricStatisticsCollector implements Callable<AccountMetricS
 
             AwsClientConfig awsClientConfig = AWSUtil.createAwsClientConfiguration(maxErrorRetrySize, proxyConfig);
 
-            executorService = new MonitorThreadPoolExecutor((ThreadPoolExecutor) Executors.newFixedThreadPool(noOfRegionThreadsPerAccount));
+            executorService = CollectorExecutor.create(CollectorRuntime.Level.REGION, virtualThreads, noOfRegionThreadsPerAccount);
 
 
-            List<FutureTask<RegionMetricStatistics>> tasks = createConcurrentRegionTasks(
+            TaskCompletionQueue<RegionMetricStatistics> tasks = createConcurrentRegionTasks(
                     executorService, account.getRegions(), awsCredentials, awsClientConfig);
-            collectMetrics(tasks, account.getRegions().size(), accountStats);
+            collectMetrics(tasks, accountStats);
 
         } catch (Exception e) {
             throw new AwsException(
@@ -138,7 +142,7 @@ public class AccountMetricStatisticsCollector implements Callable<AccountMetricS
                             account.getDisplayAccountName()), e);
 
         } finally {
-            if (executorService != null && !executorService.isShutdown()) {
+            if (executorService != null) {
                 executorService.shutdown();
             }
         }
@@ -147,13 +151,16 @@ public class AccountMetricStatisticsCollector implements Callable<AccountMetricS
         return accountStats;
     }
 
-    private List<FutureTask<RegionMetricStatistics>> createConcurrentRegionTasks(
-            MonitorExecutorService executorService,
+    private TaskCompletionQueue<RegionMetricStatistics> createConcurrentRegionTasks(
+            CollectorExecutor executorService,
             Set<String> regions,
             StaticCredentialsProvider awsCredentials,
             AwsClientConfig awsClientConfig) {
 
-        List<FutureTask<RegionMetricStatistics>> futureTasks = Lists.newArrayList();
+        TaskCompletionQueue<RegionMetricStatistics> futureTasks = new TaskCompletionQueue<RegionMetricStatistics>();
+        long deadline = CycleDeadline.deadlineNanos(cycleDeadline, threadTimeOut);
+        RegionMetricsWriter regionMetricsWriter = metricSink != null ?
+                new RegionMetricsWriter(metricSink, metricsProcessor) : null;
 
         for (String region : regions) {
             RegionMetricStatisticsCollector regionTask =
@@ -169,34 +176,36 @@ public class AccountMetricStatisticsCollector implements Callable<AccountMetricS
                             .withPrefix(metricPrefix)
                             .withMetricsConfig(metricsConfig)
                             .withAmazonCloudWatchConfig(awsCredentials, awsClientConfig)
+                            .withVirtualThreads(virtualThreads)
+                            .withMaxConcurrentRequests(maxConcurrentRequestsPerRegion)
+                            .withCycleDeadline(cycleDeadline)
                             .build();
 
-            FutureTask<RegionMetricStatistics> regionTaskExecutor = new FutureTask<RegionMetricStatistics>(regionTask);
+            //Written by the region thread, so that regions are not held up by the slower ones
+            Callable<RegionMetricStatistics> regionCallable = regionMetricsWriter == null ? regionTask :
+                    () -> regionMetricsWriter.write(account.getDisplayAccountName(), regionTask.call());
+
+            FutureTask<RegionMetricStatistics> regionTaskExecutor = futureTasks.newTask(regionCallable);
 
-            executorService.submit("AccountMetricStatisticsCollector", regionTaskExecutor);
-            futureTasks.add(regionTaskExecutor);
+            executorService.submit("AccountMetricStatisticsCollector", regionTaskExecutor, deadline);
         }
 
         return futureTasks;
     }
 
-    private void collectMetrics(List<FutureTask<RegionMetricStatistics>> parallelTasks,
-                                int taskSize, AccountMetricStatistics accountMetricStatistics) {
+    /**
+     * Waits for the regions as they complete, until the deadline of the cycle if any,
+     * plus the grace period of the regions, otherwise up to threadTimeOut seconds for all of them
+     */
+    private void collectMetrics(TaskCompletionQueue<RegionMetricStatistics> parallelTasks,
+                                AccountMetricStatistics accountMetricStatistics) {
+        long deadline = CycleDeadline.deadlineNanos(cycleDeadline, CycleDeadline.Level.REGION, threadTimeOut);
 
-        for (FutureTask<RegionMetricStatistics> task : parallelTasks) {
-            try {
-                RegionMetricStatistics regionStats = task.get(threadTimeOut, TimeUnit.SECONDS);
+        for (RegionMetricStatistics regionStats : parallelTasks.collect(deadline)) {
+            if (regionStats != null) {
                 accountMetricStatistics.add(regionStats);
-
-            } catch (InterruptedException e) {
-                LOGGER.error("Task interrupted. ", e);
-            } catch (ExecutionException e) {
-                LOGGER.error("Task execution failed. ", e);
-            } catch (TimeoutException e) {
-                LOGGER.error("Task timed out. ", e);
             }
         }
-
     }
 
     private void setMaxErrorRetrySize(int maxErrorRetrySize) {
@@ -228,6 +237,10 @@ public class AccountMetricStatisticsCollector implements Callable<AccountMetricS
         private LongAdder awsRequestsCounter;
         private String metricPrefix;
         private MetricsConfig metricsConfig;
+        private boolean virtualThreads;
+        private int maxConcurrentRequestsPerRegion;
+        private MetricSink metricSink;
+        private CycleDeadline cycleDeadline;
 
         public Builder withAccount(Account account) {
             this.account = account;
@@ -297,6 +310,26 @@ public class AccountMetricStatisticsCollector implements Callable<AccountMetricS
             this.metricsConfig = metricsConfig;
             return this;
         }
+
+        public Builder withVirtualThreads(boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+            return this;
+        }
+
+        public Builder withMaxConcurrentRequestsPerRegion(int maxConcurrentRequestsPerRegion) {
+            this.maxConcurrentRequestsPerRegion = maxConcurrentRequestsPerRegion;
+            return this;
+        }
+
+        public Builder withMetricSink(MetricSink metricSink) {
+            this.metricSink = metricSink;
+            return this;
+        }
+
+        public Builder withCycleDeadline(CycleDeadline cycleDeadline) {
+            this.cycleDeadline = cycleDeadline;
+            return this;
+        }
     }
 
 }
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2018. AppDynamics LLC and its affiliates.
+ * All Rights Reserved.
+ * This is unpublished proprietary source code of AppDynamics LLC and its affiliates.
+ * The copyright notice above does not evidence any actual or intended publication of such source code.
+ */
+
+package com.appdynamics.extensions.aws.collectors;
+
+import com.appdynamics.extensions.logging.ExtensionsLoggerFactory;
+import com.google.common.util.concurrent.RateLimiter;
+import org.slf4j.Logger;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Adjusts the rate of a {@link RateLimiter} to the CloudWatch quota actually
+ * available (AIMD). The rate is raised by one request per second for every
+ * second worth of successful requests, and halved when a request is throttled.
+ * <p>
+ * Throttling errors within a second of the last decrease are considered part
+ * of the same burst, and do not lower the rate any further.
+ */
+public class AdaptiveRateController {
+
+    private static Logger LOGGER = ExtensionsLoggerFactory.getLogger(AdaptiveRateController.class);
+
+    static final double MIN_RATE = 1;
+
+    static final double ADDITIVE_INCREASE = 1;
+
+    static final double MULTIPLICATIVE_DECREASE = 0.5;
+
+    private static final long DECREASE_INTERVAL_NANOS = 1_000_000_000L;
+
+    private final RateLimiter rateLimiter;
+
+    private double rate;
+
+    private double maxRate;
+
+    private long lastDecreaseNanos;
+
+    AdaptiveRateController(double initialRate, double maxRate) {
+        this.maxRate = maxRate;
+        this.rate = Math.max(MIN_RATE, Math.min(initialRate, maxRate));
+        this.rateLimiter = RateLimiter.create(rate);
+        this.lastDecreaseNanos = System.nanoTime() - DECREASE_INTERVAL_NANOS;
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    synchronized void setMaxRate(double maxRate) {
+        this.maxRate = maxRate;
+
+        if (rate > maxRate) {
+            setRate(Math.max(MIN_RATE, maxRate));
+        }
+    }
+
+    public synchronized void onSuccess() {
+        if (rate < maxRate) {
+            setRate(Math.min(maxRate, rate + ADDITIVE_INCREASE / rate));
+        }
+    }
+
+    public synchronized void onThrottled() {
+        long now = System.nanoTime();
+
+        if (now - lastDecreaseNanos >= DECREASE_INTERVAL_NANOS) {
+            lastDecreaseNanos = now;
+            setRate(Math.max(MIN_RATE, rate * MULTIPLICATIVE_DECREASE));
+
+            LOGGER.info(String.format("Request throttled, rate limit lowered to %.1f requests per second", rate));
+        }
+    }
+
+    /**
+     * Records the outcome of the request on completion
+     */
+    public void onComplete(Throwable error) {
+        if (error == null) {
+            onSuccess();
+        } else if (isThrottlingException(error)) {
+            onThrottled();
+        }
+    }
+
+    /**
+     * Wraps the request sender so that the outcome of every request is recorded,
+     * as a single task may send several of them, e.g. pages or extended statistics
+     */
+    public <Q, R> Function<Q, CompletableFuture<R>> record(Function<Q, CompletableFuture<R>> sender) {
+        return request -> {
+            CompletableFuture<R> response;
+
+            try {
+                response = sender.apply(request);
+
+            } catch (RuntimeException e) {
+                onComplete(e);
+                throw e;
+            }
+
+            return response.whenComplete((result, error) -> onComplete(error));
+        };
+    }
+
+    static boolean isThrottlingException(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof AwsServiceException && ((AwsServiceException) cause).isThrottlingException()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void setRate(double rate) {
+        this.rate = rate;
+        rateLimiter.setRate(rate);
+    }
+}
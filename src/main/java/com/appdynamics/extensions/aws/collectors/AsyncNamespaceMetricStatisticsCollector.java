@@ -0,0 +1,376 @@
+/*
+ * Copyright 2018. AppDynamics LLC and its affiliates.
+ * All Rights Reserved.
+ * This is unpublished proprietary source code of AppDynamics LLC and its affiliates.
+ * The copyright notice above does not evidence any actual or intended publication of such source code.
+ */
+
+package com.appdynamics.extensions.aws.collectors;
+
+import com.appdynamics.extensions.aws.config.Account;
+import com.appdynamics.extensions.aws.config.AwsAsyncClientConfig;
+import com.appdynamics.extensions.aws.config.AwsClientConfig;
+import com.appdynamics.extensions.aws.config.ConcurrencyConfig;
+import com.appdynamics.extensions.aws.config.CredentialsDecryptionConfig;
+import com.appdynamics.extensions.aws.config.MetricsConfig;
+import com.appdynamics.extensions.aws.config.ProxyConfig;
+import com.appdynamics.extensions.aws.exceptions.AwsException;
+import com.appdynamics.extensions.aws.metric.AccountMetricStatistics;
+import com.appdynamics.extensions.aws.metric.NamespaceMetricStatistics;
+import com.appdynamics.extensions.aws.metric.RegionMetricStatistics;
+import com.appdynamics.extensions.aws.metric.processors.MetricsProcessor;
+import com.appdynamics.extensions.aws.providers.RegionEndpointProvider;
+import com.appdynamics.extensions.aws.util.AWSUtil;
+import com.appdynamics.extensions.logging.ExtensionsLoggerFactory;
+import com.google.common.collect.Lists;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchAsyncClient;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchAsyncClientBuilder;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.appdynamics.extensions.aws.Constants.DEFAULT_MAX_ERROR_RETRY;
+import static com.appdynamics.extensions.aws.Constants.DEFAULT_NO_OF_THREADS;
+import static com.appdynamics.extensions.aws.util.AWSUtil.createAWSCredentials;
+import static com.appdynamics.extensions.aws.validators.Validator.validateAccount;
+
+/**
+ * Collects statistics (of all specified accounts) for specified namespace
+ * using {@link CloudWatchAsyncClient}, as an alternative to the account and
+ * region thread pools of {@link NamespaceMetricStatisticsCollector}
+ * <p>
+ * Requests of all accounts and regions are sent on a shared event loop,
+ * a small dispatch pool only lists the metrics and sends the requests.
+ * Up to asyncMaxConcurrency requests are in flight at any time.
+ */
+public class AsyncNamespaceMetricStatisticsCollector implements Callable<NamespaceMetricStatistics> {
+
+    private static Logger LOGGER = ExtensionsLoggerFactory.getLogger(AsyncNamespaceMetricStatisticsCollector.class);
+
+    private List<Account> accounts;
+
+    private MetricsConfig metricsConfig;
+
+    private ConcurrencyConfig concurrencyConfig;
+
+    private MetricsProcessor metricsProcessor;
+
+    private CredentialsDecryptionConfig credentialsDecryptionConfig;
+
+    private ProxyConfig proxyConfig;
+
+    private LongAdder awsRequestsCounter;
+
+    private String metricPrefix;
+
+    private MetricSink metricSink;
+
+    private CycleDeadline cycleDeadline;
+
+    private AWSClientCache awsClientCache = AWSClientCache.getInstance();
+
+    private AsyncNamespaceMetricStatisticsCollector(Builder builder) {
+        this.accounts = builder.accounts;
+        this.concurrencyConfig = builder.concurrencyConfig;
+        this.metricsConfig = builder.metricsConfig;
+        this.metricsProcessor = builder.metricsProcessor;
+        this.credentialsDecryptionConfig = builder.credentialsDecryptionConfig;
+        this.proxyConfig = builder.proxyConfig;
+        this.awsRequestsCounter = builder.awsRequestsCounter;
+        this.metricPrefix = builder.metricPrefix;
+        this.metricSink = builder.metricSink;
+        this.cycleDeadline = builder.cycleDeadline;
+    }
+
+    /**
+     * Starts the collection of every region of every account, then waits
+     * for the accounts as they complete, until the deadline of the cycle if any,
+     * otherwise up to threadTimeOut seconds for all of them. Each account completes
+     * at the deadline of its regions with the regions done by then
+     * <p>
+     * Returns the accumulated metrics statistics for specified namespace, without the
+     * regions already written to the {@link MetricSink} if any
+     */
+    public NamespaceMetricStatistics call() {
+        LOGGER.info(String.format("Collecting statistics asynchronously for Namespace [%s]",
+                metricsProcessor.getNamespace()));
+
+        NamespaceMetricStatistics namespaceMetrics = new NamespaceMetricStatistics();
+        namespaceMetrics.setNamespace(metricsProcessor.getNamespace());
+
+        //Shared across cycles once the collector pools are started
+        ExecutorService sharedDispatchExecutor = CollectorRuntime.getInstance().getExecutor(CollectorRuntime.Level.DISPATCH);
+        ExecutorService dispatchExecutor = sharedDispatchExecutor != null ?
+                sharedDispatchExecutor : Executors.newFixedThreadPool(getNoOfAccountThreads());
+
+        try {
+            AwsAsyncClientConfig asyncClientConfig = awsClientCache.getAsyncClientConfig(() ->
+                    AWSUtil.createAwsAsyncClientConfiguration(getMaxErrorRetrySize(),
+                            concurrencyConfig.getAsyncEventLoopThreads(),
+                            concurrencyConfig.getAsyncMaxConcurrency(), proxyConfig));
+
+            Semaphore inFlightRequests = new Semaphore(concurrencyConfig.getAsyncMaxConcurrency());
+
+            List<CompletableFuture<AccountMetricStatistics>> accountResults = Lists.newArrayList();
+
+            for (Account account : accounts) {
+                accountResults.add(collectAccount(account, asyncClientConfig, inFlightRequests, dispatchExecutor));
+            }
+
+            collectAccounts(accountResults, namespaceMetrics);
+
+        } catch (Exception e) {
+            throw new AwsException(
+                    String.format(
+                            "Error getting NamespaceMetricStatistics for Namespace [%s]",
+                            metricsProcessor.getNamespace()), e);
+
+        } finally {
+            if (dispatchExecutor != sharedDispatchExecutor) {
+                dispatchExecutor.shutdown();
+            }
+        }
+
+        return namespaceMetrics;
+    }
+
+    private void collectAccounts(List<CompletableFuture<AccountMetricStatistics>> accountResults,
+                                 NamespaceMetricStatistics namespaceMetrics) {
+        CompletableFuture<Void> allAccounts = CompletableFuture.allOf(
+                accountResults.toArray(new CompletableFuture[0]));
+
+        long deadline = CycleDeadline.deadlineNanos(cycleDeadline, CycleDeadline.Level.ACCOUNT,
+                concurrencyConfig.getThreadTimeOut());
+
+        try {
+            allAccounts.get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+
+        } catch (InterruptedException e) {
+            LOGGER.error("Task interrupted. ", e);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            //Reported with its account below
+        } catch (TimeoutException e) {
+            LOGGER.error("Task timed out. ", e);
+        }
+
+        for (CompletableFuture<AccountMetricStatistics> accountResult : accountResults) {
+            if (!accountResult.isDone()) {
+                continue;
+            }
+
+            try {
+                namespaceMetrics.add(accountResult.join());
+
+            } catch (CompletionException | CancellationException e) {
+                LOGGER.error("Task execution failed. ", e);
+            }
+        }
+    }
+
+    private CompletableFuture<AccountMetricStatistics> collectAccount(Account account,
+                                                                      AwsAsyncClientConfig asyncClientConfig,
+                                                                      Semaphore inFlightRequests,
+                                                                      ExecutorService dispatchExecutor) {
+        try {
+            validateAccount(account);
+
+            LOGGER.info(String.format(
+                    "Collecting AccountMetricStatistics asynchronously for Namespace [%s] Account [%s]",
+                    metricsProcessor.getNamespace(), account.getDisplayAccountName()));
+
+            AccountMetricStatistics accountStats = new AccountMetricStatistics();
+            accountStats.setAccountName(account.getDisplayAccountName());
+
+            StaticCredentialsProvider awsCredentials = null;
+            if (StringUtils.isNotEmpty(account.getAwsAccessKey()) && StringUtils.isNotEmpty(account.getAwsSecretKey())) {
+                awsCredentials = createAWSCredentials(account, credentialsDecryptionConfig);
+            }
+
+            //Still needed to list the metrics of each region
+            AwsClientConfig awsClientConfig = AWSUtil.createAwsClientConfiguration(getMaxErrorRetrySize(), proxyConfig);
+
+            List<CompletableFuture<RegionMetricStatistics>> regionResults = Lists.newArrayList();
+            RegionMetricsWriter regionMetricsWriter = metricSink != null ?
+                    new RegionMetricsWriter(metricSink, metricsProcessor) : null;
+
+            for (String region : account.getRegions()) {
+                RegionMetricStatisticsCollector regionCollector =
+                        new RegionMetricStatisticsCollector.Builder()
+                                .withAccountName(account.getDisplayAccountName())
+                                .withMetricsProcessor(metricsProcessor)
+                                .withMetricsTimeRange(metricsConfig.getMetricsTimeRange())
+                                .withThreadTimeOut(concurrencyConfig.getThreadTimeOut())
+                                .withRegion(region)
+                                .withAWSRequestCounter(awsRequestsCounter)
+                                .withPrefix(metricPrefix)
+                                .withMetricsConfig(metricsConfig)
+                                .withAmazonCloudWatchConfig(awsCredentials, awsClientConfig)
+                                .withCycleDeadline(cycleDeadline)
+                                .build();
+
+                CloudWatchAsyncClient awsCloudWatchAsync = getAsyncClient(account, region, awsCredentials, asyncClientConfig);
+
+                CompletableFuture<RegionMetricStatistics> regionResult = CompletableFuture
+                        .<CompletableFuture<RegionMetricStatistics>>supplyAsync(
+                                () -> regionCollector.callAsync(awsCloudWatchAsync, inFlightRequests), dispatchExecutor)
+                        .thenCompose(result -> result);
+
+                if (regionMetricsWriter != null) {
+                    //Off the event loop, as writing converts and uploads the metrics of the region
+                    regionResult = regionResult.thenApplyAsync(regionStats ->
+                            regionMetricsWriter.write(account.getDisplayAccountName(), regionStats), dispatchExecutor);
+                }
+
+                regionResults.add(regionResult
+                        .exceptionally(e -> {
+                            LOGGER.error("Task execution failed. ", e);
+                            return null;
+                        }));
+            }
+
+            long deadline = CycleDeadline.deadlineNanos(cycleDeadline, CycleDeadline.Level.REGION,
+                    concurrencyConfig.getThreadTimeOut());
+
+            //Completes at the deadline with the regions done by then, so one slow region does not drop the others
+            CompletableFuture<Void> allRegions = CompletableFuture.allOf(regionResults.toArray(new CompletableFuture[0]))
+                    .completeOnTimeout(null, Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+
+            return allRegions.thenApply(ignored -> {
+                for (CompletableFuture<RegionMetricStatistics> regionResult : regionResults) {
+                    RegionMetricStatistics regionStats = regionResult.getNow(null);
+
+                    if (regionStats != null) {
+                        accountStats.add(regionStats);
+
+                    } else if (!regionResult.isDone()) {
+                        LOGGER.error(String.format("Region timed out for Namespace [%s] Account [%s]",
+                                metricsProcessor.getNamespace(), account.getDisplayAccountName()));
+                    }
+                }
+
+                return accountStats;
+            });
+
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(new AwsException(
+                    String.format(
+                            "Error getting AccountMetricStatistics for Namespace [%s] Account [%s]",
+                            metricsProcessor.getNamespace(),
+                            account.getDisplayAccountName()), e));
+        }
+    }
+
+    /**
+     * Clients are cached per account as well as endpoint, as each one holds the credentials of its account
+     */
+    private CloudWatchAsyncClient getAsyncClient(Account account, String region, StaticCredentialsProvider awsCredentials,
+                                                 AwsAsyncClientConfig asyncClientConfig) {
+        String endpointUrl = RegionEndpointProvider.getInstance().getEndpoint(region);
+        URI endpointUri = URI.create("https://" + endpointUrl);
+        String clientKey = account.getDisplayAccountName() + "|" + endpointUri;
+
+        CloudWatchAsyncClient cloudWatchAsyncClient = awsClientCache.getAsync(clientKey);
+        if (cloudWatchAsyncClient == null) {
+            LOGGER.info("CloudWatch async client not found in cache; creating a new client and adding it to cache.");
+
+            CloudWatchAsyncClientBuilder clientBuilder = CloudWatchAsyncClient.builder()
+                    .endpointOverride(endpointUri)
+                    .region(Region.of(region))
+                    .httpClient(asyncClientConfig.getHttpClient())
+                    .overrideConfiguration(asyncClientConfig.getOverrideConfiguration());
+
+            if (awsCredentials != null) {
+                clientBuilder.credentialsProvider(awsCredentials);
+            }
+
+            cloudWatchAsyncClient = clientBuilder.build();
+            awsClientCache.putAsync(clientKey, cloudWatchAsyncClient);
+        }
+
+        return cloudWatchAsyncClient;
+    }
+
+    private int getMaxErrorRetrySize() {
+        int maxErrorRetrySize = metricsConfig.getMaxErrorRetrySize();
+        return maxErrorRetrySize < DEFAULT_MAX_ERROR_RETRY ? DEFAULT_MAX_ERROR_RETRY : maxErrorRetrySize;
+    }
+
+    private int getNoOfAccountThreads() {
+        int noOfAccountThreads = concurrencyConfig.getNoOfAccountThreads();
+        return noOfAccountThreads > 0 ? noOfAccountThreads : DEFAULT_NO_OF_THREADS;
+    }
+
+    /**
+     * Builder class to maintain readability when
+     * building {@link AsyncNamespaceMetricStatisticsCollector} due to its params size
+     */
+    public static class Builder {
+
+        private List<Account> accounts;
+        private MetricsConfig metricsConfig;
+        private ConcurrencyConfig concurrencyConfig;
+        private MetricsProcessor metricsProcessor;
+        private CredentialsDecryptionConfig credentialsDecryptionConfig;
+        private ProxyConfig proxyConfig;
+        private LongAdder awsRequestsCounter = new LongAdder();
+        private String metricPrefix;
+        private MetricSink metricSink;
+        private CycleDeadline cycleDeadline;
+
+        public Builder(List<Account> accounts,
+                       ConcurrencyConfig concurrencyConfig,
+                       MetricsConfig metricsConfig,
+                       MetricsProcessor metricsProcessor, String metricPrefix) {
+            this.accounts = accounts;
+            this.concurrencyConfig = concurrencyConfig;
+            this.metricsConfig = metricsConfig;
+            this.metricsProcessor = metricsProcessor;
+            this.metricPrefix = metricPrefix;
+        }
+
+        public Builder withCredentialsDecryptionConfig(CredentialsDecryptionConfig credentialsDecryptionConfig) {
+            this.credentialsDecryptionConfig = credentialsDecryptionConfig;
+            return this;
+        }
+
+        public Builder withProxyConfig(ProxyConfig proxyConfig) {
+            this.proxyConfig = proxyConfig;
+            return this;
+        }
+
+        public Builder withAWSRequestCounter(LongAdder awsRequestsCounter) {
+            this.awsRequestsCounter = awsRequestsCounter;
+            return this;
+        }
+
+        public Builder withMetricSink(MetricSink metricSink) {
+            this.metricSink = metricSink;
+            return this;
+        }
+
+        public Builder withCycleDeadline(CycleDeadline cycleDeadline) {
+            this.cycleDeadline = cycleDeadline;
+            return this;
+        }
+
+        public AsyncNamespaceMetricStatisticsCollector build() {
+            return new AsyncNamespaceMetricStatisticsCollector(this);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2018. AppDynamics LLC and its affiliates.
+ * All Rights Reserved.
+ * This is unpublished proprietary source code of AppDynamics LLC and its affiliates.
+ * The copyright notice above does not evidence any actual or intended publication of such source code.
+ */
+
+package com.appdynamics.extensions.aws.collectors;
+
+import com.appdynamics.extensions.aws.collectors.CollectorRuntime.Level;
+import com.appdynamics.extensions.executorservice.MonitorExecutorService;
+import com.appdynamics.extensions.executorservice.MonitorThreadPoolExecutor;
+import com.appdynamics.extensions.logging.ExtensionsLoggerFactory;
+import org.slf4j.Logger;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor the collectors submit their tasks to. Runs every task on its own
+ * virtual thread if enabled and supported by the JVM. Otherwise runs the tasks on
+ * the shared pool of their level once {@link CollectorRuntime} is started, or
+ * on a fixed pool of platform threads created for the caller.
+ * <p>
+ * Virtual threads are looked up reflectively, as the extension is still built for Java 17.
+ */
+class CollectorExecutor {
+
+    private static Logger LOGGER = ExtensionsLoggerFactory.getLogger(CollectorExecutor.class);
+
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findVirtualThreadPerTaskExecutor();
+
+    private final MonitorExecutorService threadPoolExecutor;
+
+    private final ExecutorService virtualThreadExecutor;
+
+    private final ThreadPoolExecutor sharedExecutor;
+
+    private final Semaphore permits;
+
+    private CollectorExecutor(MonitorExecutorService threadPoolExecutor, ExecutorService virtualThreadExecutor,
+                              ThreadPoolExecutor sharedExecutor, Semaphore permits) {
+        this.threadPoolExecutor = threadPoolExecutor;
+        this.virtualThreadExecutor = virtualThreadExecutor;
+        this.sharedExecutor = sharedExecutor;
+        this.permits = permits;
+    }
+
+    static CollectorExecutor create(Level level, boolean virtualThreads, int noOfThreads) {
+        if (virtualThreads) {
+            ExecutorService virtualThreadExecutor = newVirtualThreadPerTaskExecutor();
+
+            if (virtualThreadExecutor != null) {
+                return new CollectorExecutor(null, virtualThreadExecutor, null, null);
+            }
+        }
+
+        ThreadPoolExecutor sharedExecutor = CollectorRuntime.getInstance().getExecutor(level);
+
+        if (sharedExecutor != null) {
+            return new CollectorExecutor(null, null, sharedExecutor, new Semaphore(noOfThreads));
+        }
+
+        return new CollectorExecutor(new MonitorThreadPoolExecutor(
+                (ThreadPoolExecutor) Executors.newFixedThreadPool(noOfThreads)), null, null, null);
+    }
+
+    static boolean isVirtualThreadsSupported() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    boolean isVirtualThreads() {
+        return virtualThreadExecutor != null;
+    }
+
+    /**
+     * On a shared pool, blocks until one of the caller's tasks completes
+     * if it already runs its configured number of tasks, but no later than
+     * the deadline. A task not started by then, or submitted after it, is cancelled instead.
+     *
+     * @param deadlineNanos as given by {@link System#nanoTime()}
+     */
+    void submit(String name, FutureTask<?> task, long deadlineNanos) {
+        if (deadlineNanos - System.nanoTime() <= 0) {
+            LOGGER.error(String.format("Task timed out. %s task submitted after the deadline is cancelled", name));
+            task.cancel(false);
+
+        } else if (isVirtualThreads()) {
+            virtualThreadExecutor.execute(task);
+
+        } else if (sharedExecutor != null) {
+            if (!acquirePermit(deadlineNanos)) {
+                LOGGER.error(String.format("Task timed out. No thread of %s freed up in time, task is cancelled", name));
+                task.cancel(false);
+                return;
+            }
+
+            try {
+                sharedExecutor.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        permits.release();
+                    }
+                });
+
+            } catch (RejectedExecutionException e) {
+                permits.release();
+                throw e;
+            }
+
+        } else {
+            threadPoolExecutor.submit(name, task);
+        }
+    }
+
+    private boolean acquirePermit(long deadlineNanos) {
+        try {
+            return permits.tryAcquire(Math.max(deadlineNanos - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Shared pools are left running for the next cycle
+     */
+    void shutdown() {
+        if (isVirtualThreads()) {
+            virtualThreadExecutor.shutdown();
+        } else if (threadPoolExecutor != null && !threadPoolExecutor.isShutdown()) {
+            threadPoolExecutor.shutdown();
+        }
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        if (!isVirtualThreadsSupported()) {
+            LOGGER.warn("Virtual threads are not supported by this JVM, falling back to fixed thread pools");
+            return null;
+        }
+
+        try {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+
+        } catch (ReflectiveOperationException e) {
+            LOGGER.warn("Unable to create virtual thread executor, falling back to fixed thread pools", e);
+            return null;
+        }
+    }
+
+    private static Method findVirtualThreadPerTaskExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2018. AppDynamics LLC and its affiliates.
+ * All Rights Reserved.
+ * This is unpublished proprietary source code of AppDynamics LLC and its affiliates.
+ * The copyright notice above does not evidence any actual or intended publication of such source code.
+ */
+
+package com.appdynamics.extensions.aws.collectors;
+
+import com.appdynamics.extensions.aws.config.ConcurrencyConfig;
+import com.appdynamics.extensions.logging.ExtensionsLoggerFactory;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.appdynamics.extensions.aws.Constants.DEFAULT_NO_OF_THREADS;
+
+/**
+ * Long lived thread pools shared by the collectors of every namespace, one per
+ * level of the account, region and metric hierarchy, so that threads are reused
+ * across cycles. Each collector still runs at most its configured number of
+ * tasks at a time, see {@link CollectorExecutor}.
+ * <p>
+ * Pools are sized for the worst case, but idle threads time out, so only
+ * the threads the cycles actually use are kept between them.
+ * <p>
+ * Started, or restarted with the new thread counts, on config reload.
+ * Until then every collector creates and shuts down its own thread pool.
+ */
+public class CollectorRuntime {
+
+    private static Logger LOGGER = ExtensionsLoggerFactory.getLogger(CollectorRuntime.class);
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    /**
+     * DISPATCH lists the metrics and sends the requests of asynchronous collection,
+     * see {@link AsyncNamespaceMetricStatisticsCollector}
+     */
+    public enum Level {
+        ACCOUNT, REGION, METRIC, DISPATCH
+    }
+
+    //Created eagerly, as collectors of every namespace get it concurrently
+    private static final CollectorRuntime INSTANCE = new CollectorRuntime();
+
+    private volatile Map<Level, ThreadPoolExecutor> executors = Collections.emptyMap();
+
+    private CollectorRuntime() {
+    }
+
+    public static CollectorRuntime getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Same as {@link #start(ConcurrencyConfig, int)} for a single namespace at a time
+     */
+    public void start(ConcurrencyConfig concurrencyConfig) {
+        start(concurrencyConfig, 1);
+    }
+
+    /**
+     * Sizes each pool to the most tasks of its level the namespaces collected at the same time
+     * can run at a time, e.g. noOfNamespaceThreads * noOfAccountThreads * noOfRegionThreadsPerAccount
+     * threads for the regions, so that a namespace never waits for the threads of another.
+     * The dispatch pool has as many threads as the account one
+     */
+    public synchronized void start(ConcurrencyConfig concurrencyConfig, int noOfNamespaceThreads) {
+        shutdown();
+
+        int noOfAccountThreads = getNoOfThreads(noOfNamespaceThreads) * getNoOfThreads(concurrencyConfig.getNoOfAccountThreads());
+        int noOfRegionThreads = noOfAccountThreads * getNoOfThreads(concurrencyConfig.getNoOfRegionThreadsPerAccount());
+        int noOfMetricThreads = noOfRegionThreads * getNoOfThreads(concurrencyConfig.getNoOfMetricThreadsPerRegion());
+
+        Map<Level, ThreadPoolExecutor> newExecutors = new EnumMap<Level, ThreadPoolExecutor>(Level.class);
+        newExecutors.put(Level.ACCOUNT, createExecutor(Level.ACCOUNT, noOfAccountThreads));
+        newExecutors.put(Level.REGION, createExecutor(Level.REGION, noOfRegionThreads));
+        newExecutors.put(Level.METRIC, createExecutor(Level.METRIC, noOfMetricThreads));
+        newExecutors.put(Level.DISPATCH, createExecutor(Level.DISPATCH, noOfAccountThreads));
+        executors = newExecutors;
+
+        LOGGER.info(String.format("Started collector runtime with %s account, %s region, %s metric and %s dispatch threads",
+                noOfAccountThreads, noOfRegionThreads, noOfMetricThreads, noOfAccountThreads));
+    }
+
+    /**
+     * Tasks already submitted still complete, new ones are rejected
+     */
+    public synchronized void shutdown() {
+        for (ThreadPoolExecutor executor : executors.values()) {
+            executor.shutdown();
+        }
+
+        executors = Collections.emptyMap();
+    }
+
+    public boolean isStarted() {
+        return !executors.isEmpty();
+    }
+
+    /**
+     * Number of tasks of the level waiting for a thread
+     */
+    public int getQueueDepth(Level level) {
+        ThreadPoolExecutor executor = executors.get(level);
+        return executor != null ? executor.getQueue().size() : 0;
+    }
+
+    /**
+     * Number of tasks of the level currently running
+     */
+    public int getActiveCount(Level level) {
+        ThreadPoolExecutor executor = executors.get(level);
+        return executor != null ? executor.getActiveCount() : 0;
+    }
+
+    ThreadPoolExecutor getExecutor(Level level) {
+        return executors.get(level);
+    }
+
+    private static ThreadPoolExecutor createExecutor(Level level, int noOfThreads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(noOfThreads, noOfThreads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("aws-cloudwatch-" + level.name().toLowerCase() + "-%d")
+                        .setDaemon(true)
+                        .build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static int getNoOfThreads(int noOfThreads) {
+        return noOfThreads > 0 ? noOfThreads : DEFAULT_NO_OF_THREADS;
+    }
+}
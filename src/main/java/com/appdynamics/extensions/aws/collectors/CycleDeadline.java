@@ -0,0 +1,99 @@
+/*
+ * Copyright 2018. AppDynamics LLC and its affiliates.
+ * All Rights Reserved.
+ * This is unpublished proprietary source code of AppDynamics LLC and its affiliates.
+ * The copyright notice above does not evidence any actual or intended publication of such source code.
+ */
+
+package com.appdynamics.extensions.aws.collectors;
+
+import software.amazon.awssdk.awscore.AwsRequestOverrideConfiguration;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point in time by which a collection cycle must be over, shared by the collectors
+ * of every level so that the cycle as a whole, rather than each level or task,
+ * is bounded. Results completed by then are still uploaded.
+ * <p>
+ * Tasks stop at the deadline and hand back what they collected so far, so each level
+ * waits for the tasks below it a grace period longer than those wait for theirs.
+ */
+public class CycleDeadline {
+
+    // API calls are given at least this long, a call too short to complete is only wasted
+    private static final long MIN_API_CALL_TIMEOUT_MILLIS = 100;
+
+    // a level waits this much longer for its tasks than they wait for theirs
+    private static final long GRACE_PERIOD_MILLIS = 500;
+
+    /**
+     * Levels of tasks waited for, from the metric tasks of a region
+     * up to the namespaces of a multi namespace monitor
+     */
+    public enum Level {
+        METRIC, REGION, ACCOUNT, NAMESPACE
+    }
+
+    private final long deadlineNanos;
+
+    private CycleDeadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    public static CycleDeadline after(long duration, TimeUnit unit) {
+        return new CycleDeadline(System.nanoTime() + unit.toNanos(duration));
+    }
+
+    /**
+     * @return the deadline as given by {@link System#nanoTime()}
+     */
+    public long getDeadlineNanos() {
+        return deadlineNanos;
+    }
+
+    /**
+     * @return the time until which the tasks of the level are waited for, i.e. the deadline
+     * plus one grace period per level up from the metric tasks, as given by {@link System#nanoTime()}
+     */
+    public long getDeadlineNanos(Level level) {
+        return deadlineNanos + TimeUnit.MILLISECONDS.toNanos(GRACE_PERIOD_MILLIS) * (level.ordinal() + 1);
+    }
+
+    public long remainingNanos() {
+        return deadlineNanos - System.nanoTime();
+    }
+
+    public boolean isExpired() {
+        return remainingNanos() <= 0;
+    }
+
+    /**
+     * @return the request configuration whose apiCallTimeout, retries included, ends the call by the deadline
+     */
+    public AwsRequestOverrideConfiguration toOverrideConfiguration() {
+        return AwsRequestOverrideConfiguration.builder()
+                .apiCallTimeout(Duration.ofMillis(Math.max(
+                        TimeUnit.NANOSECONDS.toMillis(remainingNanos()), MIN_API_CALL_TIMEOUT_MILLIS)))
+                .build();
+    }
+
+    /**
+     * @return the deadline of the cycle if any, otherwise timeOutInSeconds from now,
+     * as given by {@link System#nanoTime()}
+     */
+    static long deadlineNanos(CycleDeadline cycleDeadline, int timeOutInSeconds) {
+        return cycleDeadline != null ? cycleDeadline.getDeadlineNanos() :
+                TaskCompletionQueue.deadlineIn(timeOutInSeconds);
+    }
+
+    /**
+     * @return the time until which the tasks of the level are waited for if the cycle has
+     * a deadline, otherwise timeOutInSeconds from now, as given by {@link System#nanoTime()}
+     */
+    static long deadlineNanos(CycleDeadline cycleDeadline, Level level, int timeOutInSeconds) {
+        return cycleDeadline != null ? cycleDeadline.getDeadlineNanos(level) :
+                TaskCompletionQueue.deadlineIn(timeOutInSeconds);
+    }
+}
@@ -0,0 +1,559 @@
+/*
+ * Copyright 2018. AppDynamics LLC and its affiliates.
+ * All Rights Reserved.
+ * This is unpublished proprietary source code of AppDynamics LLC and its affiliates.
+ * The copyright notice above does not evidence any actual or intended publication of such source code.
+ */
+
+package com.appdynamics.extensions.aws.collectors;
+
+import com.appdynamics.extensions.aws.config.MetricsConfig;
+import com.appdynamics.extensions.aws.config.MetricsTimeRange;
+import com.appdynamics.extensions.aws.dto.AWSMetric;
+import com.appdynamics.extensions.aws.exceptions.AwsException;
+import com.appdynamics.extensions.aws.metric.MetricStatistic;
+import com.appdynamics.extensions.logging.ExtensionsLoggerFactory;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.RateLimiter;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.slf4j.Logger;
+import software.amazon.awssdk.core.exception.ApiCallTimeoutException;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchAsyncClient;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchClient;
+import software.amazon.awssdk.services.cloudwatch.model.GetMetricDataRequest;
+import software.amazon.awssdk.services.cloudwatch.model.GetMetricDataResponse;
+import software.amazon.awssdk.services.cloudwatch.model.MetricDataQuery;
+import software.amazon.awssdk.services.cloudwatch.model.MetricDataResult;
+import software.amazon.awssdk.services.cloudwatch.model.MetricStat;
+import software.amazon.awssdk.services.cloudwatch.model.ScanBy;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import static com.appdynamics.extensions.aws.Constants.DEFAULT_END_TIME_IN_MINS_BEFORE_NOW;
+import static com.appdynamics.extensions.aws.Constants.DEFAULT_START_TIME_IN_MINS_BEFORE_NOW;
+import static com.appdynamics.extensions.aws.Constants.MAX_METRIC_DATA_QUERIES_PER_REQUEST;
+import static com.appdynamics.extensions.aws.validators.Validator.validateTimeRange;
+
+/**
+ * Retrieves statistics for a batch of metrics using a single
+ * GetMetricData request, following NextToken until all pages are read.
+ * <p>
+ * <p>Cloudwatch Limitation:
+ * A single GetMetricData request can include at most 500 MetricDataQuery
+ * structures, and all of them share the same start and end time.
+ */
+public class MetricDataBatchCollector implements MetricStatisticsTask {
+
+    private static Logger LOGGER = ExtensionsLoggerFactory.getLogger(MetricDataBatchCollector.class);
+
+    private static final String QUERY_ID_PREFIX = "m";
+
+    private String accountName;
+
+    private String region;
+
+    private CloudWatchClient awsCloudWatch;
+
+    private List<MetricStatistic> metricStatistics;
+
+    private int startTimeInMinsBeforeNow;
+
+    private int endTimeInMinsBeforeNow;
+
+    private RateLimiter rateLimiter;
+
+    private LongAdder awsRequestsCounter;
+
+    private MetricsConfig metricsConfig;
+
+    private CycleDeadline cycleDeadline;
+
+    private AdaptiveRateController adaptiveRateController;
+
+    private MetricDataBatchCollector(Builder builder) {
+        this.accountName = builder.accountName;
+        this.region = builder.region;
+        this.awsCloudWatch = builder.awsCloudWatch;
+        this.metricStatistics = builder.metricStatistics;
+        this.rateLimiter = builder.rateLimiter;
+        this.awsRequestsCounter = builder.awsRequestsCounter;
+        this.metricsConfig = builder.metricsConfig;
+        this.cycleDeadline = builder.cycleDeadline;
+        this.adaptiveRateController = builder.adaptiveRateController;
+
+        setStartTimeInMinsBeforeNow(builder.metricsTimeRange.getStartTimeInMinsBeforeNow());
+        setEndTimeInMinsBeforeNow(builder.metricsTimeRange.getEndTimeInMinsBeforeNow());
+    }
+
+    /**
+     * Uses {@link CloudWatchClient} to retrieve datapoints of every metric statistic
+     * in the batch, one MetricDataQuery per metric statistic.
+     * <p>
+     * Returns the metric statistics of the batch with their value
+     * set from the latest datapoint.
+     */
+    public List<MetricStatistic> call() throws Exception {
+        try {
+            return collect(request -> CompletableFuture.completedFuture(
+                    awsCloudWatch.getMetricData(request)), true).join();
+
+        } catch (Exception e) {
+            throw createException(e instanceof CompletionException ? e.getCause() : e);
+        }
+    }
+
+    /**
+     * Same as {@link #call()}, but the requests are sent with the specified
+     * {@link CloudWatchAsyncClient} without blocking the calling thread
+     */
+    public CompletableFuture<List<MetricStatistic>> callAsync(CloudWatchAsyncClient awsCloudWatchAsync) {
+        CompletableFuture<List<MetricStatistic>> result;
+
+        try {
+            result = collect(awsCloudWatchAsync::getMetricData, false);
+        } catch (Exception e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+
+        return result.handle((metricStatistics, e) -> {
+            if (e != null) {
+                throw new CompletionException(createException(
+                        e instanceof CompletionException ? e.getCause() : e));
+            }
+
+            return metricStatistics;
+        });
+    }
+
+    private AwsException createException(Throwable cause) {
+        return new AwsException(String.format(
+                "Error getting MetricData for Account [%s] Region [%s] Batch size [%s]",
+                accountName, region, metricStatistics.size()), cause);
+    }
+
+    /**
+     * @param blocking whether the requests are sent on the calling thread, which can then
+     *                 wait for the rate limit, as opposed to the threads completing the responses
+     */
+    private CompletableFuture<List<MetricStatistic>> collect(
+            Function<GetMetricDataRequest, CompletableFuture<GetMetricDataResponse>> requestSender, boolean blocking) {
+
+        Function<GetMetricDataRequest, CompletableFuture<GetMetricDataResponse>> sender =
+                adaptiveRateController != null ? adaptiveRateController.record(requestSender) : requestSender;
+
+        validateTimeRange(startTimeInMinsBeforeNow, endTimeInMinsBeforeNow);
+
+        if (metricStatistics.size() > MAX_METRIC_DATA_QUERIES_PER_REQUEST) {
+            throw new IllegalArgumentException(String.format(
+                    "A GetMetricData request supports at most %s queries, got [%s]",
+                    MAX_METRIC_DATA_QUERIES_PER_REQUEST, metricStatistics.size()));
+        }
+
+        if (cycleDeadline != null && cycleDeadline.isExpired()) {
+            //Queued until after the deadline, left to the next cycle
+            LOGGER.debug(String.format("Cycle deadline reached, skipping batch of %s metric statistics " +
+                    "for Account [%s] Region [%s]", metricStatistics.size(), accountName, region));
+            return CompletableFuture.completedFuture(new ArrayList<MetricStatistic>());
+        }
+
+        LOGGER.debug(String.format("Collecting %s metric statistics using GetMetricData for Account [%s] Region [%s]",
+                metricStatistics.size(), accountName, region));
+
+        List<MetricDataQuery> queries = Lists.newArrayListWithCapacity(metricStatistics.size());
+        int[] periods = new int[metricStatistics.size()];
+
+        for (int index = 0; index < metricStatistics.size(); index++) {
+            periods[index] = MetricStatisticCollector.getPeriod(metricStatistics.get(index).getMetric(), metricsConfig);
+            queries.add(createMetricDataQuery(index, metricStatistics.get(index), periods[index]));
+        }
+
+        Instant startTime = DateTime.now(DateTimeZone.UTC).minusMinutes(startTimeInMinsBeforeNow).toDate().toInstant();
+        Instant endTime = DateTime.now(DateTimeZone.UTC).minusMinutes(endTimeInMinsBeforeNow).toDate().toInstant();
+
+        Instant[] watermarks = getWatermarks(periods);
+        Instant[] latestTimestamps = new Instant[metricStatistics.size()];
+
+        if (watermarks != null) {
+            // All queries share the window, so it can only start after the oldest watermark
+            Instant nextDatapointTime = null;
+
+            for (int index = 0; index < watermarks.length; index++) {
+                Instant seriesNextDatapointTime = watermarks[index].plusSeconds(periods[index]);
+
+                if (nextDatapointTime == null || seriesNextDatapointTime.isBefore(nextDatapointTime)) {
+                    nextDatapointTime = seriesNextDatapointTime;
+                }
+            }
+
+            if (nextDatapointTime != null && nextDatapointTime.isAfter(startTime)) {
+                startTime = nextDatapointTime;
+            }
+
+            if (!startTime.isBefore(endTime)) {
+                LOGGER.trace(String.format("No new datapoint expected yet for batch of Account [%s] Region [%s]",
+                        accountName, region));
+                reportLastValues(periods, latestTimestamps);
+                return CompletableFuture.completedFuture(metricStatistics);
+            }
+        }
+
+        GetMetricDataRequest.Builder requestBuilder = GetMetricDataRequest.builder()
+                .metricDataQueries(queries)
+                .startTime(startTime)
+                .endTime(endTime)
+                .scanBy(ScanBy.TIMESTAMP_DESCENDING);
+
+        //The first page is already accounted for by the caller
+        return sender.apply(buildRequest(requestBuilder))
+                .thenCompose(response -> processPages(response, requestBuilder, sender, blocking,
+                        watermarks, latestTimestamps))
+                .thenApply(ignored -> {
+                    updateWatermarks(periods, latestTimestamps);
+                    reportLastValues(periods, latestTimestamps);
+                    return metricStatistics;
+                });
+    }
+
+    /**
+     * Processes the specified page, then requests the next one
+     * until NextToken is no longer returned
+     */
+    private CompletableFuture<Void> processPages(GetMetricDataResponse response,
+                                                 GetMetricDataRequest.Builder requestBuilder,
+                                                 Function<GetMetricDataRequest, CompletableFuture<GetMetricDataResponse>> sender,
+                                                 boolean blocking, Instant[] watermarks, Instant[] latestTimestamps) {
+        awsRequestsCounter.increment();
+
+        for (MetricDataResult result : response.metricDataResults()) {
+            processMetricDataResult(result, watermarks, latestTimestamps);
+        }
+
+        if (response.nextToken() == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        if (cycleDeadline != null && cycleDeadline.isExpired()) {
+            //Pages are scanned newest first, the latest datapoints are already read
+            LOGGER.info(String.format("Cycle deadline reached, remaining pages of batch for Account [%s] " +
+                    "Region [%s] are skipped", accountName, region));
+            return CompletableFuture.completedFuture(null);
+        }
+
+        requestBuilder.nextToken(response.nextToken());
+
+        if (rateLimiter == null) {
+            return requestNextPage(requestBuilder, sender, blocking, watermarks, latestTimestamps);
+        }
+
+        if (blocking) {
+            rateLimiter.acquire();
+            return requestNextPage(requestBuilder, sender, true, watermarks, latestTimestamps);
+        }
+
+        return acquirePermitAsync().thenCompose(acquired -> {
+            if (!acquired) {
+                LOGGER.info(String.format("Cycle deadline reached waiting for the rate limit, remaining pages " +
+                        "of batch for Account [%s] Region [%s] are skipped", accountName, region));
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+
+            return requestNextPage(requestBuilder, sender, false, watermarks, latestTimestamps);
+        });
+    }
+
+    /**
+     * A page timing out at the cycle deadline ends the batch with the pages already read,
+     * which hold the latest datapoints as pages are scanned newest first
+     */
+    private CompletableFuture<Void> requestNextPage(GetMetricDataRequest.Builder requestBuilder,
+                                                    Function<GetMetricDataRequest, CompletableFuture<GetMetricDataResponse>> sender,
+                                                    boolean blocking, Instant[] watermarks, Instant[] latestTimestamps) {
+        CompletableFuture<GetMetricDataResponse> nextPage;
+
+        try {
+            nextPage = sender.apply(buildRequest(requestBuilder));
+        } catch (RuntimeException e) {
+            nextPage = CompletableFuture.failedFuture(e);
+        }
+
+        return nextPage.<CompletableFuture<Void>>handle((nextResponse, e) -> {
+            if (e == null) {
+                return processPages(nextResponse, requestBuilder, sender, blocking, watermarks, latestTimestamps);
+            }
+
+            Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+
+            if (!(cause instanceof ApiCallTimeoutException)) {
+                return CompletableFuture.<Void>failedFuture(cause);
+            }
+
+            LOGGER.info(String.format("Cycle deadline reached, page of batch for Account [%s] Region [%s] " +
+                    "timed out, remaining pages are skipped", accountName, region));
+            return CompletableFuture.<Void>completedFuture(null);
+
+        }).thenCompose(result -> result);
+    }
+
+    /**
+     * Takes a permit without blocking the thread completing the previous page, i.e. one of the
+     * SDK's, retrying once the next permit should be available instead
+     *
+     * @return false if the cycle deadline is reached before a permit is available
+     */
+    private CompletableFuture<Boolean> acquirePermitAsync() {
+        if (rateLimiter.tryAcquire()) {
+            return CompletableFuture.completedFuture(true);
+        }
+
+        if (cycleDeadline != null && cycleDeadline.isExpired()) {
+            return CompletableFuture.completedFuture(false);
+        }
+
+        long retryDelayMicros = Math.max((long) (TimeUnit.SECONDS.toMicros(1) / rateLimiter.getRate()), 1);
+
+        return CompletableFuture.supplyAsync(() -> null,
+                CompletableFuture.delayedExecutor(retryDelayMicros, TimeUnit.MICROSECONDS))
+                .thenCompose(ignored -> acquirePermitAsync());
+    }
+
+    /**
+     * Every page is given the time left until the cycle deadline, if any
+     */
+    private GetMetricDataRequest buildRequest(GetMetricDataRequest.Builder requestBuilder) {
+        if (cycleDeadline != null) {
+            requestBuilder.overrideConfiguration(cycleDeadline.toOverrideConfiguration());
+        }
+
+        return requestBuilder.build();
+    }
+
+    private MetricDataQuery createMetricDataQuery(int index, MetricStatistic metricStatistic, int period) {
+        AWSMetric metric = metricStatistic.getMetric();
+
+        // Validate period according to AWS CloudWatch requirements
+        MetricStatisticCollector.validatePeriod(period, startTimeInMinsBeforeNow);
+
+        MetricStat metricStat = MetricStat.builder()
+                .metric(metric.getMetric())
+                .period(period)
+                .stat(metricStatistic.getStatType().getTypeName())
+                .build();
+
+        return MetricDataQuery.builder()
+                .id(QUERY_ID_PREFIX + index)
+                .metricStat(metricStat)
+                .returnData(true)
+                .build();
+    }
+
+    /**
+     * @return the watermark of every metric statistic of the batch, or null if
+     * incremental time windows are disabled or any of them has no watermark yet
+     */
+    private Instant[] getWatermarks(int[] periods) {
+        if (metricsConfig == null || !metricsConfig.isIncrementalTimeWindows()) {
+            return null;
+        }
+
+        Instant[] watermarks = new Instant[metricStatistics.size()];
+
+        for (int index = 0; index < metricStatistics.size(); index++) {
+            watermarks[index] = SeriesWatermarkStore.getInstance().get(getSeriesKey(index, periods[index]));
+
+            if (watermarks[index] == null) {
+                return null;
+            }
+        }
+
+        return watermarks;
+    }
+
+    private void updateWatermarks(int[] periods, Instant[] latestTimestamps) {
+        if (metricsConfig == null || !metricsConfig.isIncrementalTimeWindows()) {
+            return;
+        }
+
+        for (int index = 0; index < metricStatistics.size(); index++) {
+            if (latestTimestamps[index] != null) {
+                SeriesWatermarkStore.getInstance().update(getSeriesKey(index, periods[index]), latestTimestamps[index],
+                        metricStatistics.get(index).getValue(), null);
+            }
+        }
+    }
+
+    /**
+     * Reports the datapoint at the watermark again for the metric statistics without a newer one
+     */
+    private void reportLastValues(int[] periods, Instant[] latestTimestamps) {
+        if (metricsConfig == null || !metricsConfig.isIncrementalTimeWindows()) {
+            return;
+        }
+
+        for (int index = 0; index < metricStatistics.size(); index++) {
+            if (latestTimestamps[index] == null) {
+                SeriesWatermarkStore.getInstance().reportLastValue(getSeriesKey(index, periods[index]),
+                        metricStatistics.get(index));
+            }
+        }
+    }
+
+    private String getSeriesKey(int index, int period) {
+        MetricStatistic metricStatistic = metricStatistics.get(index);
+        return SeriesWatermarkStore.getSeriesKey(accountName, region, metricStatistic.getMetric(),
+                metricStatistic.getStatType(), period);
+    }
+
+    /**
+     * Keeps the value of the latest timestamp seen for the query,
+     * as the datapoints of a query may be spread over several pages.
+     * Datapoints at or before the watermark of the query are already reported.
+     */
+    private void processMetricDataResult(MetricDataResult result, Instant[] watermarks, Instant[] latestTimestamps) {
+        int index = getQueryIndex(result.id());
+
+        if (index < 0 || index >= metricStatistics.size()) {
+            LOGGER.warn(String.format("Ignoring unknown MetricDataResult id [%s]", result.id()));
+            return;
+        }
+
+        List<Instant> timestamps = result.timestamps();
+        List<Double> values = result.values();
+
+        for (int position = 0; position < timestamps.size() && position < values.size(); position++) {
+            Instant timestamp = timestamps.get(position);
+
+            if (watermarks != null && !timestamp.isAfter(watermarks[index])) {
+                continue;
+            }
+
+            if (latestTimestamps[index] == null || timestamp.isAfter(latestTimestamps[index])) {
+                latestTimestamps[index] = timestamp;
+                metricStatistics.get(index).setValue(values.get(position));
+                metricStatistics.get(index).setTimestamp(timestamp);
+            }
+        }
+
+        if (latestTimestamps[index] == null && LOGGER.isDebugEnabled()) {
+            AWSMetric metric = metricStatistics.get(index).getMetric();
+            LOGGER.debug(String.format("No statistics retrieved for Namespace [%s] "
+                            + "Account [%s] Region [%s] Metric [%s] Dimensions [%s] Status [%s]",
+                    metric.getMetric().namespace(), accountName, region,
+                    metric.getIncludeMetric().getName(), metric.getMetric().dimensions(),
+                    result.statusCodeAsString()));
+        }
+    }
+
+    private int getQueryIndex(String id) {
+        try {
+            return Integer.parseInt(id.substring(QUERY_ID_PREFIX.length()));
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private void setStartTimeInMinsBeforeNow(int startTimeInMinsBeforeNow) {
+        this.startTimeInMinsBeforeNow = startTimeInMinsBeforeNow < 0 ?
+                DEFAULT_START_TIME_IN_MINS_BEFORE_NOW : startTimeInMinsBeforeNow;
+    }
+
+    private void setEndTimeInMinsBeforeNow(int endTimeInMinsBeforeNow) {
+        this.endTimeInMinsBeforeNow = endTimeInMinsBeforeNow < 0 ?
+                DEFAULT_END_TIME_IN_MINS_BEFORE_NOW : endTimeInMinsBeforeNow;
+    }
+
+    /**
+     * Builder class to maintain readability when
+     * building {@link MetricDataBatchCollector} due to its params size
+     */
+    public static class Builder {
+
+        private String accountName;
+
+        private String region;
+
+        private CloudWatchClient awsCloudWatch;
+
+        private List<MetricStatistic> metricStatistics;
+
+        private MetricsTimeRange metricsTimeRange;
+
+        private RateLimiter rateLimiter;
+
+        private LongAdder awsRequestsCounter;
+
+        private MetricsConfig metricsConfig;
+
+        private CycleDeadline cycleDeadline;
+
+        private AdaptiveRateController adaptiveRateController;
+
+        public Builder withAccountName(String accountName) {
+            this.accountName = accountName;
+            return this;
+        }
+
+        public Builder withRegion(String region) {
+            this.region = region;
+            return this;
+        }
+
+        public Builder withAwsCloudWatch(CloudWatchClient awsCloudWatch) {
+            this.awsCloudWatch = awsCloudWatch;
+            return this;
+        }
+
+        /**
+         * @param metricStatistics the metric statistics to retrieve, each
+         *                         with its metric and statistic type set
+         */
+        public Builder withMetricStatistics(List<MetricStatistic> metricStatistics) {
+            this.metricStatistics = metricStatistics;
+            return this;
+        }
+
+        public Builder withMetricsTimeRange(MetricsTimeRange metricsTimeRange) {
+            this.metricsTimeRange = metricsTimeRange;
+            return this;
+        }
+
+        public Builder withRateLimiter(RateLimiter rateLimiter) {
+            this.rateLimiter = rateLimiter;
+            return this;
+        }
+
+        public Builder withAWSRequestCounter(LongAdder awsRequestsCounter) {
+            this.awsRequestsCounter = awsRequestsCounter;
+            return this;
+        }
+
+        public Builder withMetricsConfig(MetricsConfig metricsConfig) {
+            this.metricsConfig = metricsConfig;
+            return this;
+        }
+
+        public Builder withCycleDeadline(CycleDeadline cycleDeadline) {
+            this.cycleDeadline = cycleDeadline;
+            return this;
+        }
+
+        /**
+         * @param adaptiveRateController records the outcome of every page requested, if any
+         */
+        public Builder withAdaptiveRateController(AdaptiveRateController adaptiveRateController) {
+            this.adaptiveRateController = adaptiveRateController;
+            return this;
+        }
+
+        public MetricDataBatchCollector build() {
+            return new MetricDataBatchCollector(this);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+/*
+ * Copyright 2018. AppDynamics LLC and its affiliates.
+ * All Rights Reserved.
+ * This is unpublished proprietary source code of AppDynamics LLC and its affiliates.
+ * The copyright notice above does not evidence any actual or intended publication of such source code.
+ */
+
+package com.appdynamics.extensions.aws.collectors;
+
+import com.appdynamics.extensions.metrics.Metric;
+
+import java.util.List;
+
+/**
+ * Receives the metrics of each region as soon as the region is collected,
+ * instead of once all accounts of the namespace are collected
+ * <p>
+ * Called concurrently by the collector threads.
+ */
+public interface MetricSink {
+
+    void write(List<Metric> metrics);
+}
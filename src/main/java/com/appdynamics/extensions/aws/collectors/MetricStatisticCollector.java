@@ -14,21 +14,29 @@ import com.appdynamics.extensions.aws.exceptions.AwsException;
 import com.appdynamics.extensions.aws.metric.MetricStatistic;
 import com.appdynamics.extensions.aws.metric.StatisticType;
 import com.appdynamics.extensions.logging.ExtensionsLoggerFactory;
+import com.google.common.util.concurrent.RateLimiter;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.slf4j.Logger;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchAsyncClient;
 import software.amazon.awssdk.services.cloudwatch.CloudWatchClient;
 import software.amazon.awssdk.services.cloudwatch.model.Datapoint;
 import software.amazon.awssdk.services.cloudwatch.model.GetMetricStatisticsRequest;
 import software.amazon.awssdk.services.cloudwatch.model.GetMetricStatisticsResponse;
+import software.amazon.awssdk.services.cloudwatch.model.Statistic;
 
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 
 import static com.appdynamics.extensions.aws.Constants.DEFAULT_END_TIME_IN_MINS_BEFORE_NOW;
 import static com.appdynamics.extensions.aws.Constants.DEFAULT_METRIC_PERIOD_IN_SEC;
@@ -47,7 +55,7 @@ import static com.appdynamics.extensions.aws.validators.Validator.validateTimeRa
  *
  * @author Florencio Sarmiento
  */
-public class MetricStatisticCollector implements Callable<MetricStatistic> {
+public class MetricStatisticCollector implements MetricStatisticsTask {
 
     private static Logger LOGGER = ExtensionsLoggerFactory.getLogger(MetricStatisticCollector.class);
 
@@ -59,7 +67,7 @@ public class MetricStatisticCollector implements Callable<MetricStatistic> {
 
     private AWSMetric metric;
 
-    private StatisticType statType;
+    private List<StatisticType> statTypes;
 
     private int startTimeInMinsBeforeNow;
 
@@ -71,104 +79,365 @@ public class MetricStatisticCollector implements Callable<MetricStatistic> {
 
     private MetricsConfig metricsConfig;
 
+    private CycleDeadline cycleDeadline;
+
+    private RateLimiter rateLimiter;
+
+    private AdaptiveRateController adaptiveRateController;
+
     private MetricStatisticCollector(Builder builder) {
 
         this.accountName = builder.accountName;
         this.region = builder.region;
         this.awsCloudWatch = builder.awsCloudWatch;
         this.metric = builder.metric;
-        this.statType = builder.statType;
+        this.statTypes = builder.statTypes;
         this.awsRequestsCounter = builder.awsRequestsCounter;
         this.metricPrefix = builder.metricPrefix;
         this.metricsConfig = builder.metricsConfig;
+        this.cycleDeadline = builder.cycleDeadline;
+        this.rateLimiter = builder.rateLimiter;
+        this.adaptiveRateController = builder.adaptiveRateController;
+
+        setStartTimeInMinsBeforeNow(getStartTimeInMinsBeforeNow(metric, builder.metricsTimeRange));
+        setEndTimeInMinsBeforeNow(getEndTimeInMinsBeforeNow(metric, builder.metricsTimeRange));
+    }
 
-        //Check if time ranges are specified locally for a metric. If not use the global time ranges.
+    /**
+     * Check if time ranges are specified locally for a metric. If not use the global time ranges.
+     */
+    static int getStartTimeInMinsBeforeNow(AWSMetric metric, MetricsTimeRange globalMetricsTimeRange) {
         MetricsTimeRange metricsTimeRangeLocal = metric.getIncludeMetric().getMetricsTimeRange();
 
-        int startTimeInMinsBeforeNow = builder.metricsTimeRange.getStartTimeInMinsBeforeNow();
         if (metricsTimeRangeLocal != null) {
-            startTimeInMinsBeforeNow = metricsTimeRangeLocal.getStartTimeInMinsBeforeNow();
+            return metricsTimeRangeLocal.getStartTimeInMinsBeforeNow();
         }
 
-        int endTimeInMinsBeforeNow = builder.metricsTimeRange.getEndTimeInMinsBeforeNow();
+        return globalMetricsTimeRange.getStartTimeInMinsBeforeNow();
+    }
+
+    static int getEndTimeInMinsBeforeNow(AWSMetric metric, MetricsTimeRange globalMetricsTimeRange) {
+        MetricsTimeRange metricsTimeRangeLocal = metric.getIncludeMetric().getMetricsTimeRange();
+
         if (metricsTimeRangeLocal != null) {
-            endTimeInMinsBeforeNow = metricsTimeRangeLocal.getEndTimeInMinsBeforeNow();
+            return metricsTimeRangeLocal.getEndTimeInMinsBeforeNow();
+        }
+
+        return globalMetricsTimeRange.getEndTimeInMinsBeforeNow();
+    }
+
+    /**
+     * Creates one {@link MetricStatistic} per statistic type. When more than one
+     * statistic type is requested, the statistic name is used as a suffix
+     * so that each of them is reported under its own metric path.
+     */
+    static List<MetricStatistic> createMetricStatistics(AWSMetric metric, List<StatisticType> statTypes,
+                                                        String metricPrefix) {
+        List<MetricStatistic> metricStatistics = new ArrayList<>(statTypes.size());
+
+        for (StatisticType statType : statTypes) {
+            MetricStatistic metricStatistic = new MetricStatistic();
+            metricStatistic.setMetric(metric);
+            metricStatistic.setMetricPrefix(metricPrefix);
+            metricStatistic.setStatType(statType);
+
+            if (statTypes.size() > 1) {
+                metricStatistic.setStatSuffix(statType.getTypeName());
+            }
+
+            metricStatistics.add(metricStatistic);
         }
 
-        setStartTimeInMinsBeforeNow(startTimeInMinsBeforeNow);
-        setEndTimeInMinsBeforeNow(endTimeInMinsBeforeNow);
+        return metricStatistics;
     }
 
     /**
-     * Uses {@link CloudWatchClient} to retrieve metric datapoints.
+     * Uses {@link CloudWatchClient} to retrieve metric datapoints
+     * of all the statistic types specified in a single request.
      * <p>
-     * Returns statistic based from the latest datapoint
-     * and the statistic type specified.
+     * GetMetricStatistics does not accept Statistics and ExtendedStatistics
+     * in the same request, so when both basic and extended statistic types
+     * are specified a second request is made for the extended ones.
+     * <p>
+     * Returns one statistic per statistic type specified,
+     * based from the latest datapoint.
+     */
+    public List<MetricStatistic> call() throws Exception {
+        try {
+            return collect(request -> CompletableFuture.completedFuture(
+                    awsCloudWatch.getMetricStatistics(request))).join();
+
+        } catch (Exception e) {
+            throw createException(e instanceof CompletionException ? e.getCause() : e);
+        }
+    }
+
+    /**
+     * Same as {@link #call()}, but the requests are sent with the specified
+     * {@link CloudWatchAsyncClient} without blocking the calling thread
      */
-    public MetricStatistic call() throws Exception {
-        MetricStatistic metricStatistic = null;
+    public CompletableFuture<List<MetricStatistic>> callAsync(CloudWatchAsyncClient awsCloudWatchAsync) {
+        CompletableFuture<List<MetricStatistic>> result;
 
         try {
-            validateTimeRange(startTimeInMinsBeforeNow, endTimeInMinsBeforeNow);
+            result = collect(awsCloudWatchAsync::getMetricStatistics);
+        } catch (Exception e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+
+        return result.handle((metricStatistics, e) -> {
+            if (e != null) {
+                throw new CompletionException(createException(
+                        e instanceof CompletionException ? e.getCause() : e));
+            }
+
+            return metricStatistics;
+        });
+    }
+
+    private AwsException createException(Throwable cause) {
+        return new AwsException(String.format(
+                "Error getting MetricStatistic for Namespace [%s] "
+                        + "Account [%s] Region [%s] Metric [%s] Dimensions [%s]",
+                metric.getMetric().namespace(), accountName, region,
+                metric.getIncludeMetric().getName(), metric.getMetric().dimensions()), cause);
+    }
 
-            if (LOGGER.isTraceEnabled()) {
-                LOGGER.trace(String.format("Collecting MetricStatistic for Namespace [%s] "
+    private CompletableFuture<List<MetricStatistic>> collect(
+            Function<GetMetricStatisticsRequest, CompletableFuture<GetMetricStatisticsResponse>> requestSender) {
+
+        Function<GetMetricStatisticsRequest, CompletableFuture<GetMetricStatisticsResponse>> sender =
+                rateLimited(adaptiveRateController != null ? adaptiveRateController.record(requestSender) : requestSender);
+
+        validateTimeRange(startTimeInMinsBeforeNow, endTimeInMinsBeforeNow);
+
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace(String.format("Collecting MetricStatistic for Namespace [%s] "
+                            + "Account [%s] Region [%s] Metric [%s] Dimensions [%s]",
+                    metric.getMetric().namespace(), accountName, region,
+                    metric.getIncludeMetric().getName(), metric.getMetric().dimensions()));
+        }
+
+        if (cycleDeadline != null && cycleDeadline.isExpired()) {
+            //Queued until after the deadline, left to the next cycle
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug(String.format("Cycle deadline reached, skipping MetricStatistic for Namespace [%s] "
                                 + "Account [%s] Region [%s] Metric [%s] Dimensions [%s]",
                         metric.getMetric().namespace(), accountName, region,
                         metric.getIncludeMetric().getName(), metric.getMetric().dimensions()));
             }
 
-            metricStatistic = new MetricStatistic();
-            metricStatistic.setMetric(metric);
-            metricStatistic.setMetricPrefix(metricPrefix);
+            return CompletableFuture.completedFuture(new ArrayList<MetricStatistic>());
+        }
+
+        List<MetricStatistic> metricStatistics = createMetricStatistics(metric, statTypes, metricPrefix);
+
+        List<MetricStatistic> basicStatistics = new ArrayList<>();
+        List<MetricStatistic> extendedStatistics = new ArrayList<>();
+
+        for (MetricStatistic metricStatistic : metricStatistics) {
+            if (metricStatistic.getStatType().isExtended()) {
+                extendedStatistics.add(metricStatistic);
+            } else {
+                basicStatistics.add(metricStatistic);
+            }
+        }
+
+        CompletableFuture<List<MetricStatistic>> basicResult = basicStatistics.isEmpty() ?
+                CompletableFuture.completedFuture(basicStatistics) :
+                collectStatistics(basicStatistics, false, sender);
+
+        CompletableFuture<List<MetricStatistic>> extendedResult = extendedStatistics.isEmpty() ?
+                CompletableFuture.completedFuture(extendedStatistics) :
+                collectStatistics(extendedStatistics, true, sender);
+
+        return basicResult.thenCombine(extendedResult, (basic, extended) -> metricStatistics);
+    }
+
+    /**
+     * Takes a permit for every request but the first one, already accounted for by the caller,
+     * e.g. for the extended statistics requested along with basic ones
+     */
+    private Function<GetMetricStatisticsRequest, CompletableFuture<GetMetricStatisticsResponse>> rateLimited(
+            Function<GetMetricStatisticsRequest, CompletableFuture<GetMetricStatisticsResponse>> sender) {
+        AtomicBoolean firstRequest = new AtomicBoolean(true);
+
+        return request -> {
+            if (!firstRequest.compareAndSet(true, false) && rateLimiter != null) {
+                rateLimiter.acquire();
+            }
+
+            return sender.apply(request);
+        };
+    }
+
+    private CompletableFuture<List<MetricStatistic>> collectStatistics(
+            List<MetricStatistic> metricStatistics, boolean extended,
+            Function<GetMetricStatisticsRequest, CompletableFuture<GetMetricStatisticsResponse>> sender) {
+
+        int periodToUse = getPeriod(metric, metricsConfig);
+
+        // Validate period according to AWS CloudWatch requirements
+        validatePeriod(periodToUse, startTimeInMinsBeforeNow);
+
+        Instant startTime = DateTime.now(DateTimeZone.UTC).minusMinutes(startTimeInMinsBeforeNow).toDate().toInstant();
+        Instant endTime = DateTime.now(DateTimeZone.UTC).minusMinutes(endTimeInMinsBeforeNow).toDate().toInstant();
+
+        Instant watermark = getWatermark(metricStatistics, periodToUse);
+
+        if (watermark != null) {
+            // The datapoint at the watermark is already reported, only ask for the periods after it
+            Instant nextDatapointTime = watermark.plusSeconds(periodToUse);
+
+            if (nextDatapointTime.isAfter(startTime)) {
+                startTime = nextDatapointTime;
+            }
+
+            if (!startTime.isBefore(endTime)) {
+                if (LOGGER.isTraceEnabled()) {
+                    LOGGER.trace(String.format("No new datapoint expected yet for Namespace [%s] "
+                                    + "Account [%s] Region [%s] Metric [%s] Dimensions [%s]",
+                            metric.getMetric().namespace(), accountName, region,
+                            metric.getIncludeMetric().getName(), metric.getMetric().dimensions()));
+                }
 
-            GetMetricStatisticsRequest request = createGetMetricStatisticsRequest();
-            GetMetricStatisticsResponse result = awsCloudWatch.getMetricStatistics(request);
+                reportLastValues(metricStatistics, periodToUse);
+                return CompletableFuture.completedFuture(metricStatistics);
+            }
+        }
+
+        GetMetricStatisticsRequest request = createGetMetricStatisticsRequest(metricStatistics, extended,
+                periodToUse, startTime, endTime);
+
+        return sender.apply(request).thenApply(result -> {
             awsRequestsCounter.increment();
 
             Datapoint latestDatapoint = getLatestDatapoint(result.datapoints());
 
-            if (latestDatapoint != null) {
-                Double value = getValue(latestDatapoint);
-                metricStatistic.setValue(value);
-                metricStatistic.setUnit(latestDatapoint.unitAsString());
+            if (latestDatapoint != null && (watermark == null || latestDatapoint.timestamp().isAfter(watermark))) {
+                for (MetricStatistic metricStatistic : metricStatistics) {
+                    Double value = getValue(latestDatapoint, metricStatistic.getStatType());
+                    metricStatistic.setValue(value);
+                    metricStatistic.setUnit(latestDatapoint.unitAsString());
+                    metricStatistic.setTimestamp(latestDatapoint.timestamp());
+                }
+
+                updateWatermarks(metricStatistics, periodToUse, latestDatapoint.timestamp());
+
+            } else if (watermark != null) {
+                reportLastValues(metricStatistics, periodToUse);
             }
 
-        } catch (Exception e) {
-            throw new AwsException(String.format(
-                    "Error getting MetricStatistic for Namespace [%s] "
-                            + "Account [%s] Region [%s] Metric [%s] Dimensions [%s]",
-                    metric.getMetric().namespace(), accountName, region,
-                    metric.getIncludeMetric().getName(), metric.getMetric().dimensions()), e);
+            return metricStatistics;
+        });
+    }
+
+    /**
+     * @return the oldest watermark of the statistics specified, or null if
+     * incremental time windows are disabled or any of them has no watermark yet
+     */
+    private Instant getWatermark(List<MetricStatistic> metricStatistics, int period) {
+        if (metricsConfig == null || !metricsConfig.isIncrementalTimeWindows()) {
+            return null;
+        }
+
+        Instant watermark = null;
+
+        for (MetricStatistic metricStatistic : metricStatistics) {
+            Instant seriesWatermark = SeriesWatermarkStore.getInstance().get(SeriesWatermarkStore.getSeriesKey(
+                    accountName, region, metric, metricStatistic.getStatType(), period));
+
+            if (seriesWatermark == null) {
+                return null;
+            }
+
+            if (watermark == null || seriesWatermark.isBefore(watermark)) {
+                watermark = seriesWatermark;
+            }
         }
 
-        return metricStatistic;
+        return watermark;
     }
 
-    private GetMetricStatisticsRequest createGetMetricStatisticsRequest() {
-        // Determine period: metric-specific > global config > default constant
-        int periodToUse = DEFAULT_METRIC_PERIOD_IN_SEC;
-        
-        if (metric.getIncludeMetric().getPeriod() > 0) {
-            periodToUse = metric.getIncludeMetric().getPeriod();
-        } else if (metricsConfig != null && metricsConfig.getDefaultPeriod() > 0) {
-            periodToUse = metricsConfig.getDefaultPeriod();
+    private void updateWatermarks(List<MetricStatistic> metricStatistics, int period, Instant timestamp) {
+        if (metricsConfig == null || !metricsConfig.isIncrementalTimeWindows()) {
+            return;
         }
 
-        // Validate period according to AWS CloudWatch requirements
-        validatePeriod(periodToUse, startTimeInMinsBeforeNow);
+        for (MetricStatistic metricStatistic : metricStatistics) {
+            SeriesWatermarkStore.getInstance().update(SeriesWatermarkStore.getSeriesKey(
+                    accountName, region, metric, metricStatistic.getStatType(), period), timestamp,
+                    metricStatistic.getValue(), metricStatistic.getUnit());
+        }
+    }
 
-        GetMetricStatisticsRequest getMetricStatisticsRequest = GetMetricStatisticsRequest.builder()
-                .startTime(DateTime.now(DateTimeZone.UTC).minusMinutes(startTimeInMinsBeforeNow).toDate().toInstant())
+    /**
+     * Reports the datapoint at the watermark again for the statistics without a newer one
+     */
+    private void reportLastValues(List<MetricStatistic> metricStatistics, int period) {
+        for (MetricStatistic metricStatistic : metricStatistics) {
+            SeriesWatermarkStore.getInstance().reportLastValue(SeriesWatermarkStore.getSeriesKey(
+                    accountName, region, metric, metricStatistic.getStatType(), period), metricStatistic);
+        }
+    }
+
+    private GetMetricStatisticsRequest createGetMetricStatisticsRequest(List<MetricStatistic> metricStatistics,
+                                                                        boolean extended, int period,
+                                                                        Instant startTime, Instant endTime) {
+        GetMetricStatisticsRequest.Builder getMetricStatisticsRequest = GetMetricStatisticsRequest.builder()
+                .startTime(startTime)
                 .namespace(metric.getMetric().namespace())
                 .dimensions(metric.getMetric().dimensions())
-                .period(periodToUse)
+                .period(period)
                 .metricName(metric.getIncludeMetric().getName())
-                .statistics(statType.asStatistic())
-                .endTime(DateTime.now(DateTimeZone.UTC).minusMinutes(endTimeInMinsBeforeNow).toDate().toInstant())
-                .build();
+                .endTime(endTime);
+
+        if (extended) {
+            getMetricStatisticsRequest.extendedStatistics(getExtendedStatistics(metricStatistics));
+        } else {
+            getMetricStatisticsRequest.statistics(getStatistics(metricStatistics));
+        }
+
+        if (cycleDeadline != null) {
+            getMetricStatisticsRequest.overrideConfiguration(cycleDeadline.toOverrideConfiguration());
+        }
 
-        return getMetricStatisticsRequest;
+        return getMetricStatisticsRequest.build();
+    }
+
+    private List<Statistic> getStatistics(List<MetricStatistic> metricStatistics) {
+        List<Statistic> statistics = new ArrayList<>(metricStatistics.size());
+
+        for (MetricStatistic metricStatistic : metricStatistics) {
+            statistics.add(metricStatistic.getStatType().asStatistic());
+        }
+
+        return statistics;
+    }
+
+    private List<String> getExtendedStatistics(List<MetricStatistic> metricStatistics) {
+        List<String> extendedStatistics = new ArrayList<>(metricStatistics.size());
+
+        for (MetricStatistic metricStatistic : metricStatistics) {
+            extendedStatistics.add(metricStatistic.getStatType().getTypeName());
+        }
+
+        return extendedStatistics;
+    }
+
+    /**
+     * Determine period: metric-specific > global config > default constant
+     */
+    static int getPeriod(AWSMetric metric, MetricsConfig metricsConfig) {
+        int periodToUse = DEFAULT_METRIC_PERIOD_IN_SEC;
+
+        if (metric.getIncludeMetric().getPeriod() > 0) {
+            periodToUse = metric.getIncludeMetric().getPeriod();
+        } else if (metricsConfig != null && metricsConfig.getDefaultPeriod() > 0) {
+            periodToUse = metricsConfig.getDefaultPeriod();
+        }
+
+        return periodToUse;
     }
 
     private Datapoint getLatestDatapoint(List<Datapoint> datapoints) {
@@ -221,10 +490,15 @@ public class MetricStatisticCollector implements Callable<MetricStatistic> {
         }
     }
 
-    private Double getValue(Datapoint datapoint) {
+    private Double getValue(Datapoint datapoint, StatisticType statType) {
         Double value = null;
 
         if (datapoint != null) {
+            if (statType.isExtended()) {
+                return datapoint.hasExtendedStatistics() ?
+                        datapoint.extendedStatistics().get(statType.getTypeName()) : null;
+            }
+
             switch (statType) {
                 case AVE:
                     value = datapoint.average();
@@ -262,7 +536,7 @@ public class MetricStatisticCollector implements Callable<MetricStatistic> {
      * @param period the period in seconds
      * @param startTimeInMinsBeforeNow the start time in minutes before now
      */
-    private void validatePeriod(int period, int startTimeInMinsBeforeNow) {
+    static void validatePeriod(int period, int startTimeInMinsBeforeNow) {
         if (period <= 0 || period % 60 != 0) {
             throw new IllegalArgumentException("Period must be a positive multiple of 60 seconds");
         }
@@ -293,7 +567,7 @@ public class MetricStatisticCollector implements Callable<MetricStatistic> {
 
         private AWSMetric metric;
 
-        private StatisticType statType;
+        private List<StatisticType> statTypes;
 
         private MetricsTimeRange metricsTimeRange;
 
@@ -303,6 +577,12 @@ public class MetricStatisticCollector implements Callable<MetricStatistic> {
 
         private MetricsConfig metricsConfig;
 
+        private CycleDeadline cycleDeadline;
+
+        private RateLimiter rateLimiter;
+
+        private AdaptiveRateController adaptiveRateController;
+
         public Builder withAccountName(String accountName) {
             this.accountName = accountName;
             return this;
@@ -325,7 +605,12 @@ public class MetricStatisticCollector implements Callable<MetricStatistic> {
         }
 
         public Builder withStatType(StatisticType statType) {
-            this.statType = statType;
+            this.statTypes = Collections.singletonList(statType);
+            return this;
+        }
+
+        public Builder withStatTypes(List<StatisticType> statTypes) {
+            this.statTypes = statTypes;
             return this;
         }
 
@@ -352,5 +637,23 @@ public class MetricStatisticCollector implements Callable<MetricStatistic> {
             this.metricsConfig = metricsConfig;
             return this;
         }
+
+        public Builder withCycleDeadline(CycleDeadline cycleDeadline) {
+            this.cycleDeadline = cycleDeadline;
+            return this;
+        }
+
+        public Builder withRateLimiter(RateLimiter rateLimiter) {
+            this.rateLimiter = rateLimiter;
+            return this;
+        }
+
+        /**
+         * @param adaptiveRateController records the outcome of every request sent, if any
+         */
+        public Builder withAdaptiveRateController(AdaptiveRateController adaptiveRateController) {
+            this.adaptiveRateController = adaptiveRateController;
+            return this;
+        }
     }
 }
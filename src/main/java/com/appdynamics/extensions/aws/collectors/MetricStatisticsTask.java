@@ -0,0 +1,24 @@
+/*
+ * Copyright 2018. AppDynamics LLC and its affiliates.
+ * All Rights Reserved.
+ * This is unpublished proprietary source code of AppDynamics LLC and its affiliates.
+ * The copyright notice above does not evidence any actual or intended publication of such source code.
+ */
+
+package com.appdynamics.extensions.aws.collectors;
+
+import com.appdynamics.extensions.aws.metric.MetricStatistic;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchAsyncClient;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Retrieves the statistics of one or more metrics of a region, either
+ * blocking on {@link #call()} or asynchronously with {@link #callAsync(CloudWatchAsyncClient)}
+ */
+interface MetricStatisticsTask extends Callable<List<MetricStatistic>> {
+
+    CompletableFuture<List<MetricStatistic>> callAsync(CloudWatchAsyncClient awsCloudWatchAsync);
+}
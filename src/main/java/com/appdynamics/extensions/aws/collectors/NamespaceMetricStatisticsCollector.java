@@ -16,26 +16,20 @@ import com.appdynamics.extensions.aws.exceptions.AwsException;
 import com.appdynamics.extensions.aws.metric.AccountMetricStatistics;
 import com.appdynamics.extensions.aws.metric.NamespaceMetricStatistics;
 import com.appdynamics.extensions.aws.metric.processors.MetricsProcessor;
-import com.appdynamics.extensions.executorservice.MonitorExecutorService;
-import com.appdynamics.extensions.executorservice.MonitorThreadPoolExecutor;
 import com.appdynamics.extensions.logging.ExtensionsLoggerFactory;
 import com.appdynamics.extensions.metrics.Metric;
 import com.google.common.collect.Lists;
-import com.google.common.util.concurrent.RateLimiter;
 import com.singularity.ee.agent.systemagent.api.MetricWriter;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 
 import java.util.List;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executors;
 import java.util.concurrent.FutureTask;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.LongAdder;
 
 import static com.appdynamics.extensions.aws.Constants.DEFAULT_NO_OF_THREADS;
+import static com.appdynamics.extensions.aws.Constants.METRIC_PATH_SEPARATOR;
 import static com.appdynamics.extensions.aws.validators.Validator.validateNamespace;
 
 /**
@@ -63,6 +57,10 @@ public class NamespaceMetricStatisticsCollector implements Callable<List<Metric>
 
     private String metricPrefix;
 
+    private MetricSink metricSink;
+
+    private CycleDeadline cycleDeadline;
+
     private NamespaceMetricStatisticsCollector(Builder builder) {
         this.accounts = builder.accounts;
         this.concurrencyConfig = builder.concurrencyConfig;
@@ -75,39 +73,64 @@ public class NamespaceMetricStatisticsCollector implements Callable<List<Metric>
 
     /**
      * Loops through each account for specified namespace and hands
-     * off account metrics retrieval to {@link AccountMetricStatisticsCollector}
+     * off account metrics retrieval to {@link AccountMetricStatisticsCollector},
+     * or to {@link AsyncNamespaceMetricStatisticsCollector} if asyncCollection is enabled
      * <p>
      * Uses {@link MetricsProcessor} to convert all stats retrieved
      * into a {@link Map<String, Double>} format
      * <p>
-     * Returns the accumulated metrics statistics for specified namespace
+     * Returns the accumulated metrics statistics for specified namespace, or with
+     * a {@link MetricSink}, only those not already written to it
      */
     public List<Metric> call() {
         LOGGER.info(String.format("Collecting statistics for Namespace [%s]",
                 metricsProcessor.getNamespace()));
 
         if (accounts != null && !accounts.isEmpty()) {
-            MonitorExecutorService executorService = null;
+            CollectorExecutor executorService = null;
 
             try {
                 validateNamespace(metricsProcessor.getNamespace());
 
-                executorService = new MonitorThreadPoolExecutor((ThreadPoolExecutor) Executors.newFixedThreadPool(getNoOfAccountThreads()));
+                NamespaceMetricStatistics namespaceMetrics;
+
+                if (concurrencyConfig.isAsyncCollection()) {
+                    namespaceMetrics = new AsyncNamespaceMetricStatisticsCollector.Builder(accounts,
+                            concurrencyConfig, metricsConfig, metricsProcessor, metricPrefix)
+                            .withCredentialsDecryptionConfig(credentialsDecryptionConfig)
+                            .withProxyConfig(proxyConfig)
+                            .withAWSRequestCounter(awsRequestsCounter)
+                            .withMetricSink(metricSink)
+                            .withCycleDeadline(cycleDeadline)
+                            .build()
+                            .call();
+
+                } else {
+                    executorService = CollectorExecutor.create(CollectorRuntime.Level.ACCOUNT,
+                            concurrencyConfig.isVirtualThreads(), getNoOfAccountThreads());
+
 
+                    TaskCompletionQueue<AccountMetricStatistics> tasks =
+                            createConcurrentAccountTasks(executorService);
 
-                List<FutureTask<AccountMetricStatistics>> tasks =
-                        createConcurrentAccountTasks(executorService);
+                    namespaceMetrics = new NamespaceMetricStatistics();
+                    namespaceMetrics.setNamespace(metricsProcessor.getNamespace());
 
-                NamespaceMetricStatistics namespaceMetrics = new NamespaceMetricStatistics();
-                namespaceMetrics.setNamespace(metricsProcessor.getNamespace());
+                    collectMetrics(tasks, namespaceMetrics);
+                }
 
-                collectMetrics(tasks, namespaceMetrics);
                 List<Metric> metricStatsForUpload = metricsProcessor.createMetricStatsMapForUpload(namespaceMetrics);
                 String total_requests = "AWS API Calls";
                 Metric metric = new Metric(total_requests, Double.toString(awsRequestsCounter.doubleValue()), metricPrefix + total_requests,
                         MetricWriter.METRIC_AGGREGATION_TYPE_SUM, MetricWriter.METRIC_TIME_ROLLUP_TYPE_SUM, MetricWriter.METRIC_CLUSTER_ROLLUP_TYPE_COLLECTIVE);
                 metricStatsForUpload.add(metric);
 
+                metricStatsForUpload.addAll(createCollectorRuntimeMetrics(metricPrefix));
+
+                if (metricsConfig.isAdaptiveRateLimit()) {
+                    addRateLimitMetrics(metricStatsForUpload);
+                }
+
                 return metricStatsForUpload;
 
             } catch (Exception e) {
@@ -117,7 +140,7 @@ public class NamespaceMetricStatisticsCollector implements Callable<List<Metric>
                                 metricsProcessor.getNamespace()), e);
 
             } finally {
-                if (executorService != null && !executorService.isShutdown()) {
+                if (executorService != null) {
                     executorService.shutdown();
                 }
             }
@@ -130,10 +153,11 @@ public class NamespaceMetricStatisticsCollector implements Callable<List<Metric>
         return Lists.newArrayList();
     }
 
-    private List<FutureTask<AccountMetricStatistics>> createConcurrentAccountTasks(
-            MonitorExecutorService executorService) {
+    private TaskCompletionQueue<AccountMetricStatistics> createConcurrentAccountTasks(
+            CollectorExecutor executorService) {
 
-        List<FutureTask<AccountMetricStatistics>> futureTasks = Lists.newArrayList();
+        TaskCompletionQueue<AccountMetricStatistics> futureTasks = new TaskCompletionQueue<AccountMetricStatistics>();
+        long deadline = CycleDeadline.deadlineNanos(cycleDeadline, concurrencyConfig.getThreadTimeOut());
 
         for (Account account : accounts) {
             AccountMetricStatisticsCollector accountTask =
@@ -147,38 +171,114 @@ public class NamespaceMetricStatisticsCollector implements Callable<List<Metric>
                             .withThreadTimeOut(concurrencyConfig.getThreadTimeOut())
                             .withCredentialsDecryptionConfig(credentialsDecryptionConfig)
                             .withProxyConfig(proxyConfig)
-                            .withRateLimiter(RateLimiter.create(metricsConfig.getGetMetricStatisticsRateLimit()))
                             .withAWSRequestCounter(awsRequestsCounter)
                             .withPrefix(metricPrefix)
                             .withMetricsConfig(metricsConfig)
+                            .withVirtualThreads(concurrencyConfig.isVirtualThreads())
+                            .withMaxConcurrentRequestsPerRegion(concurrencyConfig.getMaxConcurrentRequestsPerRegion())
+                            .withMetricSink(metricSink)
+                            .withCycleDeadline(cycleDeadline)
                             .build();
 
-            FutureTask<AccountMetricStatistics> accountTaskExecutor = new FutureTask<AccountMetricStatistics>(accountTask);
-            executorService.submit("NamespaceMetricStatisticsCollector", accountTaskExecutor);
-            futureTasks.add(accountTaskExecutor);
+            FutureTask<AccountMetricStatistics> accountTaskExecutor = futureTasks.newTask(accountTask);
+            executorService.submit("NamespaceMetricStatisticsCollector", accountTaskExecutor, deadline);
         }
 
         return futureTasks;
     }
 
-    private void collectMetrics(List<FutureTask<AccountMetricStatistics>> parallelTasks, NamespaceMetricStatistics namespaceMetricStatistics) {
+    /**
+     * Waits for the accounts as they complete, until the deadline of the cycle if any,
+     * plus the grace period of the accounts, otherwise up to threadTimeOut seconds for all of them
+     */
+    private void collectMetrics(TaskCompletionQueue<AccountMetricStatistics> parallelTasks, NamespaceMetricStatistics namespaceMetricStatistics) {
+        long deadline = CycleDeadline.deadlineNanos(cycleDeadline, CycleDeadline.Level.ACCOUNT,
+                concurrencyConfig.getThreadTimeOut());
 
-        for (FutureTask<AccountMetricStatistics> task : parallelTasks) {
-            try {
-                LOGGER.debug(String.format("Task: %s",task.toString()));
-                AccountMetricStatistics accountStats = task.get(concurrencyConfig.getThreadTimeOut(), TimeUnit.SECONDS);
+        for (AccountMetricStatistics accountStats : parallelTasks.collect(deadline)) {
+            if (accountStats != null) {
                 namespaceMetricStatistics.add(accountStats);
+            }
+        }
+    }
+
+    /**
+     * Reports the current rate of the adaptive limiter of each account and region,
+     * e.g. MyTestAccount|us-east-1|Rate Limit (GetMetricStatistics)
+     */
+    private void addRateLimitMetrics(List<Metric> metricStatsForUpload) {
+        String api = RegionMetricStatisticsCollector.getRateLimitedApi(metricsConfig);
+        String metricName = String.format("Rate Limit (%s)", api);
+
+        for (Account account : accounts) {
+            if (account.getRegions() == null) {
+                continue;
+            }
 
-            } catch (InterruptedException e) {
-                LOGGER.error("Task interrupted. ", e);
-            } catch (ExecutionException e) {
-                LOGGER.error("Task execution failed. ", e);
-            } catch (TimeoutException e) {
-                LOGGER.error("Task timed out. ", e);
+            for (String region : account.getRegions()) {
+                AdaptiveRateController adaptiveRateController = RateLimiterRegistry.getInstance()
+                        .findAdaptiveRateController(account.getDisplayAccountName(), region, api);
+
+                if (adaptiveRateController != null) {
+                    String metricPath = metricPrefix + account.getDisplayAccountName() + METRIC_PATH_SEPARATOR
+                            + region + METRIC_PATH_SEPARATOR + metricName;
+
+                    metricStatsForUpload.add(new Metric(metricName, Double.toString(adaptiveRateController.getRate()),
+                            metricPath, MetricWriter.METRIC_AGGREGATION_TYPE_AVERAGE,
+                            MetricWriter.METRIC_TIME_ROLLUP_TYPE_AVERAGE, MetricWriter.METRIC_CLUSTER_ROLLUP_TYPE_INDIVIDUAL));
+                }
             }
         }
     }
 
+    /**
+     * Writes the metrics of each region to the sink as soon as the region is collected,
+     * instead of returning them. Set by the monitor when streamingUpload is enabled.
+     * <p>
+     * Only suitable for a {@link MetricsProcessor} converting each region independently.
+     */
+    public void setMetricSink(MetricSink metricSink) {
+        this.metricSink = metricSink;
+    }
+
+    /**
+     * Bounds the collection of all accounts, regions and metrics of the namespace,
+     * instead of threadTimeOut at each level. Set by the monitor for each run.
+     */
+    public void setCycleDeadline(CycleDeadline cycleDeadline) {
+        this.cycleDeadline = cycleDeadline;
+    }
+
+    /**
+     * Tasks waiting for a thread and running in each shared collector pool, e.g.
+     * <prefix>Collector Queue Depth|Region. None unless the pools are started.
+     */
+    static List<Metric> createCollectorRuntimeMetrics(String metricPrefix) {
+        List<Metric> metrics = Lists.newArrayList();
+        CollectorRuntime collectorRuntime = CollectorRuntime.getInstance();
+
+        if (!collectorRuntime.isStarted()) {
+            return metrics;
+        }
+
+        for (CollectorRuntime.Level level : CollectorRuntime.Level.values()) {
+            String levelName = StringUtils.capitalize(level.name().toLowerCase());
+
+            metrics.add(createGaugeMetric(metricPrefix + "Collector Queue Depth" + METRIC_PATH_SEPARATOR + levelName,
+                    levelName, collectorRuntime.getQueueDepth(level)));
+            metrics.add(createGaugeMetric(metricPrefix + "Collector Active Tasks" + METRIC_PATH_SEPARATOR + levelName,
+                    levelName, collectorRuntime.getActiveCount(level)));
+        }
+
+        return metrics;
+    }
+
+    private static Metric createGaugeMetric(String metricPath, String metricName, int value) {
+        return new Metric(metricName, Integer.toString(value), metricPath,
+                MetricWriter.METRIC_AGGREGATION_TYPE_AVERAGE, MetricWriter.METRIC_TIME_ROLLUP_TYPE_AVERAGE,
+                MetricWriter.METRIC_CLUSTER_ROLLUP_TYPE_INDIVIDUAL);
+    }
+
     private int getNoOfAccountThreads() {
         int noOfAccountThreads = concurrencyConfig.getNoOfAccountThreads();
         return noOfAccountThreads > 0 ? noOfAccountThreads : DEFAULT_NO_OF_THREADS;
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2018. AppDynamics LLC and its affiliates.
+ * All Rights Reserved.
+ * This is unpublished proprietary source code of AppDynamics LLC and its affiliates.
+ * The copyright notice above does not evidence any actual or intended publication of such source code.
+ */
+
+package com.appdynamics.extensions.aws.collectors;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.RateLimiter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limiters shared by the collectors of every namespace, one per account,
+ * region and CloudWatch API, as CloudWatch quotas apply to each of them.
+ * <p>
+ * Limiters are kept across cycles. Those no longer used expire after an hour.
+ */
+public class RateLimiterRegistry {
+
+    public static final String GET_METRIC_STATISTICS = "GetMetricStatistics";
+
+    public static final String GET_METRIC_DATA = "GetMetricData";
+
+    //Created eagerly, as collectors of every namespace get it concurrently
+    private static final RateLimiterRegistry INSTANCE = new RateLimiterRegistry();
+
+    private final Cache<String, RateLimiter> rateLimiters;
+
+    private final Cache<String, AdaptiveRateController> adaptiveRateControllers;
+
+    private RateLimiterRegistry() {
+        rateLimiters = CacheBuilder.newBuilder().expireAfterAccess(1, TimeUnit.HOURS).build();
+        adaptiveRateControllers = CacheBuilder.newBuilder().expireAfterAccess(1, TimeUnit.HOURS).build();
+    }
+
+    public static RateLimiterRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the limiter of the account, region and API, created on first use.
+     * The rate of an existing limiter is updated if it was reconfigured.
+     */
+    public RateLimiter getRateLimiter(String accountName, String region, String api, double permitsPerSecond) {
+        RateLimiter rateLimiter = rateLimiters.asMap().computeIfAbsent(getKey(accountName, region, api),
+                key -> RateLimiter.create(permitsPerSecond));
+
+        if (rateLimiter.getRate() != permitsPerSecond) {
+            rateLimiter.setRate(permitsPerSecond);
+        }
+
+        return rateLimiter;
+    }
+
+    /**
+     * Same as {@link #getRateLimiter}, but the rate of the limiter adapts to throttling,
+     * starting at initialRate. The rate is only reset when the controller expires.
+     */
+    public AdaptiveRateController getAdaptiveRateController(String accountName, String region, String api,
+                                                            double initialRate, double maxRate) {
+        AdaptiveRateController adaptiveRateController = adaptiveRateControllers.asMap().computeIfAbsent(
+                getKey(accountName, region, api), key -> new AdaptiveRateController(initialRate, maxRate));
+
+        adaptiveRateController.setMaxRate(maxRate);
+
+        return adaptiveRateController;
+    }
+
+    /**
+     * Returns the adaptive controller of the account, region and API, if any
+     */
+    public AdaptiveRateController findAdaptiveRateController(String accountName, String region, String api) {
+        return adaptiveRateControllers.getIfPresent(getKey(accountName, region, api));
+    }
+
+    private static String getKey(String accountName, String region, String api) {
+        return accountName + '|' + region + '|' + api;
+    }
+}
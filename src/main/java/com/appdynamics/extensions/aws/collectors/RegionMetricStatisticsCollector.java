@@ -14,31 +14,44 @@ import com.appdynamics.extensions.aws.dto.AWSMetric;
 import com.appdynamics.extensions.aws.exceptions.AwsException;
 import com.appdynamics.extensions.aws.metric.MetricStatistic;
 import com.appdynamics.extensions.aws.metric.RegionMetricStatistics;
+import com.appdynamics.extensions.aws.metric.StatisticType;
+import com.appdynamics.extensions.aws.metric.processors.MetricDiscoveryCache;
 import com.appdynamics.extensions.aws.metric.processors.MetricsProcessor;
+import com.appdynamics.extensions.aws.metric.processors.MetricsProcessorHelper;
 import com.appdynamics.extensions.aws.providers.RegionEndpointProvider;
-import com.appdynamics.extensions.executorservice.MonitorExecutorService;
-import com.appdynamics.extensions.executorservice.MonitorThreadPoolExecutor;
 import com.appdynamics.extensions.logging.ExtensionsLoggerFactory;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.RateLimiter;
 import org.slf4j.Logger;
 import java.net.URI;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchAsyncClient;
 import software.amazon.awssdk.services.cloudwatch.CloudWatchClient;
 import software.amazon.awssdk.services.cloudwatch.CloudWatchClientBuilder;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executors;
 import java.util.concurrent.FutureTask;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.LongAdder;
 
 import static com.appdynamics.extensions.aws.Constants.DEFAULT_NO_OF_THREADS;
+import static com.appdynamics.extensions.aws.Constants.GET_METRIC_DATA_REQUESTS_PER_SECOND_QUOTA;
+import static com.appdynamics.extensions.aws.Constants.GET_METRIC_STATISTICS_REQUESTS_PER_SECOND_QUOTA;
 import static com.appdynamics.extensions.aws.validators.Validator.validateRegion;
 
 /**
@@ -72,6 +85,14 @@ public class RegionMetricStatisticsCollector implements Callable<RegionMetricSta
 
     private MetricsConfig metricsConfig;
 
+    private boolean virtualThreads;
+
+    private int maxConcurrentRequests;
+
+    private AdaptiveRateController adaptiveRateController;
+
+    private CycleDeadline cycleDeadline;
+
     private RegionMetricStatisticsCollector(Builder builder) {
 
         this.accountName = builder.accountName;
@@ -79,26 +100,30 @@ public class RegionMetricStatisticsCollector implements Callable<RegionMetricSta
         this.awsCloudWatch = builder.awsCloudWatch;
         this.metricsTimeRange = builder.metricsTimeRange;
         this.metricsProcessor = builder.metricsProcessor;
-        this.rateLimiter = builder.rateLimiter;
         this.awsRequestsCounter = builder.awsRequestsCounter;
         this.metricPrefix = builder.metricPrefix;
         this.metricsConfig = builder.metricsConfig;
         this.threadTimeOut = builder.threadTimeOut;
+        this.virtualThreads = builder.virtualThreads;
+        this.maxConcurrentRequests = builder.maxConcurrentRequests;
+        this.cycleDeadline = builder.cycleDeadline;
 
         setNoOfMetricThreadsPerRegion(builder.noOfMetricThreadsPerRegion);
+        setRateLimiter(builder.rateLimiter);
     }
 
     /**
      * Uses {@link MetricsProcessor} to retrieve metric names
      * then hands off individual metric statistics retrieval to
-     * {@link MetricStatisticCollector}
+     * {@link MetricStatisticCollector}, or to {@link MetricDataBatchCollector}
+     * when GetMetricData collection mode is configured
      * <p>
      * Returns the accumulated metrics statistics for specified region
      */
     public RegionMetricStatistics call() {
         RegionMetricStatistics regionMetricStats = null;
 
-        MonitorExecutorService executorService = null;
+        CollectorExecutor executorService = null;
 
         try {
             RegionEndpointProvider regionEndpointProvider =
@@ -106,23 +131,24 @@ public class RegionMetricStatisticsCollector implements Callable<RegionMetricSta
 
             validateRegion(region, regionEndpointProvider);
 
+            regionMetricStats = new RegionMetricStatistics();
+            regionMetricStats.setRegion(region);
+
+            if (isCycleDeadlineReachedBeforeDiscovery()) {
+                return regionMetricStats;
+            }
+
             LOGGER.info(String.format(
                     "Collecting RegionMetricStatistics for Namespace [%s] Account [%s] Region [%s]",
                     metricsProcessor.getNamespace(), accountName, region));
 
-            List<AWSMetric> metrics = metricsProcessor.getMetrics(awsCloudWatch, accountName, awsRequestsCounter);
-
-            regionMetricStats = new RegionMetricStatistics();
-            regionMetricStats.setRegion(region);
+            List<AWSMetric> metrics = getMetrics();
 
             if (metrics != null && !metrics.isEmpty()) {
 
-                executorService = new MonitorThreadPoolExecutor((ThreadPoolExecutor) Executors.newFixedThreadPool(noOfMetricThreadsPerRegion));
-
+                executorService = CollectorExecutor.create(CollectorRuntime.Level.METRIC, virtualThreads, noOfMetricThreadsPerRegion);
 
-                List<FutureTask<MetricStatistic>> tasks = createConcurrentMetricTasks(
-                        executorService, metrics);
-                collectMetrics(tasks, metrics.size(), regionMetricStats);
+                dispatchMetricTasks(executorService, createMetricTasks(metrics), regionMetricStats);
 
             } else {
                 LOGGER.info(String.format(
@@ -136,7 +162,7 @@ public class RegionMetricStatisticsCollector implements Callable<RegionMetricSta
                     metricsProcessor.getNamespace(), accountName, region), e);
 
         } finally {
-            if (executorService != null && !executorService.isShutdown()) {
+            if (executorService != null) {
                 executorService.shutdown();
             }
         }
@@ -144,59 +170,405 @@ public class RegionMetricStatisticsCollector implements Callable<RegionMetricSta
         return regionMetricStats;
     }
 
-    private List<FutureTask<MetricStatistic>> createConcurrentMetricTasks(MonitorExecutorService executorService,
-                                                                          List<AWSMetric> metrics) {
+    /**
+     * Metrics listed by the processor are discovered per account and region
+     * as configured in the metrics config, and only collected once
+     */
+    private List<AWSMetric> getMetrics() throws Exception {
+        return MetricsProcessorHelper.removeDuplicates(MetricDiscoveryCache.getInstance().withScope(
+                accountName, region, metricsConfig,
+                () -> metricsProcessor.getMetrics(awsCloudWatch, accountName, awsRequestsCounter)));
+    }
+
+    /**
+     * Same as {@link #call()}, but the metric statistics are retrieved with the specified
+     * {@link CloudWatchAsyncClient}. The metrics are still listed with the blocking client,
+     * as required by {@link MetricsProcessor#getMetrics}.
+     * <p>
+     * The calling thread only blocks to list the metrics, and while either the
+     * rate limit or the in flight requests limit is reached.
+     */
+    CompletableFuture<RegionMetricStatistics> callAsync(CloudWatchAsyncClient awsCloudWatchAsync,
+                                                        Semaphore inFlightRequests) {
+        try {
+            RegionEndpointProvider regionEndpointProvider =
+                    RegionEndpointProvider.getInstance();
+
+            validateRegion(region, regionEndpointProvider);
+
+            RegionMetricStatistics regionMetricStats = new RegionMetricStatistics();
+            regionMetricStats.setRegion(region);
+
+            if (isCycleDeadlineReachedBeforeDiscovery()) {
+                return CompletableFuture.completedFuture(regionMetricStats);
+            }
+
+            LOGGER.info(String.format(
+                    "Collecting RegionMetricStatistics asynchronously for Namespace [%s] Account [%s] Region [%s]",
+                    metricsProcessor.getNamespace(), accountName, region));
+
+            List<AWSMetric> metrics = getMetrics();
+
+            if (metrics == null || metrics.isEmpty()) {
+                LOGGER.info(String.format(
+                        "No metric names available to process for Namespace [%s] Account [%s] Region [%s]",
+                        metricsProcessor.getNamespace(), accountName, region));
+
+                return CompletableFuture.completedFuture(regionMetricStats);
+            }
+
+            List<CompletableFuture<List<MetricStatistic>>> results = Lists.newArrayList();
+
+            Iterator<MetricStatisticsTask> metricTasks = createMetricTasks(metrics);
+
+            while (metricTasks.hasNext()) {
+                if (isCycleDeadlineReached()) {
+                    break;
+                }
+
+                MetricStatisticsTask metricTask = metricTasks.next();
+
+                //Limit the number of requests per second. Limit can be configured using getMetricStatisticsRateLimit
+                //or getMetricDataRateLimit config
+                rateLimiter.acquire();
+
+                if (cycleDeadline == null) {
+                    inFlightRequests.acquire();
+
+                } else if (!inFlightRequests.tryAcquire(getTaskTimeOutNanos(), TimeUnit.NANOSECONDS)) {
+                    logCycleDeadlineReached();
+                    break;
+                }
+
+                results.add(metricTask.callAsync(awsCloudWatchAsync)
+                        .whenComplete((metricStatistics, e) -> inFlightRequests.release())
+                        .exceptionally(e -> {
+                            LOGGER.error("Task execution failed. ", e);
+                            return Collections.emptyList();
+                        }));
+            }
+
+            return CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+                for (CompletableFuture<List<MetricStatistic>> result : results) {
+                    for (MetricStatistic metricStatistic : result.join()) {
+                        regionMetricStats.addMetricStatistic(metricStatistic);
+                    }
+                }
+
+                return regionMetricStats;
+            });
+
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+
+            return CompletableFuture.failedFuture(new AwsException(String.format(
+                    "Error getting RegionMetricStatistics for Namespace [%s] Account [%s] Region [%s]",
+                    metricsProcessor.getNamespace(), accountName, region), e));
+        }
+    }
+
+    /**
+     * Tasks are created as they are iterated, GetMetricData batches are packed up front
+     */
+    private Iterator<MetricStatisticsTask> createMetricTasks(List<AWSMetric> metrics) {
+        if (metricsConfig != null && metricsConfig.isGetMetricDataEnabled()) {
+            return createMetricDataTasks(metrics).iterator();
+        }
+
+        return Iterators.transform(metrics.iterator(), this::createMetricStatisticTask);
+    }
+
+    /**
+     * Runs the metric tasks with at most as many in flight as the concurrency limit,
+     * i.e. the number of metric threads, or the max concurrent requests on virtual threads.
+     * A task is only created once a slot frees up, and the rate limit is applied by
+     * the worker running it, so memory grows with the concurrency limit rather than
+     * the number of metrics.
+     * <p>
+     * Statistics are added in the order of the tasks. Stops dispatching once the
+     * cycle deadline is reached, or without one, if no task completes within
+     * threadTimeOut seconds.
+     */
+    private void dispatchMetricTasks(CollectorExecutor executorService, Iterator<MetricStatisticsTask> metricTasks,
+                                     RegionMetricStatistics regionMetricStatistics) throws InterruptedException {
 
-        List<FutureTask<MetricStatistic>> futureTasks = Lists.newArrayList();
+        int maxInFlight = executorService.isVirtualThreads() ? getMaxConcurrentRequests() : noOfMetricThreadsPerRegion;
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        Map<Integer, List<MetricStatistic>> results = new ConcurrentHashMap<>();
+        int taskCount = 0;
 
         long startTime = System.currentTimeMillis();
-        for (AWSMetric metric : metrics) {
+        while (metricTasks.hasNext()) {
+            if (isCycleDeadlineReached()) {
+                break;
+            }
 
-            //Limit the number of requests per second. Limit can be configured using getMetricStatisticsRateLimit config
-            rateLimiter.acquire();
+            if (!inFlight.tryAcquire(getTaskTimeOutNanos(), TimeUnit.NANOSECONDS)) {
+                if (!isCycleDeadlineReached()) {
+                    LOGGER.error(String.format("Task timed out. No metric task completed within %s seconds, " +
+                            "remaining tasks of Account [%s] Region [%s] are skipped", threadTimeOut, accountName, region));
+                }
+                break;
+            }
+
+            int taskIndex = taskCount++;
+            FutureTask<List<MetricStatistic>> metricTaskExecutor =
+                    new FutureTask<List<MetricStatistic>>(createWorkerTask(metricTasks.next())) {
+                        @Override
+                        protected void done() {
+                            try {
+                                results.put(taskIndex, get());
+                            } catch (InterruptedException e) {
+                                LOGGER.error("Task interrupted. ", e);
+                            } catch (ExecutionException e) {
+                                LOGGER.error("Task execution failed. ", e);
+                            } catch (CancellationException e) {
+                                LOGGER.error("Task cancelled. ", e);
+                            } finally {
+                                inFlight.release();
+                            }
+                        }
+                    };
+
+            try {
+                executorService.submit("RegionMetricStatisticsCollector", metricTaskExecutor,
+                        System.nanoTime() + getTaskTimeOutNanos());
+            } catch (RejectedExecutionException e) {
+                inFlight.release();
+                throw e;
+            }
+        }
 
-            MetricStatisticCollector metricTask =
-                    new MetricStatisticCollector.Builder()
-                            .withAccountName(accountName)
-                            .withRegion(region)
-                            .withAwsCloudWatch(awsCloudWatch)
-                            .withMetric(metric)
-                            .withMetricsTimeRange(metricsTimeRange)
-                            .withStatType(metricsProcessor.getStatisticType(metric))
-                            .withAWSRequestCounter(awsRequestsCounter)
-                            .withPrefix(metricPrefix)
-                            .withMetricsConfig(metricsConfig)
-                            .build();
-
-            FutureTask<MetricStatistic> accountTaskExecutor = new FutureTask<MetricStatistic>(metricTask);
-
-            executorService.submit("RegionMetricStatisticsCollector", accountTaskExecutor);
-            futureTasks.add(accountTaskExecutor);
+        if (!inFlight.tryAcquire(maxInFlight, getCollectTimeOutNanos(), TimeUnit.NANOSECONDS)) {
+            LOGGER.error(String.format("Task timed out. Metric tasks of Account [%s] Region [%s] " +
+                    "still running after %s(ms)", accountName, region, System.currentTimeMillis() - startTime));
         }
+
+        for (int taskIndex = 0; taskIndex < taskCount; taskIndex++) {
+            List<MetricStatistic> metricStatistics = results.get(taskIndex);
+
+            if (metricStatistics != null) {
+                for (MetricStatistic metricStatistic : metricStatistics) {
+                    regionMetricStatistics.addMetricStatistic(metricStatistic);
+                }
+            }
+        }
+
         long elapsedTime = System.currentTimeMillis() - startTime;
 
-        LOGGER.debug("Get metric statistics took " + elapsedTime +"(ms)");
+        LOGGER.debug(String.format("Running %s metric tasks took %s(ms)", taskCount, elapsedTime));
+    }
 
-        return futureTasks;
+    /**
+     * Time to wait for a metric task, until the cycle deadline if any, otherwise threadTimeOut seconds
+     */
+    private long getTaskTimeOutNanos() {
+        return cycleDeadline != null ? Math.max(cycleDeadline.remainingNanos(), 0) :
+                TimeUnit.SECONDS.toNanos(threadTimeOut);
     }
 
-    private void collectMetrics(List<FutureTask<MetricStatistic>> parallelTasks,
-                                int taskSize, RegionMetricStatistics regionMetricStatistics) {
+    /**
+     * Time to wait for the metric tasks already running, which complete once their requests
+     * time out at the cycle deadline, until the deadline plus the grace period of the metric tasks
+     * if any, otherwise threadTimeOut seconds
+     */
+    private long getCollectTimeOutNanos() {
+        return cycleDeadline != null ?
+                Math.max(cycleDeadline.getDeadlineNanos(CycleDeadline.Level.METRIC) - System.nanoTime(), 0) :
+                TimeUnit.SECONDS.toNanos(threadTimeOut);
+    }
 
-        for (FutureTask<MetricStatistic> task : parallelTasks) {
+    /**
+     * The statistics collected so far are kept, those of the remaining tasks are
+     * skipped until the next cycle
+     */
+    private boolean isCycleDeadlineReached() {
+        if (cycleDeadline == null || !cycleDeadline.isExpired()) {
+            return false;
+        }
 
-            try {
-                MetricStatistic metricStatistics = task.get(threadTimeOut, TimeUnit.SECONDS);
-                regionMetricStatistics.addMetricStatistic(metricStatistics);
-
-            } catch (InterruptedException e) {
-                LOGGER.error("Task interrupted. ", e);
-            } catch (ExecutionException e) {
-                LOGGER.error("Task execution failed. ", e);
-            } catch (TimeoutException e) {
-                LOGGER.error("Task timed out. ", e);
+        logCycleDeadlineReached();
+        return true;
+    }
+
+    /**
+     * Regions started after the deadline, e.g. queued behind slower ones,
+     * are left to the next cycle without listing their metrics
+     */
+    private boolean isCycleDeadlineReachedBeforeDiscovery() {
+        if (cycleDeadline == null || !cycleDeadline.isExpired()) {
+            return false;
+        }
+
+        LOGGER.info(String.format("Cycle deadline reached, metrics of Namespace [%s] Account [%s] Region [%s] " +
+                "are not listed", metricsProcessor.getNamespace(), accountName, region));
+        return true;
+    }
+
+    private void logCycleDeadlineReached() {
+        LOGGER.info(String.format("Cycle deadline reached, remaining metric tasks of Namespace [%s] " +
+                "Account [%s] Region [%s] are skipped", metricsProcessor.getNamespace(), accountName, region));
+    }
+
+    private Callable<List<MetricStatistic>> createWorkerTask(MetricStatisticsTask metricTask) {
+        return () -> {
+            //Limit the number of requests per second. Limit can be configured using getMetricStatisticsRateLimit
+            //or getMetricDataRateLimit config
+            rateLimiter.acquire();
+
+            return metricTask.call();
+        };
+    }
+
+    /**
+     * Unless one is specified, uses the limiter shared by every namespace
+     * for the account, region and API in use, adaptive if configured
+     */
+    private void setRateLimiter(RateLimiter rateLimiter) {
+        if (rateLimiter != null) {
+            this.rateLimiter = rateLimiter;
+            return;
+        }
+
+        String api = getRateLimitedApi(metricsConfig);
+        int permitsPerSecond = getRateLimit(metricsConfig);
+
+        if (metricsConfig != null && metricsConfig.isAdaptiveRateLimit()) {
+            this.adaptiveRateController = RateLimiterRegistry.getInstance().getAdaptiveRateController(
+                    accountName, region, api, permitsPerSecond,
+                    metricsConfig.getMaxRateLimit() > 0 ? metricsConfig.getMaxRateLimit() : Double.MAX_VALUE);
+            this.rateLimiter = adaptiveRateController.getRateLimiter();
+
+        } else {
+            this.rateLimiter = RateLimiterRegistry.getInstance().getRateLimiter(accountName, region, api, permitsPerSecond);
+        }
+    }
+
+    static String getRateLimitedApi(MetricsConfig metricsConfig) {
+        return metricsConfig != null && metricsConfig.isGetMetricDataEnabled() ?
+                RateLimiterRegistry.GET_METRIC_DATA : RateLimiterRegistry.GET_METRIC_STATISTICS;
+    }
+
+    /**
+     * @return the configured requests per second of the API in use, as each API has its own quota
+     */
+    static int getRateLimit(MetricsConfig metricsConfig) {
+        if (metricsConfig == null) {
+            return GET_METRIC_STATISTICS_REQUESTS_PER_SECOND_QUOTA;
+        }
+
+        return metricsConfig.isGetMetricDataEnabled() ?
+                metricsConfig.getGetMetricDataRateLimit() : metricsConfig.getGetMetricStatisticsRateLimit();
+    }
+
+    private int getMaxConcurrentRequests() {
+        if (maxConcurrentRequests > 0) {
+            return maxConcurrentRequests;
+        }
+
+        return metricsConfig != null && metricsConfig.isGetMetricDataEnabled() ?
+                GET_METRIC_DATA_REQUESTS_PER_SECOND_QUOTA : GET_METRIC_STATISTICS_REQUESTS_PER_SECOND_QUOTA;
+    }
+
+    private MetricStatisticsTask createMetricStatisticTask(AWSMetric metric) {
+        return new MetricStatisticCollector.Builder()
+                .withAccountName(accountName)
+                .withRegion(region)
+                .withAwsCloudWatch(awsCloudWatch)
+                .withMetric(metric)
+                .withMetricsTimeRange(metricsTimeRange)
+                .withStatTypes(getStatisticTypes(metric))
+                .withAWSRequestCounter(awsRequestsCounter)
+                .withPrefix(metricPrefix)
+                .withMetricsConfig(metricsConfig)
+                .withCycleDeadline(cycleDeadline)
+                .withRateLimiter(rateLimiter)
+                .withAdaptiveRateController(adaptiveRateController)
+                .build();
+    }
+
+    /**
+     * Packs the metrics into GetMetricData batches. Metrics are grouped by their
+     * time range first, as all the queries of a request share the same time window.
+     * Every statistic of a metric is a separate query, so a batch is closed
+     * once adding the next metric would exceed the queries per request limit.
+     */
+    private List<MetricStatisticsTask> createMetricDataTasks(List<AWSMetric> metrics) {
+
+        Map<String, List<MetricStatistic>> statisticsByTimeRange = new LinkedHashMap<>();
+        Map<String, MetricsTimeRange> timeRanges = new HashMap<>();
+
+        for (AWSMetric metric : metrics) {
+            MetricsTimeRange timeRange = new MetricsTimeRange();
+            timeRange.setStartTimeInMinsBeforeNow(MetricStatisticCollector.getStartTimeInMinsBeforeNow(metric, metricsTimeRange));
+            timeRange.setEndTimeInMinsBeforeNow(MetricStatisticCollector.getEndTimeInMinsBeforeNow(metric, metricsTimeRange));
+
+            String timeRangeKey = timeRange.getStartTimeInMinsBeforeNow() + "-" + timeRange.getEndTimeInMinsBeforeNow();
+            timeRanges.putIfAbsent(timeRangeKey, timeRange);
+            statisticsByTimeRange.computeIfAbsent(timeRangeKey, key -> new ArrayList<>()).addAll(
+                    MetricStatisticCollector.createMetricStatistics(metric, getStatisticTypes(metric), metricPrefix));
+        }
+
+        List<MetricStatisticsTask> metricTasks = Lists.newArrayList();
+        int queriesPerRequest = metricsConfig.getMetricDataQueriesPerRequest();
+
+        for (Map.Entry<String, List<MetricStatistic>> timeRangeStatistics : statisticsByTimeRange.entrySet()) {
+            List<MetricStatistic> statistics = timeRangeStatistics.getValue();
+            int batchStart = 0;
+
+            while (batchStart < statistics.size()) {
+                int batchEnd = getBatchEnd(statistics, batchStart, queriesPerRequest);
+
+                MetricDataBatchCollector batchTask =
+                        new MetricDataBatchCollector.Builder()
+                                .withAccountName(accountName)
+                                .withRegion(region)
+                                .withAwsCloudWatch(awsCloudWatch)
+                                .withMetricStatistics(statistics.subList(batchStart, batchEnd))
+                                .withMetricsTimeRange(timeRanges.get(timeRangeStatistics.getKey()))
+                                .withRateLimiter(rateLimiter)
+                                .withAWSRequestCounter(awsRequestsCounter)
+                                .withMetricsConfig(metricsConfig)
+                                .withCycleDeadline(cycleDeadline)
+                                .withAdaptiveRateController(adaptiveRateController)
+                                .build();
+
+                metricTasks.add(batchTask);
+
+                batchStart = batchEnd;
             }
         }
+
+        LOGGER.debug(String.format("Packed %s metrics into %s GetMetricData batches",
+                metrics.size(), metricTasks.size()));
+
+        return metricTasks;
+    }
+
+    /**
+     * Keeps all the statistics of a metric within the same batch
+     */
+    private int getBatchEnd(List<MetricStatistic> statistics, int batchStart, int queriesPerRequest) {
+        int batchEnd = Math.min(batchStart + queriesPerRequest, statistics.size());
+
+        while (batchEnd < statistics.size() && batchEnd > batchStart + 1 &&
+                statistics.get(batchEnd).getMetric() == statistics.get(batchEnd - 1).getMetric()) {
+            batchEnd--;
+        }
+
+        return batchEnd;
+    }
+
+    private List<StatisticType> getStatisticTypes(AWSMetric metric) {
+        List<StatisticType> statTypes = metricsProcessor.getStatisticTypes(metric);
+
+        if (statTypes == null || statTypes.isEmpty()) {
+            return Collections.singletonList(metricsProcessor.getStatisticType(metric));
+        }
+
+        return statTypes;
     }
 
     private void setNoOfMetricThreadsPerRegion(int noOfMetricThreadsPerRegion) {
@@ -234,6 +606,12 @@ public class RegionMetricStatisticsCollector implements Callable<RegionMetricSta
 
         private MetricsConfig metricsConfig;
 
+        private boolean virtualThreads;
+
+        private int maxConcurrentRequests;
+
+        private CycleDeadline cycleDeadline;
+
         public Builder withAccountName(String accountName) {
             this.accountName = accountName;
             return this;
@@ -320,5 +698,20 @@ public class RegionMetricStatisticsCollector implements Callable<RegionMetricSta
             this.metricsConfig = metricsConfig;
             return this;
         }
+
+        public Builder withVirtualThreads(boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+            return this;
+        }
+
+        public Builder withMaxConcurrentRequests(int maxConcurrentRequests) {
+            this.maxConcurrentRequests = maxConcurrentRequests;
+            return this;
+        }
+
+        public Builder withCycleDeadline(CycleDeadline cycleDeadline) {
+            this.cycleDeadline = cycleDeadline;
+            return this;
+        }
     }
 }
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2018. AppDynamics LLC and its affiliates.
+ * All Rights Reserved.
+ * This is unpublished proprietary source code of AppDynamics LLC and its affiliates.
+ * The copyright notice above does not evidence any actual or intended publication of such source code.
+ */
+
+package com.appdynamics.extensions.aws.collectors;
+
+import com.appdynamics.extensions.aws.metric.AccountMetricStatistics;
+import com.appdynamics.extensions.aws.metric.NamespaceMetricStatistics;
+import com.appdynamics.extensions.aws.metric.RegionMetricStatistics;
+import com.appdynamics.extensions.aws.metric.processors.MetricsProcessor;
+import com.appdynamics.extensions.logging.ExtensionsLoggerFactory;
+import com.appdynamics.extensions.metrics.Metric;
+import org.slf4j.Logger;
+
+import java.util.List;
+
+/**
+ * Converts the statistics of a single region with {@link MetricsProcessor}
+ * and writes them to a {@link MetricSink}, so that they are no longer kept
+ * until the whole namespace is collected
+ */
+class RegionMetricsWriter {
+
+    private static Logger LOGGER = ExtensionsLoggerFactory.getLogger(RegionMetricsWriter.class);
+
+    private final MetricSink metricSink;
+
+    private final MetricsProcessor metricsProcessor;
+
+    RegionMetricsWriter(MetricSink metricSink, MetricsProcessor metricsProcessor) {
+        this.metricSink = metricSink;
+        this.metricsProcessor = metricsProcessor;
+    }
+
+    /**
+     * Returns null, as the statistics are written and no longer needed
+     */
+    RegionMetricStatistics write(String accountName, RegionMetricStatistics regionStats) {
+        if (regionStats == null) {
+            return null;
+        }
+
+        AccountMetricStatistics accountStats = new AccountMetricStatistics();
+        accountStats.setAccountName(accountName);
+        accountStats.add(regionStats);
+
+        NamespaceMetricStatistics namespaceStats = new NamespaceMetricStatistics();
+        namespaceStats.setNamespace(metricsProcessor.getNamespace());
+        namespaceStats.add(accountStats);
+
+        List<Metric> metrics = metricsProcessor.createMetricStatsMapForUpload(namespaceStats);
+
+        LOGGER.debug(String.format("Writing %s metrics of Namespace [%s] Account [%s] Region [%s]",
+                metrics.size(), metricsProcessor.getNamespace(), accountName, regionStats.getRegion()));
+
+        metricSink.write(metrics);
+
+        return null;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2018. AppDynamics LLC and its affiliates.
+ * All Rights Reserved.
+ * This is unpublished proprietary source code of AppDynamics LLC and its affiliates.
+ * The copyright notice above does not evidence any actual or intended publication of such source code.
+ */
+
+package com.appdynamics.extensions.aws.collectors;
+
+import com.appdynamics.extensions.aws.dto.AWSMetric;
+import com.appdynamics.extensions.aws.metric.MetricStatistic;
+import com.appdynamics.extensions.aws.metric.StatisticType;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import software.amazon.awssdk.services.cloudwatch.model.Dimension;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers, per series and statistic, the timestamp of the newest datapoint
+ * already reported, so that the next request only covers the periods after it,
+ * along with its value, reported again until a newer datapoint is available.
+ * <p>
+ * Watermarks are held in memory across cycles and cleared on config reload.
+ * Series which are no longer collected expire after an hour.
+ */
+public class SeriesWatermarkStore {
+
+    //Created eagerly, as collectors of every namespace get it concurrently
+    private static final SeriesWatermarkStore INSTANCE = new SeriesWatermarkStore();
+
+    private final Cache<String, Watermark> watermarks;
+
+    private SeriesWatermarkStore() {
+        watermarks = CacheBuilder.newBuilder().expireAfterAccess(1, TimeUnit.HOURS).build();
+    }
+
+    public static SeriesWatermarkStore getInstance() {
+        return INSTANCE;
+    }
+
+    public Instant get(String seriesKey) {
+        Watermark watermark = watermarks.getIfPresent(seriesKey);
+        return watermark != null ? watermark.timestamp : null;
+    }
+
+    /**
+     * Moves the watermark of the series forward, older timestamps are ignored
+     *
+     * @param value the value of the datapoint at the timestamp
+     * @param unit  the unit of the datapoint, or null if unknown
+     */
+    public void update(String seriesKey, Instant timestamp, Double value, String unit) {
+        watermarks.asMap().merge(seriesKey, new Watermark(timestamp, value, unit),
+                (current, latest) -> latest.timestamp.isAfter(current.timestamp) ? latest : current);
+    }
+
+    /**
+     * Sets the datapoint at the watermark of the series, if any, on the specified statistic.
+     * <p>
+     * Series with a period longer than the collection interval have no new datapoint
+     * every cycle, reporting the last one again avoids gaps in between, as when
+     * the whole time window is requested every cycle.
+     */
+    public void reportLastValue(String seriesKey, MetricStatistic metricStatistic) {
+        Watermark watermark = watermarks.getIfPresent(seriesKey);
+
+        if (watermark != null && watermark.value != null) {
+            metricStatistic.setValue(watermark.value);
+            metricStatistic.setUnit(watermark.unit);
+            metricStatistic.setTimestamp(watermark.timestamp);
+        }
+    }
+
+    public void clear() {
+        watermarks.invalidateAll();
+    }
+
+    public static String getSeriesKey(String accountName, String region, AWSMetric metric,
+                                       StatisticType statType, int period) {
+        StringBuilder seriesKey = new StringBuilder()
+                .append(accountName).append('|')
+                .append(region).append('|')
+                .append(metric.getMetric().namespace()).append('|')
+                .append(metric.getMetric().metricName()).append('|');
+
+        for (Dimension dimension : metric.getMetric().dimensions()) {
+            seriesKey.append(dimension.name()).append('=').append(dimension.value()).append(',');
+        }
+
+        return seriesKey.append('|').append(statType.getTypeName())
+                .append('|').append(period).toString();
+    }
+
+    private static class Watermark {
+
+        private final Instant timestamp;
+
+        private final Double value;
+
+        private final String unit;
+
+        private Watermark(Instant timestamp, Double value, String unit) {
+            this.timestamp = timestamp;
+            this.value = value;
+            this.unit = unit;
+        }
+    }
+}
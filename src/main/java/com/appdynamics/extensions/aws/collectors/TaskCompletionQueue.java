@@ -0,0 +1,113 @@
+/*
+ * Copyright 2018. AppDynamics LLC and its affiliates.
+ * All Rights Reserved.
+ * This is unpublished proprietary source code of AppDynamics LLC and its affiliates.
+ * The copyright notice above does not evidence any actual or intended publication of such source code.
+ */
+
+package com.appdynamics.extensions.aws.collectors;
+
+import com.appdynamics.extensions.logging.ExtensionsLoggerFactory;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the results of tasks submitted to a {@link CollectorExecutor} as they
+ * complete, as ExecutorCompletionService does for an ExecutorService, within
+ * a single deadline for all of them rather than a timeout per task.
+ * <p>
+ * A task failing or completing early is thus never waited for behind a slow one.
+ */
+class TaskCompletionQueue<V> {
+
+    private static Logger LOGGER = ExtensionsLoggerFactory.getLogger(TaskCompletionQueue.class);
+
+    private final BlockingQueue<IndexedTask> completedTasks = new LinkedBlockingQueue<IndexedTask>();
+
+    private final List<IndexedTask> tasks = new ArrayList<IndexedTask>();
+
+    /**
+     * Returns the task to submit, which is queued once it completes
+     */
+    FutureTask<V> newTask(Callable<V> callable) {
+        IndexedTask task = new IndexedTask(tasks.size(), callable);
+        tasks.add(task);
+        return task;
+    }
+
+    /**
+     * Waits for the tasks in completion order, until all of them completed or the deadline passed
+     * <p>
+     * Returns the results in the order the tasks were created, with null for those
+     * which failed or did not complete in time. Tasks still running are left running.
+     *
+     * @param deadlineNanos as given by {@link System#nanoTime()}
+     */
+    @SuppressWarnings("unchecked")
+    List<V> collect(long deadlineNanos) {
+        Object[] results = new Object[tasks.size()];
+        int noOfPendingTasks = tasks.size();
+
+        try {
+            while (noOfPendingTasks > 0) {
+                IndexedTask task = completedTasks.poll(
+                        Math.max(deadlineNanos - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+
+                if (task == null) {
+                    LOGGER.error(String.format("Task timed out. %s of %s tasks did not complete in time",
+                            noOfPendingTasks, tasks.size()));
+                    break;
+                }
+
+                noOfPendingTasks--;
+
+                try {
+                    results[task.index] = task.get();
+
+                } catch (ExecutionException e) {
+                    LOGGER.error("Task execution failed. ", e);
+                } catch (CancellationException e) {
+                    LOGGER.error("Task cancelled. ", e);
+                }
+            }
+
+        } catch (InterruptedException e) {
+            LOGGER.error("Task interrupted. ", e);
+            Thread.currentThread().interrupt();
+        }
+
+        return (List<V>) Arrays.asList(results);
+    }
+
+    /**
+     * @return the deadline timeOutInSeconds from now, as given by {@link System#nanoTime()}
+     */
+    static long deadlineIn(int timeOutInSeconds) {
+        return System.nanoTime() + TimeUnit.SECONDS.toNanos(timeOutInSeconds);
+    }
+
+    private class IndexedTask extends FutureTask<V> {
+
+        private final int index;
+
+        private IndexedTask(int index, Callable<V> callable) {
+            super(callable);
+            this.index = index;
+        }
+
+        @Override
+        protected void done() {
+            completedTasks.add(this);
+        }
+    }
+}
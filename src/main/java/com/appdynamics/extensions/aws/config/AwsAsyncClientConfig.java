@@ -0,0 +1,26 @@
+package com.appdynamics.extensions.aws.config;
+
+import com.appdynamics.extensions.aws.interceptors.LoggingInterceptor;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.http.async.SdkAsyncHttpClient;
+
+/**
+ * Same as {@link AwsClientConfig}, for clients on the non-blocking transport
+ */
+public class AwsAsyncClientConfig {
+    private final SdkAsyncHttpClient httpClient;
+    private final ClientOverrideConfiguration overrideConfiguration;
+
+    public AwsAsyncClientConfig(SdkAsyncHttpClient httpClient, ClientOverrideConfiguration overrideConfiguration) {
+        this.httpClient = httpClient;
+        this.overrideConfiguration = overrideConfiguration.toBuilder().addExecutionInterceptor(new LoggingInterceptor()).build();
+    }
+
+    public SdkAsyncHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    public ClientOverrideConfiguration getOverrideConfiguration() {
+        return overrideConfiguration;
+    }
+}
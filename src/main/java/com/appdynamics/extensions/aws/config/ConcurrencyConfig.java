@@ -20,6 +20,18 @@ public class ConcurrencyConfig {
 
     private int threadTimeOut = 30;
 
+    private boolean virtualThreads;
+
+    private int maxConcurrentRequestsPerRegion;
+
+    private boolean asyncCollection;
+
+    private int asyncEventLoopThreads = 2;
+
+    private int asyncMaxConcurrency = 500;
+
+    private boolean streamingUpload;
+
     public int getNoOfAccountThreads() {
         return noOfAccountThreads;
     }
@@ -54,4 +66,58 @@ public class ConcurrencyConfig {
             this.threadTimeOut = threadTimeOut;
         }
     }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    public int getMaxConcurrentRequestsPerRegion() {
+        return maxConcurrentRequestsPerRegion;
+    }
+
+    public void setMaxConcurrentRequestsPerRegion(int maxConcurrentRequestsPerRegion) {
+        this.maxConcurrentRequestsPerRegion = maxConcurrentRequestsPerRegion;
+    }
+
+    public boolean isAsyncCollection() {
+        return asyncCollection;
+    }
+
+    public void setAsyncCollection(boolean asyncCollection) {
+        this.asyncCollection = asyncCollection;
+    }
+
+    public int getAsyncEventLoopThreads() {
+        return asyncEventLoopThreads;
+    }
+
+    public void setAsyncEventLoopThreads(int asyncEventLoopThreads) {
+        //Set only if valid, otherwise keep the default
+        if (asyncEventLoopThreads > 0) {
+            this.asyncEventLoopThreads = asyncEventLoopThreads;
+        }
+    }
+
+    public int getAsyncMaxConcurrency() {
+        return asyncMaxConcurrency;
+    }
+
+    public void setAsyncMaxConcurrency(int asyncMaxConcurrency) {
+        //Set only if valid, otherwise keep the default
+        if (asyncMaxConcurrency > 0) {
+            this.asyncMaxConcurrency = asyncMaxConcurrency;
+        }
+    }
+
+    public boolean isStreamingUpload() {
+        return streamingUpload;
+    }
+
+    public void setStreamingUpload(boolean streamingUpload) {
+        this.streamingUpload = streamingUpload;
+    }
 }
@@ -7,6 +7,8 @@
 
 package com.appdynamics.extensions.aws.config;
 
+import java.util.List;
+
 /**
  * @author Florencio Sarmiento
  * @author Satish Muddam
@@ -19,6 +21,8 @@ public class IncludeMetric {
 
     private String statType;
 
+    private List<String> statTypes;
+
     private String aggregationType;
 
     private String timeRollUpType;
@@ -49,6 +53,14 @@ public class IncludeMetric {
         this.statType = statType;
     }
 
+    public List<String> getStatTypes() {
+        return statTypes;
+    }
+
+    public void setStatTypes(List<String> statTypes) {
+        this.statTypes = statTypes;
+    }
+
     public String getAlias() {
         return alias;
     }
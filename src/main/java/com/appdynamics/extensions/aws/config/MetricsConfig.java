@@ -9,6 +9,8 @@ package com.appdynamics.extensions.aws.config;
 
 import java.util.List;
 
+import static com.appdynamics.extensions.aws.Constants.MAX_METRIC_DATA_QUERIES_PER_REQUEST;
+
 /**
  * @author Florencio Sarmiento
  */
@@ -20,10 +22,32 @@ public class MetricsConfig {
 
     private int getMetricStatisticsRateLimit = 400;
 
+    private int getMetricDataRateLimit = 50;
+
     private int maxErrorRetrySize;
 
     private int defaultPeriod = 60; // Default period in seconds for all metrics
 
+    private String metricsCollectionMode = MetricsCollectionMode.GET_METRIC_STATISTICS.getMode();
+
+    private int metricDataQueriesPerRequest = MAX_METRIC_DATA_QUERIES_PER_REQUEST;
+
+    private boolean incrementalTimeWindows;
+
+    private boolean adaptiveRateLimit;
+
+    private int maxRateLimit;
+
+    private int discoveryCacheTtlInMins;
+
+    private boolean incrementalDiscovery;
+
+    private int fullDiscoveryIntervalInMins = 1440;
+
+    private String discoverySnapshotFile;
+
+    private int dimensionFilterPushDownLimit;
+
     public List<IncludeMetric> getIncludeMetrics() {
         return includeMetrics;
     }
@@ -48,6 +72,14 @@ public class MetricsConfig {
         this.getMetricStatisticsRateLimit = getMetricStatisticsRateLimit;
     }
 
+    public int getGetMetricDataRateLimit() {
+        return getMetricDataRateLimit;
+    }
+
+    public void setGetMetricDataRateLimit(int getMetricDataRateLimit) {
+        this.getMetricDataRateLimit = getMetricDataRateLimit;
+    }
+
     public int getMaxErrorRetrySize() {
         return maxErrorRetrySize;
     }
@@ -63,4 +95,111 @@ public class MetricsConfig {
     public void setDefaultPeriod(int defaultPeriod) {
         this.defaultPeriod = defaultPeriod;
     }
-}
\ No newline at end of file
+
+    public String getMetricsCollectionMode() {
+        return metricsCollectionMode;
+    }
+
+    public void setMetricsCollectionMode(String metricsCollectionMode) {
+
+        if (MetricsCollectionMode.GET_METRIC_DATA.getMode().equalsIgnoreCase(metricsCollectionMode)) {
+            this.metricsCollectionMode = MetricsCollectionMode.GET_METRIC_DATA.getMode();
+        } else {
+            this.metricsCollectionMode = MetricsCollectionMode.GET_METRIC_STATISTICS.getMode();
+        }
+    }
+
+    public boolean isGetMetricDataEnabled() {
+        return MetricsCollectionMode.GET_METRIC_DATA.getMode().equals(metricsCollectionMode);
+    }
+
+    public int getMetricDataQueriesPerRequest() {
+        return metricDataQueriesPerRequest;
+    }
+
+    public void setMetricDataQueriesPerRequest(int metricDataQueriesPerRequest) {
+        //GetMetricData accepts at most 500 queries per request
+        if (metricDataQueriesPerRequest > 0 && metricDataQueriesPerRequest <= MAX_METRIC_DATA_QUERIES_PER_REQUEST) {
+            this.metricDataQueriesPerRequest = metricDataQueriesPerRequest;
+        }
+    }
+
+    public boolean isIncrementalTimeWindows() {
+        return incrementalTimeWindows;
+    }
+
+    public void setIncrementalTimeWindows(boolean incrementalTimeWindows) {
+        this.incrementalTimeWindows = incrementalTimeWindows;
+    }
+
+    public boolean isAdaptiveRateLimit() {
+        return adaptiveRateLimit;
+    }
+
+    public void setAdaptiveRateLimit(boolean adaptiveRateLimit) {
+        this.adaptiveRateLimit = adaptiveRateLimit;
+    }
+
+    public int getMaxRateLimit() {
+        return maxRateLimit;
+    }
+
+    public void setMaxRateLimit(int maxRateLimit) {
+        this.maxRateLimit = maxRateLimit;
+    }
+
+    public int getDiscoveryCacheTtlInMins() {
+        return discoveryCacheTtlInMins;
+    }
+
+    public void setDiscoveryCacheTtlInMins(int discoveryCacheTtlInMins) {
+        this.discoveryCacheTtlInMins = discoveryCacheTtlInMins;
+    }
+
+    public boolean isIncrementalDiscovery() {
+        return incrementalDiscovery;
+    }
+
+    public void setIncrementalDiscovery(boolean incrementalDiscovery) {
+        this.incrementalDiscovery = incrementalDiscovery;
+    }
+
+    public int getFullDiscoveryIntervalInMins() {
+        return fullDiscoveryIntervalInMins;
+    }
+
+    public void setFullDiscoveryIntervalInMins(int fullDiscoveryIntervalInMins) {
+        if (fullDiscoveryIntervalInMins > 0) {
+            this.fullDiscoveryIntervalInMins = fullDiscoveryIntervalInMins;
+        }
+    }
+
+    public String getDiscoverySnapshotFile() {
+        return discoverySnapshotFile;
+    }
+
+    public void setDiscoverySnapshotFile(String discoverySnapshotFile) {
+        this.discoverySnapshotFile = discoverySnapshotFile;
+    }
+
+    public int getDimensionFilterPushDownLimit() {
+        return dimensionFilterPushDownLimit;
+    }
+
+    public void setDimensionFilterPushDownLimit(int dimensionFilterPushDownLimit) {
+        this.dimensionFilterPushDownLimit = dimensionFilterPushDownLimit;
+    }
+
+    public enum MetricsCollectionMode {
+        GET_METRIC_STATISTICS("GetMetricStatistics"), GET_METRIC_DATA("GetMetricData");
+        private String mode;
+
+        MetricsCollectionMode(String mode) {
+            this.mode = mode;
+        }
+
+        public String getMode() {
+            return mode;
+        }
+    }
+}
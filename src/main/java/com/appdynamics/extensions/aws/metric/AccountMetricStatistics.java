@@ -8,7 +8,6 @@
 package com.appdynamics.extensions.aws.metric;
 
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
@@ -22,7 +21,7 @@ public class AccountMetricStatistics {
 	private String accountName;
 
 	private List<RegionMetricStatistics> regionMetricStatisticsList = 
-			new CopyOnWriteArrayList<RegionMetricStatistics>();
+			new ConcurrentAppendList<RegionMetricStatistics>();
 
 	public String getAccountName() {
 		return accountName;
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2018. AppDynamics LLC and its affiliates.
+ * All Rights Reserved.
+ * This is unpublished proprietary source code of AppDynamics LLC and its affiliates.
+ * The copyright notice above does not evidence any actual or intended publication of such source code.
+ */
+
+package com.appdynamics.extensions.aws.metric;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+
+/**
+ * Thread safe list which can only be appended to, for the statistics accumulated
+ * by the collectors.
+ * <p>
+ * Elements are stored in chunks doubling in size, which are never copied nor
+ * moved, so an append costs O(1) instead of the full copy of a CopyOnWriteArrayList.
+ * Appends are serialised, reads are lock free and see every element appended
+ * before the size they read. Iterators are weakly consistent, i.e. they never
+ * throw ConcurrentModificationException and may see elements appended after
+ * they were created.
+ */
+class ConcurrentAppendList<E> extends AbstractList<E> {
+
+    // the first chunk holds 2^FIRST_CHUNK_SHIFT elements
+    private static final int FIRST_CHUNK_SHIFT = 4;
+
+    private static final int FIRST_CHUNK_SIZE = 1 << FIRST_CHUNK_SHIFT;
+
+    private volatile Object[][] chunks = new Object[1][];
+
+    // written after the element, so that reading it first publishes the elements below it
+    private volatile int size;
+
+    @Override
+    public synchronized boolean add(E element) {
+        int index = size;
+        int chunkIndex = chunkIndex(index);
+        Object[][] currentChunks = chunks;
+
+        if (chunkIndex == currentChunks.length) {
+            currentChunks = Arrays.copyOf(currentChunks, chunkIndex + 1);
+        }
+
+        if (currentChunks[chunkIndex] == null) {
+            currentChunks[chunkIndex] = new Object[FIRST_CHUNK_SIZE << chunkIndex];
+        }
+
+        currentChunks[chunkIndex][offset(index, chunkIndex)] = element;
+        chunks = currentChunks;
+        size = index + 1;
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(String.format("Index: %s, Size: %s", index, size));
+        }
+
+        int chunkIndex = chunkIndex(index);
+        return (E) chunks[chunkIndex][offset(index, chunkIndex)];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Chunk k holds the indexes from FIRST_CHUNK_SIZE * (2^k - 1) up to FIRST_CHUNK_SIZE * (2^(k+1) - 1)
+     */
+    private static int chunkIndex(int index) {
+        return 31 - Integer.numberOfLeadingZeros(index + FIRST_CHUNK_SIZE) - FIRST_CHUNK_SHIFT;
+    }
+
+    private static int offset(int index, int chunkIndex) {
+        return index + FIRST_CHUNK_SIZE - (FIRST_CHUNK_SIZE << chunkIndex);
+    }
+}
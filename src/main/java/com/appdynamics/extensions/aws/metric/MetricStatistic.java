@@ -11,6 +11,8 @@ import com.appdynamics.extensions.aws.dto.AWSMetric;
 import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
 
+import java.time.Instant;
+
 /**
  * @author Florencio Sarmiento
  */
@@ -24,6 +26,12 @@ public class MetricStatistic {
 
     private String metricPrefix;
 
+    private StatisticType statType;
+
+    private String statSuffix;
+
+    private Instant timestamp;
+
     public AWSMetric getMetric() {
         return metric;
     }
@@ -56,6 +64,37 @@ public class MetricStatistic {
         this.metricPrefix = metricPrefix;
     }
 
+    public StatisticType getStatType() {
+        return statType;
+    }
+
+    public void setStatType(StatisticType statType) {
+        this.statType = statType;
+    }
+
+    /**
+     * @return the statistic name to append to the metric name, or null
+     * when only a single statistic is collected for the metric
+     */
+    public String getStatSuffix() {
+        return statSuffix;
+    }
+
+    public void setStatSuffix(String statSuffix) {
+        this.statSuffix = statSuffix;
+    }
+
+    /**
+     * @return the timestamp of the datapoint the value is taken from
+     */
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(Instant timestamp) {
+        this.timestamp = timestamp;
+    }
+
     @Override
     public String toString() {
         return ReflectionToStringBuilder.toString(this, ToStringStyle.SHORT_PREFIX_STYLE);
@@ -8,7 +8,6 @@
 package com.appdynamics.extensions.aws.metric;
 
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * @author Florencio Sarmiento
@@ -27,7 +26,7 @@ public class NamespaceMetricStatistics {
 	}
 
 	private List<AccountMetricStatistics> accountMetricStatisticsList =
-			new CopyOnWriteArrayList<AccountMetricStatistics>();
+			new ConcurrentAppendList<AccountMetricStatistics>();
 
 	public List<AccountMetricStatistics> getAccountMetricStatisticsList() {
 		return this.accountMetricStatisticsList;
@@ -8,7 +8,6 @@
 package com.appdynamics.extensions.aws.metric;
 
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
@@ -21,7 +20,7 @@ public class RegionMetricStatistics {
 
 	private String region;
 
-	private List<MetricStatistic> metricStatisticsList = new CopyOnWriteArrayList<MetricStatistic>();
+	private List<MetricStatistic> metricStatisticsList = new ConcurrentAppendList<MetricStatistic>();
 
 	public String getRegion() {
 		return region;
@@ -23,20 +23,44 @@ public enum StatisticType {
     MAX("Maximum"),
     MIN("Minimum"),
     SUM("Sum"),
-    SAMPLE_COUNT("SampleCount");
+    SAMPLE_COUNT("SampleCount"),
+
+    // Extended statistics
+    P50("p50", true),
+    P90("p90", true),
+    P95("p95", true),
+    P99("p99", true),
+    P99_9("p99.9", true),
+    TM90("tm90", true),
+    TM99("tm99", true);
 
     private static Logger LOGGER = ExtensionsLoggerFactory.getLogger(StatisticType.class);
 
     private String typeName;
 
+    private boolean extended;
+
     StatisticType(String typeName) {
+        this(typeName, false);
+    }
+
+    StatisticType(String typeName, boolean extended) {
         this.typeName = typeName;
+        this.extended = extended;
     }
 
     public String getTypeName() {
         return typeName;
     }
 
+    /**
+     * @return true for percentiles and trimmed means, which CloudWatch
+     * returns in {@code Datapoint.extendedStatistics()}
+     */
+    public boolean isExtended() {
+        return extended;
+    }
+
     public static StatisticType fromString(String name) {
         if (StringUtils.isNotBlank(name)) {
             String trimmedName = name.trim();
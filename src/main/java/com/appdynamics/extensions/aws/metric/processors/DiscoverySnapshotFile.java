@@ -0,0 +1,138 @@
+/*
+ * Copyright 2018. AppDynamics LLC and its affiliates.
+ * All Rights Reserved.
+ * This is unpublished proprietary source code of AppDynamics LLC and its affiliates.
+ * The copyright notice above does not evidence any actual or intended publication of such source code.
+ */
+
+package com.appdynamics.extensions.aws.metric.processors;
+
+import com.google.common.base.Strings;
+import software.amazon.awssdk.services.cloudwatch.model.Dimension;
+import software.amazon.awssdk.services.cloudwatch.model.Metric;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzipped binary file of the metrics discovered per discovery key, i.e. per
+ * account, region, namespace and dimension filters.
+ * <p>
+ * The file is written to a temporary file first, then moved in place, so that
+ * an agent stopped while writing still finds the previous snapshot.
+ */
+class DiscoverySnapshotFile {
+
+    private static final int VERSION = 1;
+
+    private DiscoverySnapshotFile() {
+    }
+
+    static void write(Path file, Map<String, List<Metric>> metricsByKey) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        Path tempFile = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(Files.newOutputStream(tempFile))))) {
+                out.writeInt(VERSION);
+                out.writeInt(metricsByKey.size());
+
+                for (Map.Entry<String, List<Metric>> entry : metricsByKey.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(entry.getValue().size());
+
+                    for (Metric metric : entry.getValue()) {
+                        writeMetric(out, metric);
+                    }
+                }
+            }
+
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Returns no metrics if the file does not exist
+     */
+    static Map<String, List<Metric>> read(Path file) throws IOException {
+        Map<String, List<Metric>> metricsByKey = new HashMap<String, List<Metric>>();
+
+        if (!Files.exists(file)) {
+            return metricsByKey;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file))))) {
+            int version = in.readInt();
+
+            if (version != VERSION) {
+                throw new IOException(String.format("Unsupported discovery snapshot version [%s]", version));
+            }
+
+            int noOfKeys = in.readInt();
+
+            for (int keyIndex = 0; keyIndex < noOfKeys; keyIndex++) {
+                String key = in.readUTF();
+                int noOfMetrics = in.readInt();
+                List<Metric> metrics = new ArrayList<Metric>(noOfMetrics);
+
+                for (int metricIndex = 0; metricIndex < noOfMetrics; metricIndex++) {
+                    metrics.add(readMetric(in));
+                }
+
+                metricsByKey.put(key, metrics);
+            }
+        }
+
+        return metricsByKey;
+    }
+
+    private static void writeMetric(DataOutputStream out, Metric metric) throws IOException {
+        out.writeUTF(Strings.nullToEmpty(metric.namespace()));
+        out.writeUTF(Strings.nullToEmpty(metric.metricName()));
+        out.writeInt(metric.dimensions().size());
+
+        for (Dimension dimension : metric.dimensions()) {
+            out.writeUTF(Strings.nullToEmpty(dimension.name()));
+            out.writeUTF(Strings.nullToEmpty(dimension.value()));
+        }
+    }
+
+    private static Metric readMetric(DataInputStream in) throws IOException {
+        String namespace = in.readUTF();
+        String metricName = in.readUTF();
+        int noOfDimensions = in.readInt();
+        List<Dimension> dimensions = new ArrayList<Dimension>(noOfDimensions);
+
+        for (int index = 0; index < noOfDimensions; index++) {
+            dimensions.add(Dimension.builder().name(in.readUTF()).value(in.readUTF()).build());
+        }
+
+        return Metric.builder()
+                .namespace(namespace)
+                .metricName(metricName)
+                .dimensions(dimensions)
+                .build();
+    }
+}
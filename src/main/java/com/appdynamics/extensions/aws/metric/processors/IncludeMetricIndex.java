@@ -0,0 +1,228 @@
+/*
+ * Copyright 2018. AppDynamics LLC and its affiliates.
+ * All Rights Reserved.
+ * This is unpublished proprietary source code of AppDynamics LLC and its affiliates.
+ * The copyright notice above does not evidence any actual or intended publication of such source code.
+ */
+
+package com.appdynamics.extensions.aws.metric.processors;
+
+import com.appdynamics.extensions.aws.config.IncludeMetric;
+import com.appdynamics.extensions.aws.dto.AWSMetric;
+import com.appdynamics.extensions.logging.ExtensionsLoggerFactory;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import software.amazon.awssdk.services.cloudwatch.model.Metric;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
+
+/**
+ * Matches metric names to the include metrics of the config. Names are looked
+ * up in a hash map, and only checked against the include metric names which
+ * are regular expressions if they match the combination of all of them.
+ * <p>
+ * Include metric names are matched exactly, unless prefixed with {@value #REGEX_PREFIX},
+ * in which case the rest of the name is a case insensitive regular expression.
+ * Regular expressions with back-references are always checked on their own,
+ * as their group numbers would change in the combination.
+ * <p>
+ * A metric matched by a regular expression is given a copy of its include metric
+ * named after the metric, so that requests and metric paths use the metric name.
+ * <p>
+ * Indexes are built once per list of include metrics, i.e. once per config load.
+ */
+class IncludeMetricIndex {
+
+    private static Logger LOGGER = ExtensionsLoggerFactory.getLogger(IncludeMetricIndex.class);
+
+    static final String REGEX_PREFIX = "regex:";
+
+    private static final Pattern BACK_REFERENCE = Pattern.compile("\\\\(?:[1-9]|k<)");
+
+    // weak keys are compared by identity
+    private static final Cache<List<IncludeMetric>, IncludeMetricIndex> INDEXES =
+            CacheBuilder.newBuilder().weakKeys().build();
+
+    private final Map<String, List<IndexedIncludeMetric>> includeMetricsByName =
+            new HashMap<String, List<IndexedIncludeMetric>>();
+
+    private final List<IndexedIncludeMetric> regexIncludeMetrics = new ArrayList<IndexedIncludeMetric>();
+
+    private final List<IndexedIncludeMetric> backReferenceIncludeMetrics = new ArrayList<IndexedIncludeMetric>();
+
+    private final Pattern combinedPattern;
+
+    private IncludeMetricIndex(List<IncludeMetric> includeMetrics) {
+        StringBuilder combinedRegex = new StringBuilder();
+
+        for (int index = 0; index < includeMetrics.size(); index++) {
+            IndexedIncludeMetric includeMetric = new IndexedIncludeMetric(index, includeMetrics.get(index));
+            String name = includeMetric.includeMetric.getName();
+            String regex = getRegex(name);
+
+            if (regex == null) {
+                includeMetricsByName.computeIfAbsent(name, key -> new ArrayList<IndexedIncludeMetric>())
+                        .add(includeMetric);
+                continue;
+            }
+
+            try {
+                includeMetric.pattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
+
+            } catch (PatternSyntaxException e) {
+                LOGGER.warn(String.format("Include metric [%s] is not a valid regular expression, it is ignored", name));
+                continue;
+            }
+
+            if (BACK_REFERENCE.matcher(regex).find()) {
+                backReferenceIncludeMetrics.add(includeMetric);
+
+            } else {
+                regexIncludeMetrics.add(includeMetric);
+                combinedRegex.append(combinedRegex.length() > 0 ? "|" : "").append("(?:").append(regex).append(')');
+            }
+        }
+
+        combinedPattern = combinedRegex.length() > 0 ?
+                Pattern.compile(combinedRegex.toString(), Pattern.CASE_INSENSITIVE) : null;
+    }
+
+    /**
+     * @return the regular expression of the include metric name, or null if it is matched exactly
+     */
+    static String getRegex(String name) {
+        return name != null && name.startsWith(REGEX_PREFIX) ? name.substring(REGEX_PREFIX.length()) : null;
+    }
+
+    static IncludeMetricIndex forIncludeMetrics(List<IncludeMetric> includeMetrics) {
+        try {
+            return INDEXES.get(includeMetrics, () -> new IncludeMetricIndex(includeMetrics));
+
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Unable to index include metrics", e.getCause());
+        }
+    }
+
+    /**
+     * Returns one AWSMetric per metric and matching include metric,
+     * in the order of the metrics, then of the include metrics
+     */
+    List<AWSMetric> filter(List<Metric> metrics, boolean parallel) {
+        if (parallel) {
+            return metrics.parallelStream()
+                    .<AWSMetric>flatMap(metric -> match(metric).stream())
+                    .collect(Collectors.toList());
+        }
+
+        List<AWSMetric> awsMetrics = new ArrayList<AWSMetric>();
+
+        for (Metric metric : metrics) {
+            awsMetrics.addAll(match(metric));
+        }
+
+        return awsMetrics;
+    }
+
+    private List<AWSMetric> match(Metric metric) {
+        String metricName = metric.metricName();
+        List<IndexedIncludeMetric> matches = includeMetricsByName.get(metricName);
+
+        if (metricName == null) {
+            return Collections.emptyList();
+        }
+
+        List<IndexedIncludeMetric> regexMatches = new ArrayList<IndexedIncludeMetric>();
+
+        if (combinedPattern != null && combinedPattern.matcher(metricName).matches()) {
+            addMatches(regexIncludeMetrics, metricName, regexMatches);
+        }
+
+        addMatches(backReferenceIncludeMetrics, metricName, regexMatches);
+
+        if (!regexMatches.isEmpty()) {
+            if (matches != null) {
+                regexMatches.addAll(matches);
+            }
+
+            matches = regexMatches;
+            matches.sort(Comparator.comparingInt(includeMetric -> includeMetric.index));
+        }
+
+        if (matches == null || matches.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<AWSMetric> awsMetrics = new ArrayList<AWSMetric>(matches.size());
+
+        for (IndexedIncludeMetric includeMetric : matches) {
+            AWSMetric awsMetric = new AWSMetric();
+            awsMetric.setIncludeMetric(includeMetric.forMetricName(metricName));
+            awsMetric.setMetric(metric);
+            awsMetrics.add(awsMetric);
+        }
+
+        return awsMetrics;
+    }
+
+    private static void addMatches(List<IndexedIncludeMetric> includeMetrics, String metricName,
+                                   List<IndexedIncludeMetric> matches) {
+        for (IndexedIncludeMetric includeMetric : includeMetrics) {
+            if (includeMetric.pattern.matcher(metricName).matches()) {
+                matches.add(includeMetric);
+            }
+        }
+    }
+
+    private static class IndexedIncludeMetric {
+
+        private final int index;
+
+        private final IncludeMetric includeMetric;
+
+        private final ConcurrentMap<String, IncludeMetric> includeMetricsByMetricName =
+                new ConcurrentHashMap<String, IncludeMetric>();
+
+        private Pattern pattern;
+
+        private IndexedIncludeMetric(int index, IncludeMetric includeMetric) {
+            this.index = index;
+            this.includeMetric = includeMetric;
+        }
+
+        private IncludeMetric forMetricName(String metricName) {
+            if (metricName.equals(includeMetric.getName())) {
+                return includeMetric;
+            }
+
+            return includeMetricsByMetricName.computeIfAbsent(metricName, this::copyWithName);
+        }
+
+        private IncludeMetric copyWithName(String name) {
+            IncludeMetric copy = new IncludeMetric();
+            copy.setName(name);
+            copy.setAlias(includeMetric.getAlias());
+            copy.setStatType(includeMetric.getStatType());
+            copy.setStatTypes(includeMetric.getStatTypes());
+            copy.setAggregationType(includeMetric.getAggregationType());
+            copy.setTimeRollUpType(includeMetric.getTimeRollUpType());
+            copy.setClusterRollUpType(includeMetric.getClusterRollUpType());
+            copy.setMultiplier(includeMetric.getMultiplier());
+            copy.setDelta(includeMetric.isDelta());
+            copy.setMetricsTimeRange(includeMetric.getMetricsTimeRange());
+            copy.setPeriod(includeMetric.getPeriod());
+            return copy;
+        }
+    }
+}
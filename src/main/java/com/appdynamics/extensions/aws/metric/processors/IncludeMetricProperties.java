@@ -0,0 +1,78 @@
+/*
+ * Copyright 2018. AppDynamics LLC and its affiliates.
+ * All Rights Reserved.
+ * This is unpublished proprietary source code of AppDynamics LLC and its affiliates.
+ * The copyright notice above does not evidence any actual or intended publication of such source code.
+ */
+
+package com.appdynamics.extensions.aws.metric.processors;
+
+import com.appdynamics.extensions.aws.config.IncludeMetric;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * The metric properties of an include metric, i.e. alias, multiplier, aggregation,
+ * roll ups and delta, built once per include metric and statistic suffix, and
+ * shared by all the metrics uploaded for them.
+ * <p>
+ * The maps are unmodifiable, and may contain null values.
+ */
+class IncludeMetricProperties {
+
+    // weak keys are compared by identity, i.e. include metrics of a previous config are dropped
+    private static final Cache<IncludeMetric, IncludeMetricProperties> PROPERTIES =
+            CacheBuilder.newBuilder().weakKeys().build();
+
+    private final IncludeMetric includeMetric;
+
+    private final Map<String, Object> properties;
+
+    private final ConcurrentMap<String, Map<String, Object>> propertiesByStatSuffix =
+            new ConcurrentHashMap<String, Map<String, Object>>();
+
+    private IncludeMetricProperties(IncludeMetric includeMetric) {
+        this.includeMetric = includeMetric;
+        this.properties = buildProperties(includeMetric.getAlias());
+    }
+
+    /**
+     * @param statSuffix the statistic suffix of the metric, appended to the alias if any, or null
+     */
+    static Map<String, Object> forStatistic(IncludeMetric includeMetric, String statSuffix) {
+        IncludeMetricProperties includeMetricProperties;
+
+        try {
+            includeMetricProperties = PROPERTIES.get(includeMetric, () -> new IncludeMetricProperties(includeMetric));
+
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Unable to build metric properties", e.getCause());
+        }
+
+        if (statSuffix == null || includeMetric.getAlias() == null) {
+            return includeMetricProperties.properties;
+        }
+
+        return includeMetricProperties.propertiesByStatSuffix.computeIfAbsent(statSuffix,
+                suffix -> includeMetricProperties.buildProperties(
+                        MetricsProcessorHelper.withStatSuffix(includeMetric.getAlias(), suffix)));
+    }
+
+    private Map<String, Object> buildProperties(String alias) {
+        Map<String, Object> metricProperties = new HashMap<String, Object>();
+        metricProperties.put("alias", alias);
+        metricProperties.put("multiplier", includeMetric.getMultiplier());
+        metricProperties.put("aggregationType", includeMetric.getAggregationType());
+        metricProperties.put("timeRollUpType", includeMetric.getTimeRollUpType());
+        metricProperties.put("clusterRollUpType", includeMetric.getClusterRollUpType());
+        metricProperties.put("delta", includeMetric.isDelta());
+        return Collections.unmodifiableMap(metricProperties);
+    }
+}
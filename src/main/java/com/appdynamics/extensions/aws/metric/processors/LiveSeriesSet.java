@@ -0,0 +1,103 @@
+/*
+ * Copyright 2018. AppDynamics LLC and its affiliates.
+ * All Rights Reserved.
+ * This is unpublished proprietary source code of AppDynamics LLC and its affiliates.
+ * The copyright notice above does not evidence any actual or intended publication of such source code.
+ */
+
+package com.appdynamics.extensions.aws.metric.processors;
+
+import com.appdynamics.extensions.aws.metric.processors.MetricDiscoveryCache.MetricsLister;
+import com.appdynamics.extensions.logging.ExtensionsLoggerFactory;
+import org.slf4j.Logger;
+import software.amazon.awssdk.services.cloudwatch.model.Metric;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The series of a namespace and dimension filters which recently had datapoints.
+ * <p>
+ * Every discovery lists the series active in the past three hours
+ * (RecentlyActive=PT3H), adding new series and keeping active ones alive.
+ * A full listing, which returns every series of the past two weeks, only runs
+ * once per full discovery interval and adds the series it had not listed before,
+ * e.g. series with less than one datapoint every three hours.
+ * <p>
+ * Series not listed as active for three hours are evicted, so that no more
+ * requests are made for terminated resources.
+ */
+class LiveSeriesSet {
+
+    private static Logger LOGGER = ExtensionsLoggerFactory.getLogger(LiveSeriesSet.class);
+
+    static final long RECENTLY_ACTIVE_NANOS = TimeUnit.HOURS.toNanos(3);
+
+    private final Map<Metric, Long> lastSeenNanos = new LinkedHashMap<Metric, Long>();
+
+    private Set<Metric> fullyListedSeries;
+
+    private long lastFullDiscoveryNanos;
+
+    /**
+     * Returns the live series once merged with the newly listed ones
+     */
+    List<Metric> discover(MetricsLister lister, long fullDiscoveryIntervalNanos) {
+        return discover(lister, fullDiscoveryIntervalNanos, System.nanoTime());
+    }
+
+    synchronized List<Metric> discover(MetricsLister lister, long fullDiscoveryIntervalNanos, long now) {
+        if (fullyListedSeries == null || now - lastFullDiscoveryNanos >= fullDiscoveryIntervalNanos) {
+            mergeFullListing(lister.listMetrics(false), now);
+        }
+
+        mergeRecentlyActive(lister.listMetrics(true), now);
+
+        evictInactive(now);
+
+        return new ArrayList<Metric>(lastSeenNanos.keySet());
+    }
+
+    /**
+     * Series listed by the previous full listing are not added back, unless recently active
+     */
+    private void mergeFullListing(List<Metric> metrics, long now) {
+        Set<Metric> listedSeries = new HashSet<Metric>(metrics);
+
+        for (Metric metric : metrics) {
+            if (fullyListedSeries == null || !fullyListedSeries.contains(metric)) {
+                lastSeenNanos.putIfAbsent(metric, now);
+            }
+        }
+
+        fullyListedSeries = listedSeries;
+        lastFullDiscoveryNanos = now;
+    }
+
+    private void mergeRecentlyActive(List<Metric> metrics, long now) {
+        for (Metric metric : metrics) {
+            lastSeenNanos.put(metric, now);
+        }
+    }
+
+    private void evictInactive(long now) {
+        int noOfEvictedSeries = 0;
+
+        for (Iterator<Long> iterator = lastSeenNanos.values().iterator(); iterator.hasNext(); ) {
+            if (now - iterator.next() > RECENTLY_ACTIVE_NANOS) {
+                iterator.remove();
+                noOfEvictedSeries++;
+            }
+        }
+
+        if (noOfEvictedSeries > 0) {
+            LOGGER.debug(String.format("Evicted %s series inactive for the past three hours", noOfEvictedSeries));
+        }
+    }
+}
@@ -0,0 +1,367 @@
+/*
+ * Copyright 2018. AppDynamics LLC and its affiliates.
+ * All Rights Reserved.
+ * This is unpublished proprietary source code of AppDynamics LLC and its affiliates.
+ * The copyright notice above does not evidence any actual or intended publication of such source code.
+ */
+
+package com.appdynamics.extensions.aws.metric.processors;
+
+import com.appdynamics.extensions.aws.config.MetricsConfig;
+import com.appdynamics.extensions.logging.ExtensionsLoggerFactory;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import software.amazon.awssdk.services.cloudwatch.model.DimensionFilter;
+import software.amazon.awssdk.services.cloudwatch.model.Metric;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the metrics listed by ListMetrics per account, region, namespace and
+ * dimension filters, so that they are not listed again every cycle.
+ * <p>
+ * Once a snapshot is older than its TTL, the metrics are listed again in the
+ * background while the previous snapshot is still returned. Only the first
+ * listing of a key blocks the caller.
+ * <p>
+ * The account and region are not known to {@link MetricsProcessorHelper}, the
+ * collectors set them for the current thread with {@link #withScope}. Metrics
+ * listed outside of a scope, or with a TTL of 0, are not cached.
+ * <p>
+ * With incremental discovery, only the metrics recently active are listed
+ * between full listings, see {@link LiveSeriesSet}.
+ * <p>
+ * If a snapshot file is configured, the cached metrics are saved to it after
+ * every discovery, and restored on config reload. Restored metrics are returned
+ * by the first cycle while they are listed again in the background, so that
+ * statistics are collected right after an agent restart.
+ */
+public class MetricDiscoveryCache {
+
+    private static Logger LOGGER = ExtensionsLoggerFactory.getLogger(MetricDiscoveryCache.class);
+
+    private static final int NO_OF_REFRESH_THREADS = 2;
+
+    //Created eagerly, as collectors of every namespace get it concurrently
+    private static final MetricDiscoveryCache INSTANCE = new MetricDiscoveryCache();
+
+    private final ThreadLocal<Scope> scope = new ThreadLocal<Scope>();
+
+    private final Cache<String, Snapshot> snapshots;
+
+    private final Cache<String, LiveSeriesSet> liveSeriesSets;
+
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    private final SingleFlight<String, List<Metric>> inFlightDiscoveries = new SingleFlight<String, List<Metric>>();
+
+    private final ExecutorService refreshExecutor;
+
+    private final AtomicBoolean snapshotWritePending = new AtomicBoolean();
+
+    private volatile Path snapshotFile;
+
+    private MetricDiscoveryCache() {
+        snapshots = CacheBuilder.newBuilder().expireAfterAccess(1, TimeUnit.HOURS).build();
+        liveSeriesSets = CacheBuilder.newBuilder().expireAfterAccess(1, TimeUnit.HOURS).build();
+        refreshExecutor = Executors.newFixedThreadPool(NO_OF_REFRESH_THREADS,
+                new ThreadFactoryBuilder()
+                        .setNameFormat("aws-cloudwatch-discovery-%d")
+                        .setDaemon(true)
+                        .build());
+    }
+
+    public static MetricDiscoveryCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Runs the task with the account and region of the metrics it lists,
+     * and the discovery settings of the metrics config
+     */
+    public <T> T withScope(String accountName, String region, MetricsConfig metricsConfig,
+                           Callable<T> task) throws Exception {
+        Scope newScope = metricsConfig == null ? new Scope(accountName, region, 0, false, 0, 0) :
+                new Scope(accountName, region,
+                        TimeUnit.MINUTES.toNanos(metricsConfig.getDiscoveryCacheTtlInMins()),
+                        metricsConfig.isIncrementalDiscovery(),
+                        TimeUnit.MINUTES.toNanos(metricsConfig.getFullDiscoveryIntervalInMins()),
+                        metricsConfig.getDimensionFilterPushDownLimit());
+
+        return withScope(newScope, task);
+    }
+
+    <T> T withScope(Scope newScope, Callable<T> task) throws Exception {
+        Scope previousScope = scope.get();
+        scope.set(newScope);
+
+        try {
+            return task.call();
+
+        } finally {
+            if (previousScope != null) {
+                scope.set(previousScope);
+            } else {
+                scope.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the cached metrics of the namespace and dimension filters,
+     * listing them with the loader if none are cached for the current scope
+     */
+    public List<Metric> getMetrics(String namespace, List<DimensionFilter> dimensions, MetricsLister lister) {
+        Scope currentScope = scope.get();
+
+        if (currentScope == null) {
+            return lister.listMetrics(false);
+        }
+
+        String key = getKey(currentScope.accountName, currentScope.region, namespace, dimensions);
+        Loader loader = getLoader(key, currentScope, lister);
+
+        if (currentScope.ttlNanos <= 0) {
+            return new ArrayList<Metric>(loader.load());
+        }
+
+        Snapshot snapshot = snapshots.getIfPresent(key);
+
+        if (snapshot == null) {
+            snapshot = load(key, loader);
+
+        } else if (snapshot.isOlderThan(currentScope.ttlNanos)) {
+            refresh(key, loader);
+        }
+
+        return new ArrayList<Metric>(snapshot.metrics);
+    }
+
+    /**
+     * Max number of ListMetrics paginations a discovery of the current scope may be split into,
+     * one per combination of dimension values. 0 if outside of a scope.
+     */
+    int getDimensionFilterPushDownLimit() {
+        Scope currentScope = scope.get();
+        return currentScope != null ? currentScope.dimensionFilterPushDownLimit : 0;
+    }
+
+    public void clear() {
+        snapshots.invalidateAll();
+        liveSeriesSets.invalidateAll();
+    }
+
+    /**
+     * Clears the cache, then restores the metrics saved to the snapshot file.
+     * A blank snapshotFile disables the snapshot.
+     */
+    public void reset(String snapshotFile) {
+        clear();
+
+        this.snapshotFile = StringUtils.isNotBlank(snapshotFile) ? Paths.get(snapshotFile) : null;
+
+        if (this.snapshotFile != null) {
+            restoreSnapshot(this.snapshotFile);
+        }
+    }
+
+    /**
+     * Concurrent discoveries of the same key, e.g. by collectors of the same namespace,
+     * share the listing of the first one
+     */
+    private Loader getLoader(String key, Scope currentScope, MetricsLister lister) {
+        if (!currentScope.incrementalDiscovery) {
+            return () -> inFlightDiscoveries.execute(key, () -> lister.listMetrics(false));
+        }
+
+        LiveSeriesSet liveSeriesSet = liveSeriesSets.asMap().computeIfAbsent(key, k -> new LiveSeriesSet());
+        return () -> inFlightDiscoveries.execute(key,
+                () -> liveSeriesSet.discover(lister, currentScope.fullDiscoveryIntervalNanos));
+    }
+
+    private Snapshot load(String key, Loader loader) {
+        Snapshot snapshot = new Snapshot(loader.load(), false);
+        snapshots.put(key, snapshot);
+        scheduleSnapshotWrite();
+        return snapshot;
+    }
+
+    private void restoreSnapshot(Path file) {
+        try {
+            Map<String, List<Metric>> metricsByKey = DiscoverySnapshotFile.read(file);
+
+            for (Map.Entry<String, List<Metric>> entry : metricsByKey.entrySet()) {
+                snapshots.put(entry.getKey(), new Snapshot(entry.getValue(), true));
+            }
+
+            LOGGER.info(String.format("Restored metrics of %s discoveries from [%s]", metricsByKey.size(), file));
+
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn(String.format("Unable to restore discovered metrics from [%s], listing them again", file), e);
+        }
+    }
+
+    /**
+     * Discoveries completing while a write is pending are saved by that write
+     */
+    private void scheduleSnapshotWrite() {
+        if (snapshotFile == null || !snapshotWritePending.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            refreshExecutor.execute(this::writeSnapshot);
+
+        } catch (RuntimeException e) {
+            snapshotWritePending.set(false);
+            LOGGER.warn("Unable to schedule the save of discovered metrics", e);
+        }
+    }
+
+    private void writeSnapshot() {
+        snapshotWritePending.set(false);
+
+        Path file = snapshotFile;
+
+        if (file == null) {
+            return;
+        }
+
+        Map<String, List<Metric>> metricsByKey = new HashMap<String, List<Metric>>();
+
+        for (Map.Entry<String, Snapshot> entry : snapshots.asMap().entrySet()) {
+            metricsByKey.put(entry.getKey(), entry.getValue().metrics);
+        }
+
+        try {
+            DiscoverySnapshotFile.write(file, metricsByKey);
+
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn(String.format("Unable to save discovered metrics to [%s]", file), e);
+        }
+    }
+
+    /**
+     * At most one refresh runs per key. If it fails, the previous snapshot
+     * is kept and the next call tries again.
+     */
+    private void refresh(String key, Loader loader) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    load(key, loader);
+                    LOGGER.debug(String.format("Refreshed metrics of [%s]", key));
+
+                } catch (Exception e) {
+                    LOGGER.error(String.format("Error refreshing metrics of [%s], previous metrics are kept", key), e);
+
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+
+        } catch (RuntimeException e) {
+            refreshing.remove(key);
+            throw e;
+        }
+    }
+
+    private static String getKey(String accountName, String region, String namespace,
+                                 List<DimensionFilter> dimensions) {
+        StringBuilder key = new StringBuilder()
+                .append(accountName).append('|')
+                .append(region).append('|')
+                .append(namespace).append('|');
+
+        if (dimensions != null) {
+            for (DimensionFilter dimension : dimensions) {
+                key.append(dimension.name()).append('=').append(dimension.value()).append(',');
+            }
+        }
+
+        return key.toString();
+    }
+
+    /**
+     * Lists the metrics of a namespace and dimension filters with ListMetrics
+     */
+    public interface MetricsLister {
+
+        /**
+         * Lists only the metrics with datapoints in the past three hours if recentlyActiveOnly
+         */
+        List<Metric> listMetrics(boolean recentlyActiveOnly);
+    }
+
+    private interface Loader {
+        List<Metric> load();
+    }
+
+    static class Scope {
+
+        private final String accountName;
+
+        private final String region;
+
+        private final long ttlNanos;
+
+        private final boolean incrementalDiscovery;
+
+        private final long fullDiscoveryIntervalNanos;
+
+        private final int dimensionFilterPushDownLimit;
+
+        Scope(String accountName, String region, long ttlNanos, boolean incrementalDiscovery,
+              long fullDiscoveryIntervalNanos, int dimensionFilterPushDownLimit) {
+            this.accountName = accountName;
+            this.region = region;
+            this.ttlNanos = ttlNanos;
+            this.incrementalDiscovery = incrementalDiscovery;
+            this.fullDiscoveryIntervalNanos = fullDiscoveryIntervalNanos;
+            this.dimensionFilterPushDownLimit = dimensionFilterPushDownLimit;
+        }
+    }
+
+    private static class Snapshot {
+
+        private final List<Metric> metrics;
+
+        private final long loadedAtNanos;
+
+        private final boolean restored;
+
+        private Snapshot(List<Metric> metrics, boolean restored) {
+            this.metrics = Collections.unmodifiableList(new ArrayList<Metric>(metrics));
+            this.loadedAtNanos = System.nanoTime();
+            this.restored = restored;
+        }
+
+        /**
+         * Restored snapshots are always listed again
+         */
+        private boolean isOlderThan(long ttlNanos) {
+            return restored || System.nanoTime() - loadedAtNanos >= ttlNanos;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2018. AppDynamics LLC and its affiliates.
+ * All Rights Reserved.
+ * This is unpublished proprietary source code of AppDynamics LLC and its affiliates.
+ * The copyright notice above does not evidence any actual or intended publication of such source code.
+ */
+
+package com.appdynamics.extensions.aws.metric.processors;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.commons.lang3.StringUtils;
+import software.amazon.awssdk.services.cloudwatch.model.Dimension;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.appdynamics.extensions.aws.Constants.METRIC_PATH_SEPARATOR;
+
+/**
+ * Keeps the metric path of every series, as the account, region and dimensions
+ * of a series do not change from one collection to the next.
+ * <p>
+ * Paths are kept per dimension name dictionary, i.e. per config load, and
+ * dropped once their series has not been collected for an hour.
+ */
+class MetricPathCache {
+
+    // weak keys are compared by identity
+    private static final Cache<Map<String, String>, MetricPathCache> CACHES =
+            CacheBuilder.newBuilder().weakKeys().build();
+
+    private static final MetricPathCache NO_DICTIONARY_CACHE = new MetricPathCache(null);
+
+    private static final ThreadLocal<StringBuilder> PATH_BUILDER = ThreadLocal.withInitial(StringBuilder::new);
+
+    private final Map<String, String> dimensionNameForMetricPathDictionary;
+
+    private final Cache<SeriesPathKey, String> metricPaths =
+            CacheBuilder.newBuilder().expireAfterAccess(1, TimeUnit.HOURS).build();
+
+    private MetricPathCache(Map<String, String> dimensionNameForMetricPathDictionary) {
+        this.dimensionNameForMetricPathDictionary = dimensionNameForMetricPathDictionary;
+    }
+
+    static MetricPathCache forDictionary(Map<String, String> dimensionNameForMetricPathDictionary) {
+        if (dimensionNameForMetricPathDictionary == null) {
+            return NO_DICTIONARY_CACHE;
+        }
+
+        try {
+            return CACHES.get(dimensionNameForMetricPathDictionary,
+                    () -> new MetricPathCache(dimensionNameForMetricPathDictionary));
+
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Unable to create metric path cache", e.getCause());
+        }
+    }
+
+    /**
+     * e.g. Custom Metrics|Amazon ElastiCache|MyTestAccount|us-east-1|Cache Cluster|mycachecluster|CPUUtilization
+     *
+     * @param metricPrefix  the metric prefix of the statistic, prepended as is
+     * @param regionPrefix  the namespace, account and region path, ending with a separator
+     * @param metricName    the metric name, with its statistic suffix if any
+     */
+    String getMetricPath(String metricPrefix, String regionPrefix, List<Dimension> dimensions, String metricName) {
+        SeriesPathKey key = new SeriesPathKey(metricPrefix, regionPrefix, dimensions, metricName);
+
+        try {
+            return metricPaths.get(key, () -> buildMetricPath(key));
+
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Unable to build metric path", e.getCause());
+        }
+    }
+
+    private String buildMetricPath(SeriesPathKey key) {
+        StringBuilder path = PATH_BUILDER.get();
+        path.setLength(0);
+
+        path.append(key.metricPrefix).append(key.regionPrefix);
+
+        for (Dimension dimension : key.dimensions) {
+            // e.g. Cache Cluster|mycachecluster|
+            path.append(getDimensionNameForMetricPath(dimension.name())).append(METRIC_PATH_SEPARATOR)
+                    .append(dimension.value()).append(METRIC_PATH_SEPARATOR);
+        }
+
+        return path.append(key.metricName).toString();
+    }
+
+    private String getDimensionNameForMetricPath(String dimensionName) {
+        String metricPathName = null;
+
+        if (dimensionNameForMetricPathDictionary != null) {
+            metricPathName = dimensionNameForMetricPathDictionary.get(dimensionName);
+        }
+
+        return StringUtils.isNotBlank(metricPathName) ? metricPathName : dimensionName;
+    }
+
+    /**
+     * Identity of a series within a config, the metric prefix included
+     * as it can differ between metrics of the same namespace
+     */
+    private static class SeriesPathKey {
+
+        private final String metricPrefix;
+
+        private final String regionPrefix;
+
+        private final List<Dimension> dimensions;
+
+        private final String metricName;
+
+        private final int hashCode;
+
+        private SeriesPathKey(String metricPrefix, String regionPrefix, List<Dimension> dimensions, String metricName) {
+            this.metricPrefix = metricPrefix;
+            this.regionPrefix = regionPrefix;
+            this.dimensions = dimensions;
+            this.metricName = metricName;
+            this.hashCode = Objects.hash(metricPrefix, regionPrefix, dimensions, metricName);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (!(o instanceof SeriesPathKey)) {
+                return false;
+            }
+
+            SeriesPathKey other = (SeriesPathKey) o;
+
+            return hashCode == other.hashCode
+                    && Objects.equals(metricName, other.metricName)
+                    && Objects.equals(regionPrefix, other.regionPrefix)
+                    && Objects.equals(metricPrefix, other.metricPrefix)
+                    && Objects.equals(dimensions, other.dimensions);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
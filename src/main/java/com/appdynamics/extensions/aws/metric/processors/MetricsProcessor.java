@@ -14,6 +14,7 @@ import com.appdynamics.extensions.aws.metric.StatisticType;
 import com.appdynamics.extensions.metrics.Metric;
 import software.amazon.awssdk.services.cloudwatch.CloudWatchClient;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.atomic.LongAdder;
 
@@ -44,6 +45,26 @@ public interface MetricsProcessor {
      */
     StatisticType getStatisticType(AWSMetric metric);
 
+    /**
+     * Returns the statistic types of the specified metric, all of which
+     * are retrieved with a single request.
+     * <p>
+     * Defaults to the statTypes of the metric's {@link IncludeMetric},
+     * falling back to {@link #getStatisticType(AWSMetric)}
+     *
+     * @param metric - Metric
+     * @return statisticTypes
+     */
+    default List<StatisticType> getStatisticTypes(AWSMetric metric) {
+        List<StatisticType> statTypes = MetricsProcessorHelper.getStatisticTypes(metric.getIncludeMetric());
+
+        if (statTypes.isEmpty()) {
+            return Collections.singletonList(getStatisticType(metric));
+        }
+
+        return statTypes;
+    }
+
     /**
      * Converts the nested statistics within NamespaceMetricStatistics
      * into a Map object for uploading to Controller.
@@ -15,21 +15,23 @@ import com.appdynamics.extensions.aws.metric.MetricStatistic;
 import com.appdynamics.extensions.aws.metric.NamespaceMetricStatistics;
 import com.appdynamics.extensions.aws.metric.RegionMetricStatistics;
 import com.appdynamics.extensions.aws.metric.StatisticType;
+import com.appdynamics.extensions.aws.predicate.MultiDimensionPredicate;
 import com.appdynamics.extensions.logging.ExtensionsLoggerFactory;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.Lists;
-import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import software.amazon.awssdk.services.cloudwatch.CloudWatchClient;
-import software.amazon.awssdk.services.cloudwatch.model.Dimension;
 import software.amazon.awssdk.services.cloudwatch.model.DimensionFilter;
 import software.amazon.awssdk.services.cloudwatch.model.ListMetricsRequest;
 import software.amazon.awssdk.services.cloudwatch.model.ListMetricsResponse;
 import software.amazon.awssdk.services.cloudwatch.model.Metric;
+import software.amazon.awssdk.services.cloudwatch.model.RecentlyActive;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -49,6 +51,9 @@ public class MetricsProcessorHelper {
 
     private static Logger LOGGER = ExtensionsLoggerFactory.getLogger(MetricsProcessorHelper.class);
 
+    // Metric lists at least this long are filtered on the common fork join pool
+    private static final int PARALLEL_FILTER_THRESHOLD = 50000;
+
 
     public static List<AWSMetric> getFilteredMetrics(CloudWatchClient awsCloudWatch,
                                                      LongAdder awsRequestsCounter, String namespace, List<IncludeMetric> includeMetrics, String... dimensionNames) {
@@ -62,9 +67,15 @@ public class MetricsProcessorHelper {
         return filterMetrics(metrics, includeMetrics);
     }
 
+    /**
+     * With a {@link MultiDimensionPredicate}, the values of its dimensions are filtered by
+     * ListMetrics when allowed by the dimension filter push down limit of the discovery scope
+     */
     public static List<AWSMetric> getFilteredMetrics(CloudWatchClient awsCloudWatch,
                                                      LongAdder awsRequestsCounter, String namespace, List<IncludeMetric> includeMetrics, List<DimensionFilter> dimensions, Predicate<Metric> metricFilter) {
-        List<Metric> metrics = getMetrics(awsCloudWatch, awsRequestsCounter, namespace, dimensions);
+        List<Metric> metrics = metricFilter instanceof MultiDimensionPredicate ?
+                getMetrics(awsCloudWatch, awsRequestsCounter, namespace, dimensions, (MultiDimensionPredicate) metricFilter) :
+                getMetrics(awsCloudWatch, awsRequestsCounter, namespace, dimensions);
 
         metrics = Lists.newArrayList(Collections2.filter(metrics, metricFilter));
 
@@ -83,12 +94,87 @@ public class MetricsProcessorHelper {
         return getMetrics(awsCloudWatch, awsRequestsCounter, namespace, dimensions);
     }
 
+    /**
+     * Lists the metrics with one request per combination of the values configured for the dimensions,
+     * instead of listing all values of the dimensions. Only dimensions whose values are all anchored literals,
+     * e.g. ^i-0123456789$, are filtered this way, as ListMetrics only returns the dimension values equal to
+     * the filter while the others also match the values containing them. Also only as long as the number of
+     * combinations is within the push down limit.
+     * The values of the other dimensions are still to be filtered by the caller.
+     */
+    public static List<Metric> getMetrics(CloudWatchClient awsCloudWatch, LongAdder awsRequestsCounter,
+                                          String namespace, List<DimensionFilter> dimensions,
+                                          MultiDimensionPredicate dimensionPredicate) {
+        int pushDownLimit = MetricDiscoveryCache.getInstance().getDimensionFilterPushDownLimit();
+        List<List<DimensionFilter>> dimensionCombinations = Collections.singletonList(dimensions);
+
+        if (pushDownLimit > 0 && dimensions != null) {
+            for (int index = 0; index < dimensions.size(); index++) {
+                if (dimensions.get(index).value() != null) {
+                    continue;
+                }
+
+                Set<String> values = dimensionPredicate.getExactValues(dimensions.get(index).name());
+
+                if (values == null || values.isEmpty()
+                        || (long) dimensionCombinations.size() * values.size() > pushDownLimit) {
+                    continue;
+                }
+
+                dimensionCombinations = withValues(dimensionCombinations, index, values);
+            }
+        }
+
+        if (dimensionCombinations.size() == 1) {
+            return getMetrics(awsCloudWatch, awsRequestsCounter, namespace, dimensionCombinations.get(0));
+        }
+
+        Set<Metric> metrics = new LinkedHashSet<>();
+
+        for (List<DimensionFilter> dimensionCombination : dimensionCombinations) {
+            metrics.addAll(getMetrics(awsCloudWatch, awsRequestsCounter, namespace, dimensionCombination));
+        }
+
+        return new ArrayList<>(metrics);
+    }
+
+    private static List<List<DimensionFilter>> withValues(List<List<DimensionFilter>> dimensionCombinations,
+                                                          int index, Set<String> values) {
+        List<List<DimensionFilter>> newCombinations = new ArrayList<>(dimensionCombinations.size() * values.size());
+
+        for (List<DimensionFilter> dimensionCombination : dimensionCombinations) {
+            for (String value : values) {
+                List<DimensionFilter> newCombination = new ArrayList<>(dimensionCombination);
+                newCombination.set(index, newCombination.get(index).toBuilder().value(value).build());
+                newCombinations.add(newCombination);
+            }
+        }
+
+        return newCombinations;
+    }
+
+    /**
+     * Served from {@link MetricDiscoveryCache} when called within one of its scopes
+     */
     public static List<Metric> getMetrics(CloudWatchClient awsCloudWatch,
                                           LongAdder awsRequestsCounter, String namespace, List<DimensionFilter> dimensions) {
-        ListMetricsRequest request = ListMetricsRequest.builder()
+        return MetricDiscoveryCache.getInstance().getMetrics(namespace, dimensions,
+                recentlyActiveOnly -> listMetrics(awsCloudWatch, awsRequestsCounter, namespace, dimensions,
+                        recentlyActiveOnly));
+    }
+
+    private static List<Metric> listMetrics(CloudWatchClient awsCloudWatch, LongAdder awsRequestsCounter,
+                                            String namespace, List<DimensionFilter> dimensions,
+                                            boolean recentlyActiveOnly) {
+        ListMetricsRequest.Builder requestBuilder = ListMetricsRequest.builder()
             .namespace(namespace)
-            .dimensions(dimensions)
-            .build();
+            .dimensions(dimensions);
+
+        if (recentlyActiveOnly) {
+            requestBuilder.recentlyActive(RecentlyActive.PT3_H);
+        }
+
+        ListMetricsRequest request = requestBuilder.build();
 
         List<Metric> metrics = new ArrayList<>();
 
@@ -100,39 +186,80 @@ public class MetricsProcessorHelper {
         return metrics;
     }
 
+    /**
+     * Resolved with the patterns of the include metrics compiled once per list,
+     * see {@link StatisticTypeResolver}
+     */
     public static StatisticType getStatisticType(IncludeMetric metric, List<IncludeMetric> metrics) {
         if (metrics != null && !metrics.isEmpty() && metric != null) {
-            for (IncludeMetric includeMetric : metrics) {
-                Pattern pattern = Pattern.compile(includeMetric.getName(),
-                        Pattern.CASE_INSENSITIVE);
+            return StatisticTypeResolver.forIncludeMetrics(metrics).resolve(metric.getName());
+        }
 
-                if (isMatch(metric.getName(), pattern)) {
-                    return StatisticType.fromString(includeMetric.getStatType());
+        return StatisticType.AVE;
+    }
+
+    /**
+     * @return the distinct statistic types listed in statTypes of the specified metric,
+     * or an empty list if none
+     */
+    public static List<StatisticType> getStatisticTypes(IncludeMetric metric) {
+        List<StatisticType> statTypes = new ArrayList<>();
+
+        if (metric != null && metric.getStatTypes() != null) {
+            for (String statType : metric.getStatTypes()) {
+                StatisticType type = StatisticType.fromString(statType);
+
+                if (!statTypes.contains(type)) {
+                    statTypes.add(type);
                 }
             }
         }
 
-        return StatisticType.AVE;
+        return statTypes;
     }
 
-    public static List<AWSMetric> filterMetrics(List<Metric> metrics, List<IncludeMetric> includeMetrics) {
+    /**
+     * Removes the metrics listed more than once for the same include metric,
+     * e.g. by several getFilteredMetrics calls with overlapping dimension filters
+     */
+    public static List<AWSMetric> removeDuplicates(List<AWSMetric> metrics) {
+        if (metrics == null) {
+            return null;
+        }
 
-        List<AWSMetric> awsMetrics = new ArrayList<>();
-        if (metrics != null && !metrics.isEmpty() && includeMetrics != null) {
-
-            for (Metric metric : metrics) {
-                for (IncludeMetric includeMetric : includeMetrics) {
-                    if (includeMetric.getName().equals(metric.metricName())) {
-                        AWSMetric awsMetric = new AWSMetric();
-                        awsMetric.setIncludeMetric(includeMetric);
-                        awsMetric.setMetric(metric);
-                        awsMetrics.add(awsMetric);
-                        continue;
-                    }
-                }
+        List<AWSMetric> uniqueMetrics = new ArrayList<>(metrics.size());
+        Map<Metric, List<IncludeMetric>> includeMetricsByMetric = new HashMap<>();
+
+        for (AWSMetric awsMetric : metrics) {
+            List<IncludeMetric> includeMetrics = includeMetricsByMetric.computeIfAbsent(awsMetric.getMetric(),
+                    metric -> new ArrayList<>());
+
+            if (!includeMetrics.contains(awsMetric.getIncludeMetric())) {
+                includeMetrics.add(awsMetric.getIncludeMetric());
+                uniqueMetrics.add(awsMetric);
             }
         }
-        return awsMetrics;
+
+        return uniqueMetrics;
+    }
+
+    public static List<AWSMetric> filterMetrics(List<Metric> metrics, List<IncludeMetric> includeMetrics) {
+        return filterMetrics(metrics, includeMetrics,
+                metrics != null && metrics.size() >= PARALLEL_FILTER_THRESHOLD);
+    }
+
+    /**
+     * Include metric names are matched exactly, or as case insensitive regular
+     * expressions, see {@link IncludeMetricIndex}. A metric is returned once
+     * for every include metric it matches.
+     */
+    public static List<AWSMetric> filterMetrics(List<Metric> metrics, List<IncludeMetric> includeMetrics,
+                                                boolean parallel) {
+        if (metrics == null || metrics.isEmpty() || includeMetrics == null) {
+            return new ArrayList<>();
+        }
+
+        return IncludeMetricIndex.forIncludeMetrics(includeMetrics).filter(metrics, parallel);
     }
 
     public static Pattern createPattern(Set<String> rawPatterns) {
@@ -222,25 +349,19 @@ public class MetricsProcessorHelper {
                                                     List<MetricStatistic> metricStatsList,
                                                     Map<String, String> dimensionNameForMetricPathDictionary,
                                                     List<com.appdynamics.extensions.metrics.Metric> stats) {
+        MetricPathCache metricPathCache = MetricPathCache.forDictionary(dimensionNameForMetricPathDictionary);
 
         for (MetricStatistic metricStats : metricStatsList) {
-            String partialMetricPath = regionPrefix;
-
-            for (Dimension dimension : metricStats.getMetric().getMetric().dimensions()) {
-                String dimensionNameForMetricPath = getDimesionNameForMetricPath(dimension.name(),
-                        dimensionNameForMetricPathDictionary);
-
-                // e.g. MyTestAccount|us-east-1|Cache Cluster|
-                partialMetricPath = buildMetricName(partialMetricPath, dimensionNameForMetricPath, true);
+            String awsMetricName = metricStats.getMetric().getIncludeMetric().getName();
 
-                // e.g. MyTestAccount|us-east-1|Cache Cluster|mycachecluster
-                partialMetricPath = buildMetricName(partialMetricPath, dimension.value(), true);
+            if (metricStats.getStatSuffix() != null) {
+                // e.g. Latency (Maximum)
+                awsMetricName = withStatSuffix(awsMetricName, metricStats.getStatSuffix());
             }
 
-            String awsMetricName = metricStats.getMetric().getIncludeMetric().getName();
-            String metricPathWithoutPrefix = buildMetricName(partialMetricPath, awsMetricName, false);
-            String fullMetricPath = buildMetricName(metricStats.getMetricPrefix(), metricPathWithoutPrefix, false);
-
+            // e.g. MyTestAccount|us-east-1|Cache Cluster|mycachecluster|Cache Node|0001|CPUUtilization
+            String fullMetricPath = metricPathCache.getMetricPath(metricStats.getMetricPrefix(), regionPrefix,
+                    metricStats.getMetric().getMetric().dimensions(), awsMetricName);
 
             if (metricStats.getValue() != null) {
 
@@ -253,17 +374,8 @@ public class MetricsProcessorHelper {
                 //	awsMetricName = String.format("%s (%s)", awsMetricName, metricStats.getUnit());
                 //}
 
-                // e.g. MyTestAccount|us-east-1|Cache Cluster|mycachecluster|Cache Node|0001|CPUUtilization
-                //String fullMetricPath = buildMetricName(partialMetricPath, awsMetricName, false);
-
-                Map<String, Object> metricProperties = new HashMap<>();
-                IncludeMetric metricWithConfig = metricStats.getMetric().getIncludeMetric();
-                metricProperties.put("alias", metricWithConfig.getAlias());
-                metricProperties.put("multiplier", metricWithConfig.getMultiplier());
-                metricProperties.put("aggregationType", metricWithConfig.getAggregationType());
-                metricProperties.put("timeRollUpType", metricWithConfig.getTimeRollUpType());
-                metricProperties.put("clusterRollUpType", metricWithConfig.getClusterRollUpType());
-                metricProperties.put("delta", metricWithConfig.isDelta());
+                Map<String, Object> metricProperties = IncludeMetricProperties.forStatistic(
+                        metricStats.getMetric().getIncludeMetric(), metricStats.getStatSuffix());
 
                 com.appdynamics.extensions.metrics.Metric metric = new com.appdynamics.extensions.metrics.Metric(awsMetricName, Double.toString(metricStats.getValue()),
                         fullMetricPath, metricProperties);
@@ -274,22 +386,16 @@ public class MetricsProcessorHelper {
         }
     }
 
-    private static String getDimesionNameForMetricPath(String dimensionName, Map<String, String> dictionary) {
-        String metricPathName = null;
-
-        if (dictionary != null) {
-            metricPathName = dictionary.get(dimensionName);
-        }
-
-        return StringUtils.isNotBlank(metricPathName) ? metricPathName : dimensionName;
+    static String withStatSuffix(String metricName, String statSuffix) {
+        return metricName + " (" + statSuffix + ")";
     }
 
     private static String buildMetricName(String metricPrefix, String toAppend, boolean appendMetricSeparator) {
         if (appendMetricSeparator) {
-            return String.format("%s%s%s", metricPrefix, toAppend, METRIC_PATH_SEPARATOR);
+            return metricPrefix + toAppend + METRIC_PATH_SEPARATOR;
         }
 
-        return String.format("%s%s", metricPrefix, toAppend);
+        return metricPrefix + toAppend;
     }
 
 }
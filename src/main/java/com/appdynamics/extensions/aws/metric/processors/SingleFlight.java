@@ -0,0 +1,61 @@
+/*
+ * Copyright 2018. AppDynamics LLC and its affiliates.
+ * All Rights Reserved.
+ * This is unpublished proprietary source code of AppDynamics LLC and its affiliates.
+ * The copyright notice above does not evidence any actual or intended publication of such source code.
+ */
+
+package com.appdynamics.extensions.aws.metric.processors;
+
+import com.appdynamics.extensions.aws.exceptions.AwsException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Runs at most one call per key at a time. Callers arriving while the call
+ * of their key is in flight wait for it and get its result, or its error,
+ * instead of making the same call again.
+ */
+class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<K, CompletableFuture<V>>();
+
+    V execute(K key, Supplier<V> call) {
+        CompletableFuture<V> result = new CompletableFuture<V>();
+        CompletableFuture<V> inFlightResult = inFlight.putIfAbsent(key, result);
+
+        if (inFlightResult != null) {
+            return join(inFlightResult);
+        }
+
+        try {
+            V value = call.get();
+            result.complete(value);
+            return value;
+
+        } catch (RuntimeException | Error e) {
+            result.completeExceptionally(e);
+            throw e;
+
+        } finally {
+            inFlight.remove(key, result);
+        }
+    }
+
+    private static <V> V join(CompletableFuture<V> result) {
+        try {
+            return result.join();
+
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+
+            throw new AwsException("Error in shared call", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2018. AppDynamics LLC and its affiliates.
+ * All Rights Reserved.
+ * This is unpublished proprietary source code of AppDynamics LLC and its affiliates.
+ * The copyright notice above does not evidence any actual or intended publication of such source code.
+ */
+
+package com.appdynamics.extensions.aws.metric.processors;
+
+import com.appdynamics.extensions.aws.config.IncludeMetric;
+import com.appdynamics.extensions.aws.metric.StatisticType;
+import com.appdynamics.extensions.logging.ExtensionsLoggerFactory;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Resolves the statistic type of a metric from the first include metric whose
+ * name, as a case insensitive regular expression, matches the metric name.
+ * <p>
+ * The patterns are compiled once per list of include metrics, i.e. once per
+ * config load, and the statistic type resolved for a metric name is kept
+ * for the metric names recently resolved.
+ */
+class StatisticTypeResolver {
+
+    private static Logger LOGGER = ExtensionsLoggerFactory.getLogger(StatisticTypeResolver.class);
+
+    // weak keys are compared by identity
+    private static final Cache<List<IncludeMetric>, StatisticTypeResolver> RESOLVERS =
+            CacheBuilder.newBuilder().weakKeys().build();
+
+    private final List<Pattern> patterns = new ArrayList<Pattern>();
+
+    private final List<StatisticType> statTypes = new ArrayList<StatisticType>();
+
+    private static final int MAX_RESOLVED_METRIC_NAMES = 10000;
+
+    // bounded, as metric names come from ListMetrics and may change over time
+    private final Cache<String, StatisticType> statTypesByMetricName = CacheBuilder.newBuilder()
+            .maximumSize(MAX_RESOLVED_METRIC_NAMES).expireAfterAccess(1, TimeUnit.HOURS).build();
+
+    private StatisticTypeResolver(List<IncludeMetric> includeMetrics) {
+        for (IncludeMetric includeMetric : includeMetrics) {
+            patterns.add(compile(includeMetric.getName()));
+            statTypes.add(StatisticType.fromString(includeMetric.getStatType()));
+        }
+    }
+
+    static StatisticTypeResolver forIncludeMetrics(List<IncludeMetric> includeMetrics) {
+        try {
+            return RESOLVERS.get(includeMetrics, () -> new StatisticTypeResolver(includeMetrics));
+
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Unable to compile include metrics", e.getCause());
+        }
+    }
+
+    StatisticType resolve(String metricName) {
+        if (metricName == null) {
+            return StatisticType.AVE;
+        }
+
+        try {
+            return statTypesByMetricName.get(metricName, () -> match(metricName));
+
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Unable to resolve statistic type of metric " + metricName, e.getCause());
+        }
+    }
+
+    private StatisticType match(String metricName) {
+        for (int index = 0; index < patterns.size(); index++) {
+            if (MetricsProcessorHelper.isMatch(metricName, patterns.get(index))) {
+                return statTypes.get(index);
+            }
+        }
+
+        return StatisticType.AVE;
+    }
+
+    /**
+     * Names which are not valid regular expressions are matched as is. The prefix of
+     * the names which are regular expressions to {@link IncludeMetricIndex} is left out.
+     */
+    private static Pattern compile(String name) {
+        if (name == null) {
+            return null;
+        }
+
+        String regex = IncludeMetricIndex.getRegex(name);
+        if (regex != null) {
+            name = regex;
+        }
+
+        try {
+            return Pattern.compile(name, Pattern.CASE_INSENSITIVE);
+
+        } catch (PatternSyntaxException e) {
+            LOGGER.warn(String.format("Include metric [%s] is not a valid regular expression, matching it as is", name));
+            return Pattern.compile(Pattern.quote(name), Pattern.CASE_INSENSITIVE);
+        }
+    }
+}
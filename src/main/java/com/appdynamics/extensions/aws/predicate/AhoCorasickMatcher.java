@@ -0,0 +1,142 @@
+/*
+ * Copyright 2018. AppDynamics LLC and its affiliates.
+ * All Rights Reserved.
+ * This is unpublished proprietary source code of AppDynamics LLC and its affiliates.
+ * The copyright notice above does not evidence any actual or intended publication of such source code.
+ */
+
+package com.appdynamics.extensions.aws.predicate;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+
+/**
+ * Finds whether a text contains any of a set of words in a single pass over
+ * the text, whatever the number of words (Aho-Corasick).
+ * <p>
+ * The transitions of every node are kept as sorted arrays of characters.
+ */
+class AhoCorasickMatcher {
+
+    private static final int ROOT = 0;
+
+    private final char[][] transitionChars;
+
+    private final int[][] transitionTargets;
+
+    private final int[] failures;
+
+    private final boolean[] outputs;
+
+    AhoCorasickMatcher(Collection<String> words) {
+        List<TreeMap<Character, Integer>> transitions = new ArrayList<TreeMap<Character, Integer>>();
+        List<Boolean> wordEnds = new ArrayList<Boolean>();
+        transitions.add(new TreeMap<Character, Integer>());
+        wordEnds.add(false);
+
+        for (String word : words) {
+            int node = ROOT;
+
+            for (int index = 0; index < word.length(); index++) {
+                Integer next = transitions.get(node).get(word.charAt(index));
+
+                if (next == null) {
+                    next = transitions.size();
+                    transitions.get(node).put(word.charAt(index), next);
+                    transitions.add(new TreeMap<Character, Integer>());
+                    wordEnds.add(false);
+                }
+
+                node = next;
+            }
+
+            wordEnds.set(node, true);
+        }
+
+        int noOfNodes = transitions.size();
+        transitionChars = new char[noOfNodes][];
+        transitionTargets = new int[noOfNodes][];
+        failures = new int[noOfNodes];
+        outputs = new boolean[noOfNodes];
+
+        for (int node = 0; node < noOfNodes; node++) {
+            TreeMap<Character, Integer> nodeTransitions = transitions.get(node);
+            transitionChars[node] = new char[nodeTransitions.size()];
+            transitionTargets[node] = new int[nodeTransitions.size()];
+
+            int index = 0;
+            for (Map.Entry<Character, Integer> transition : nodeTransitions.entrySet()) {
+                transitionChars[node][index] = transition.getKey();
+                transitionTargets[node][index] = transition.getValue();
+                index++;
+            }
+
+            outputs[node] = wordEnds.get(node);
+        }
+
+        buildFailures();
+    }
+
+    boolean containsAny(CharSequence text) {
+        if (outputs[ROOT]) {
+            return true;
+        }
+
+        int node = ROOT;
+
+        for (int index = 0; index < text.length(); index++) {
+            node = next(node, text.charAt(index));
+
+            if (outputs[node]) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Breadth first, so that the failure of every node is known before its children's
+     */
+    private void buildFailures() {
+        Queue<Integer> nodes = new ArrayDeque<Integer>();
+
+        for (int target : transitionTargets[ROOT]) {
+            failures[target] = ROOT;
+            nodes.add(target);
+        }
+
+        while (!nodes.isEmpty()) {
+            int node = nodes.poll();
+
+            for (int index = 0; index < transitionChars[node].length; index++) {
+                int child = transitionTargets[node][index];
+                failures[child] = next(failures[node], transitionChars[node][index]);
+                outputs[child] |= outputs[failures[child]];
+                nodes.add(child);
+            }
+        }
+    }
+
+    private int next(int node, char c) {
+        while (true) {
+            int index = Arrays.binarySearch(transitionChars[node], c);
+
+            if (index >= 0) {
+                return transitionTargets[node][index];
+            }
+
+            if (node == ROOT) {
+                return ROOT;
+            }
+
+            node = failures[node];
+        }
+    }
+}
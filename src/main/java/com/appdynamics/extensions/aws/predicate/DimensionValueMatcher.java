@@ -0,0 +1,135 @@
+/*
+ * Copyright 2018. AppDynamics LLC and its affiliates.
+ * All Rights Reserved.
+ * This is unpublished proprietary source code of AppDynamics LLC and its affiliates.
+ * The copyright notice above does not evidence any actual or intended publication of such source code.
+ */
+
+package com.appdynamics.extensions.aws.predicate;
+
+import com.google.common.base.Predicate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * {@link Predicate} matching the dimension values which contain a match of any of
+ * the configured values, as {@code Predicates.containsPattern} would for each of them.
+ * <p>
+ * The configured values are compiled together instead of being checked one by one:
+ * <ul>
+ * <li>values without regex characters, e.g. instance ids, are first looked up as is
+ * in a hash set, then searched for all at once with {@link AhoCorasickMatcher}</li>
+ * <li>the other values are combined into a single regular expression, except those
+ * with back references which are kept apart, as combining them would renumber their groups</li>
+ * </ul>
+ */
+public class DimensionValueMatcher implements Predicate<CharSequence> {
+
+    private static final Pattern REGEX_CHARACTERS = Pattern.compile("[\\\\^$.|?*+()\\[\\]{}]");
+
+    private static final Pattern BACK_REFERENCE = Pattern.compile("\\\\(\\d|k<)");
+
+    // e.g. ^i-0123456789$, which only matches the dimension value i-0123456789
+    private static final Pattern ANCHORED_LITERAL = Pattern.compile("\\^([^\\\\^$.|?*+()\\[\\]{}]+)\\$");
+
+    private final Set<String> literals;
+
+    private final AhoCorasickMatcher literalMatcher;
+
+    private final Pattern combinedPattern;
+
+    private final List<Pattern> patterns;
+
+    private final Set<String> exactValues;
+
+    private DimensionValueMatcher(Set<String> literals, Pattern combinedPattern, List<Pattern> patterns,
+                                  Set<String> exactValues) {
+        this.literals = literals;
+        this.literalMatcher = literals.isEmpty() ? null : new AhoCorasickMatcher(literals);
+        this.combinedPattern = combinedPattern;
+        this.patterns = patterns;
+        this.exactValues = exactValues;
+    }
+
+    /**
+     * Returns null if no values are configured, as no dimension value then matches
+     *
+     * @throws java.util.regex.PatternSyntaxException if a value is not a valid regular expression
+     */
+    public static DimensionValueMatcher compile(Collection<String> values) {
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+
+        Set<String> literals = new HashSet<String>();
+        List<Pattern> patterns = new ArrayList<Pattern>();
+        StringBuilder combinedRegex = new StringBuilder();
+        Set<String> exactValues = new HashSet<String>();
+
+        for (String value : values) {
+            Matcher anchoredLiteral = ANCHORED_LITERAL.matcher(value);
+
+            if (exactValues != null && anchoredLiteral.matches()) {
+                exactValues.add(anchoredLiteral.group(1));
+            } else {
+                exactValues = null;
+            }
+
+            if (!REGEX_CHARACTERS.matcher(value).find()) {
+                literals.add(value);
+                continue;
+            }
+
+            Pattern pattern = Pattern.compile(value);
+
+            if (BACK_REFERENCE.matcher(value).find()) {
+                patterns.add(pattern);
+            } else {
+                combinedRegex.append(combinedRegex.length() > 0 ? "|" : "").append("(?:").append(value).append(')');
+            }
+        }
+
+        Pattern combinedPattern = combinedRegex.length() > 0 ? Pattern.compile(combinedRegex.toString()) : null;
+
+        return new DimensionValueMatcher(literals, combinedPattern, patterns, exactValues);
+    }
+
+    /**
+     * Returns the only dimension values matched if all configured values are anchored literals,
+     * e.g. {@code ^i-0123456789$}, null otherwise, as any other value also matches the dimension
+     * values containing it
+     */
+    public Set<String> getExactValues() {
+        return exactValues != null ? Collections.unmodifiableSet(exactValues) : null;
+    }
+
+    public boolean apply(CharSequence value) {
+        if (value == null) {
+            return false;
+        }
+
+        if (literalMatcher != null
+                && (literals.contains(value.toString()) || literalMatcher.containsAny(value))) {
+            return true;
+        }
+
+        if (combinedPattern != null && combinedPattern.matcher(value).find()) {
+            return true;
+        }
+
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(value).find()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -3,7 +3,6 @@ package com.appdynamics.extensions.aws.predicate;
 import com.appdynamics.extensions.aws.config.Dimension;
 import com.appdynamics.extensions.logging.ExtensionsLoggerFactory;
 import com.google.common.base.Predicate;
-import com.google.common.base.Predicates;
 import org.slf4j.Logger;
 import software.amazon.awssdk.services.cloudwatch.model.Metric;
 
@@ -14,7 +13,7 @@ import java.util.Set;
 
 /**
  * {@link Predicate} to filter data from multiple AWS dimensions. This create a separate filter for each dimension and applies them
- * to the corresponding dimension values.
+ * to the corresponding dimension values. The values of each dimension are compiled into a {@link DimensionValueMatcher}.
  *
  * @author Satish Muddam
  */
@@ -35,28 +34,24 @@ public class MultiDimensionPredicate implements Predicate<Metric> {
         if (dimensions != null && !dimensions.isEmpty()) {
 
             for (Dimension dimension : dimensions) {
-                Predicate<CharSequence> patternPredicate = null;
-                String dimensionName = dimension.getName();
-                Set<String> dimensionValues = dimension.getValues();
-
-                if (dimensionValues != null) {
-
-                    for (String pattern : dimensionValues) {
-                        Predicate<CharSequence> charSequencePredicate = Predicates.containsPattern(pattern);
-                        if (patternPredicate == null) {
-                            patternPredicate = charSequencePredicate;
-                        } else {
-                            patternPredicate = Predicates.or(patternPredicate, charSequencePredicate);
-                        }
-                    }
-                }
-                allPredicates.put(dimensionName, patternPredicate);
+                allPredicates.put(dimension.getName(), DimensionValueMatcher.compile(dimension.getValues()));
             }
         } else {
             LOGGER.warn("dimensions in config.yml not configured, hence not monitoring anything");
         }
     }
 
+    /**
+     * Returns the only values the dimension can have, if all values configured for it are
+     * anchored literals, null otherwise or if the dimension is not configured
+     *
+     * @see DimensionValueMatcher#getExactValues()
+     */
+    public Set<String> getExactValues(String dimensionName) {
+        Predicate<CharSequence> predicate = allPredicates.get(dimensionName);
+        return predicate instanceof DimensionValueMatcher ? ((DimensionValueMatcher) predicate).getExactValues() : null;
+    }
+
     public boolean apply(Metric metric) {
 
         List<software.amazon.awssdk.services.cloudwatch.model.Dimension> dimensions = metric.dimensions();
@@ -7,6 +7,7 @@
 
 package com.appdynamics.extensions.aws.util;
 
+import com.appdynamics.extensions.aws.config.AwsAsyncClientConfig;
 import com.appdynamics.extensions.aws.config.AwsClientConfig;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.AwsSessionCredentials;
@@ -23,6 +24,9 @@ import software.amazon.awssdk.retries.StandardRetryStrategy;
 import software.amazon.awssdk.http.SdkHttpClient;
 import software.amazon.awssdk.http.apache.ApacheHttpClient;
 import software.amazon.awssdk.http.apache.ProxyConfiguration;
+import software.amazon.awssdk.http.async.SdkAsyncHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.http.nio.netty.SdkEventLoopGroup;
 
 import java.net.URI;
 import java.util.Map;
@@ -99,13 +103,48 @@ public class AWSUtil {
 
         SdkHttpClient httpClient = httpClientBuilder.build();
 
+        return new AwsClientConfig(httpClient, createClientOverrideConfiguration(maxErrorRetrySize));
+    }
+
+    /**
+     * Creates the configuration of the async clients, which share a Netty transport
+     * of eventLoopThreads threads holding at most maxConcurrency connections
+     */
+    public static AwsAsyncClientConfig createAwsAsyncClientConfiguration(int maxErrorRetrySize, int eventLoopThreads,
+                                                                         int maxConcurrency, ProxyConfig proxyConfig) {
+        NettyNioAsyncHttpClient.Builder httpClientBuilder = NettyNioAsyncHttpClient.builder()
+                //Built by the http client rather than given to it, so that closing the client shuts it down
+                .eventLoopGroupBuilder(SdkEventLoopGroup.builder().numberOfThreads(eventLoopThreads))
+                .maxConcurrency(maxConcurrency);
+
+        if (proxyConfig != null && StringUtils.isNotBlank(proxyConfig.getHost()) && proxyConfig.getPort() != null) {
+            software.amazon.awssdk.http.nio.netty.ProxyConfiguration.Builder proxyBuilder =
+                    software.amazon.awssdk.http.nio.netty.ProxyConfiguration.builder()
+                            .scheme("http")
+                            .host(proxyConfig.getHost())
+                            .port(proxyConfig.getPort());
+
+            if (StringUtils.isNotBlank(proxyConfig.getUsername())) {
+                proxyBuilder.username(proxyConfig.getUsername());
+            }
+            if (StringUtils.isNotBlank(proxyConfig.getPassword())) {
+                proxyBuilder.password(proxyConfig.getPassword());
+            }
+
+            httpClientBuilder.proxyConfiguration(proxyBuilder.build());
+        }
+
+        SdkAsyncHttpClient httpClient = httpClientBuilder.build();
+
+        return new AwsAsyncClientConfig(httpClient, createClientOverrideConfiguration(maxErrorRetrySize));
+    }
+
+    private static ClientOverrideConfiguration createClientOverrideConfiguration(int maxErrorRetrySize) {
         // Configure client override settings (e.g., retry strategy)
-        ClientOverrideConfiguration overrideConfiguration = ClientOverrideConfiguration.builder()
+        return ClientOverrideConfiguration.builder()
                 .retryStrategy(StandardRetryStrategy.builder()
                         .maxAttempts(maxErrorRetrySize + 1) // maxAttempts = numRetries + 1
                         .build())
                 .build();
-
-        return new AwsClientConfig(httpClient, overrideConfiguration);
     }
 }
@@ -8,7 +8,9 @@
 package com.appdynamics.extensions.aws.collectors;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
@@ -27,6 +29,7 @@ import com.appdynamics.extensions.aws.metric.AccountMetricStatistics;
 import com.appdynamics.extensions.aws.metric.MetricStatistic;
 import com.appdynamics.extensions.aws.metric.RegionMetricStatistics;
 import com.appdynamics.extensions.aws.metric.processors.MetricsProcessor;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.RateLimiter;
 import org.junit.Test;
@@ -44,10 +47,11 @@ import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.LongAdder;
 
 @RunWith(PowerMockRunner.class)
-@PrepareForTest({AccountMetricStatisticsCollector.class,
+@PrepareForTest({CollectorExecutor.class, AccountMetricStatisticsCollector.class,
         ExecutorCompletionService.class})
 @PowerMockIgnore({"org.apache.*, javax.xml.*"})
 public class AccountMetricStatisticsCollectorTest {
@@ -106,6 +110,9 @@ public class AccountMetricStatisticsCollectorTest {
         when(mockBuilder.withRateLimiter(any(RateLimiter.class))).thenReturn(mockBuilder);
         when(mockBuilder.withAWSRequestCounter(any(LongAdder.class))).thenReturn(mockBuilder);
         when(mockBuilder.withPrefix(anyString())).thenReturn(mockBuilder);
+        when(mockBuilder.withCycleDeadline(any())).thenReturn(mockBuilder);
+        when(mockBuilder.withVirtualThreads(anyBoolean())).thenReturn(mockBuilder);
+        when(mockBuilder.withMaxConcurrentRequests(anyInt())).thenReturn(mockBuilder);
 
         when(mockBuilder.build()).thenReturn(mockRegionStatsCollector1, mockRegionStatsCollector2);
 
@@ -127,6 +134,77 @@ public class AccountMetricStatisticsCollectorTest {
         assertEquals(regionStats2, result.getRegionMetricStatisticsList().get(1));
     }
 
+    @Test
+    public void testCompletedRegionsAreKeptWhenOneRegionOverruns() throws Exception {
+        Account testAccount = new Account();
+        testAccount.setDisplayAccountName("TestAccount");
+        testAccount.setRegions(Sets.newLinkedHashSet(Lists.newArrayList("region1", "region2", "region3")));
+
+        when(mockMetricsProcessor.getNamespace()).thenReturn("testNamespace");
+
+        CycleDeadline cycleDeadline = CycleDeadline.after(300, TimeUnit.MILLISECONDS);
+
+        RegionMetricStatisticsCollector mockRegionStatsCollector1 = mock(RegionMetricStatisticsCollector.class);
+        RegionMetricStatistics regionStats1 = createTestMetricStatistics("region1");
+        when(mockRegionStatsCollector1.call()).thenReturn(regionStats1);
+
+        // hands back what it collected once the deadline is reached
+        RegionMetricStatisticsCollector mockRegionStatsCollector2 = mock(RegionMetricStatisticsCollector.class);
+        RegionMetricStatistics regionStats2 = createTestMetricStatistics("region2");
+        when(mockRegionStatsCollector2.call()).thenAnswer(invocation -> {
+            Thread.sleep(Math.max(TimeUnit.NANOSECONDS.toMillis(cycleDeadline.remainingNanos()), 0) + 50);
+            return regionStats2;
+        });
+
+        // still running well after the deadline
+        RegionMetricStatisticsCollector mockRegionStatsCollector3 = mock(RegionMetricStatisticsCollector.class);
+        when(mockRegionStatsCollector3.call()).thenAnswer(invocation -> {
+            Thread.sleep(5000);
+            return createTestMetricStatistics("region3");
+        });
+
+        RegionMetricStatisticsCollector.Builder mockBuilder = mock(RegionMetricStatisticsCollector.Builder.class);
+        whenNew(RegionMetricStatisticsCollector.Builder.class).withNoArguments().thenReturn(mockBuilder);
+        when(mockBuilder.withAccountName(anyString())).thenReturn(mockBuilder);
+        when(mockBuilder.withAmazonCloudWatchConfig(any(StaticCredentialsProvider.class), any(AwsClientConfig.class)))
+                .thenReturn(mockBuilder);
+        when(mockBuilder.withMetricsProcessor(any(MetricsProcessor.class))).thenReturn(mockBuilder);
+        when(mockBuilder.withMetricsTimeRange(any(MetricsTimeRange.class))).thenReturn(mockBuilder);
+        when(mockBuilder.withNoOfMetricThreadsPerRegion(anyInt())).thenReturn(mockBuilder);
+        when(mockBuilder.withThreadTimeOut(anyInt())).thenReturn(mockBuilder);
+        when(mockBuilder.withRegion(anyString())).thenReturn(mockBuilder);
+        when(mockBuilder.withRateLimiter(any(RateLimiter.class))).thenReturn(mockBuilder);
+        when(mockBuilder.withAWSRequestCounter(any(LongAdder.class))).thenReturn(mockBuilder);
+        when(mockBuilder.withPrefix(anyString())).thenReturn(mockBuilder);
+        when(mockBuilder.withCycleDeadline(any())).thenReturn(mockBuilder);
+        when(mockBuilder.withVirtualThreads(anyBoolean())).thenReturn(mockBuilder);
+        when(mockBuilder.withMaxConcurrentRequests(anyInt())).thenReturn(mockBuilder);
+
+        when(mockBuilder.build()).thenReturn(mockRegionStatsCollector1, mockRegionStatsCollector2,
+                mockRegionStatsCollector3);
+
+        classUnderTest = new AccountMetricStatisticsCollector.Builder()
+                .withAccount(testAccount)
+                .withMetricsProcessor(mockMetricsProcessor)
+                .withMaxErrorRetrySize(1)
+                .withMetricsTimeRange(new MetricsTimeRange())
+                .withNoOfMetricThreadsPerRegion(1)
+                .withNoOfRegionThreadsPerAccount(3)
+                .withRateLimiter(RateLimiter.create(400))
+                .withAWSRequestCounter(requestCounter)
+                .withThreadTimeOut(3000)
+                .withCycleDeadline(cycleDeadline)
+                .build();
+
+        AccountMetricStatistics result = classUnderTest.call();
+
+        // returned while the namespace still waits for the account
+        assertTrue(System.nanoTime() < cycleDeadline.getDeadlineNanos(CycleDeadline.Level.ACCOUNT));
+        assertEquals(2, result.getRegionMetricStatisticsList().size());
+        assertEquals(regionStats1, result.getRegionMetricStatisticsList().get(0));
+        assertEquals(regionStats2, result.getRegionMetricStatisticsList().get(1));
+    }
+
     private RegionMetricStatistics createTestMetricStatistics(String region) {
         RegionMetricStatistics regionStats = new RegionMetricStatistics();
         regionStats.setRegion(region);
@@ -187,6 +265,9 @@ public class AccountMetricStatisticsCollectorTest {
         when(mockBuilder.withRateLimiter(any(RateLimiter.class))).thenReturn(mockBuilder);
         when(mockBuilder.withAWSRequestCounter(any(LongAdder.class))).thenReturn(mockBuilder);
         when(mockBuilder.withPrefix(anyString())).thenReturn(mockBuilder);
+        when(mockBuilder.withCycleDeadline(any())).thenReturn(mockBuilder);
+        when(mockBuilder.withVirtualThreads(anyBoolean())).thenReturn(mockBuilder);
+        when(mockBuilder.withMaxConcurrentRequests(anyInt())).thenReturn(mockBuilder);
 
         when(mockBuilder.build()).thenReturn(mockRegionStatsCollector1, mockRegionStatsCollector2);
 
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2018. AppDynamics LLC and its affiliates.
+ * All Rights Reserved.
+ * This is unpublished proprietary source code of AppDynamics LLC and its affiliates.
+ * The copyright notice above does not evidence any actual or intended publication of such source code.
+ */
+
+package com.appdynamics.extensions.aws.collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.appdynamics.extensions.aws.exceptions.AwsException;
+import org.junit.Test;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.services.cloudwatch.model.CloudWatchException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+public class AdaptiveRateControllerTest {
+
+    @Test
+    public void testRateIsRaisedAdditivelyOnSuccess() {
+        AdaptiveRateController classUnderTest = new AdaptiveRateController(10, 100);
+
+        for (int index = 0; index < 10; index++) {
+            classUnderTest.onSuccess();
+        }
+
+        assertTrue(classUnderTest.getRate() > 10.9);
+        assertTrue(classUnderTest.getRate() < 11.1);
+        assertEquals(classUnderTest.getRate(), classUnderTest.getRateLimiter().getRate(), 0.0);
+    }
+
+    @Test
+    public void testRateIsHalvedOncePerThrottlingBurst() {
+        AdaptiveRateController classUnderTest = new AdaptiveRateController(400, 1000);
+
+        classUnderTest.onComplete(createThrottlingException());
+        classUnderTest.onComplete(createThrottlingException());
+
+        assertEquals(200, classUnderTest.getRate(), 0.0);
+        assertEquals(200, classUnderTest.getRateLimiter().getRate(), 0.0);
+    }
+
+    @Test
+    public void testRateStaysWithinBounds() {
+        AdaptiveRateController classUnderTest = new AdaptiveRateController(1, 1);
+
+        classUnderTest.onSuccess();
+        assertEquals(1, classUnderTest.getRate(), 0.0);
+
+        classUnderTest.onThrottled();
+        assertEquals(AdaptiveRateController.MIN_RATE, classUnderTest.getRate(), 0.0);
+    }
+
+    @Test
+    public void testOnlyThrottlingErrorsLowerTheRate() {
+        AdaptiveRateController classUnderTest = new AdaptiveRateController(400, 400);
+
+        classUnderTest.onComplete(new AwsException("test error"));
+        assertEquals(400, classUnderTest.getRate(), 0.0);
+
+        assertTrue(AdaptiveRateController.isThrottlingException(
+                new AwsException("wrapped", createThrottlingException())));
+        assertFalse(AdaptiveRateController.isThrottlingException(new AwsException("test error")));
+    }
+
+    @Test
+    public void testOutcomeOfEveryRequestIsRecorded() {
+        AdaptiveRateController classUnderTest = new AdaptiveRateController(400, 1000);
+
+        Function<String, CompletableFuture<String>> sender = classUnderTest.record(
+                request -> "throttled".equals(request) ?
+                        CompletableFuture.failedFuture(createThrottlingException()) :
+                        CompletableFuture.completedFuture(request));
+
+        // e.g. the first page of a task succeeds, the next one is throttled
+        sender.apply("page");
+        sender.apply("throttled");
+
+        assertEquals(200, classUnderTest.getRate(), 0.01);
+    }
+
+    private CloudWatchException createThrottlingException() {
+        return (CloudWatchException) CloudWatchException.builder()
+                .statusCode(400)
+                .awsErrorDetails(AwsErrorDetails.builder().errorCode("Throttling").build())
+                .build();
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2018. AppDynamics LLC and its affiliates.
+ * All Rights Reserved.
+ * This is unpublished proprietary source code of AppDynamics LLC and its affiliates.
+ * The copyright notice above does not evidence any actual or intended publication of such source code.
+ */
+
+package com.appdynamics.extensions.aws.collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.appdynamics.extensions.aws.config.ConcurrencyConfig;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+public class CollectorExecutorTest {
+
+    @Test
+    public void testFixedThreadPoolIsUsedUnlessEnabled() throws Exception {
+        CollectorExecutor executor = CollectorExecutor.create(CollectorRuntime.Level.METRIC, false, 1);
+
+        try {
+            assertFalse(executor.isVirtualThreads());
+            assertEquals("done", runTask(executor));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testVirtualThreadsFallBackWhenNotSupported() throws Exception {
+        CollectorExecutor executor = CollectorExecutor.create(CollectorRuntime.Level.METRIC, true, 1);
+
+        try {
+            assertEquals(CollectorExecutor.isVirtualThreadsSupported(), executor.isVirtualThreads());
+            assertEquals("done", runTask(executor));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testSharedPoolIsReusedOnceRuntimeStarted() throws Exception {
+        ConcurrencyConfig concurrencyConfig = new ConcurrencyConfig();
+        concurrencyConfig.setNoOfAccountThreads(1);
+        concurrencyConfig.setNoOfRegionThreadsPerAccount(1);
+        concurrencyConfig.setNoOfMetricThreadsPerRegion(2);
+
+        CollectorRuntime.getInstance().start(concurrencyConfig);
+
+        try {
+            CollectorExecutor executor = CollectorExecutor.create(CollectorRuntime.Level.METRIC, false, 1);
+            assertEquals("done", runTask(executor));
+            executor.shutdown();
+
+            assertTrue(CollectorRuntime.getInstance().isStarted());
+            assertFalse(CollectorRuntime.getInstance().getExecutor(CollectorRuntime.Level.METRIC).isShutdown());
+            assertEquals(2, CollectorRuntime.getInstance().getExecutor(CollectorRuntime.Level.METRIC).getMaximumPoolSize());
+
+            executor = CollectorExecutor.create(CollectorRuntime.Level.METRIC, false, 1);
+            assertEquals("done", runTask(executor));
+            assertEquals(0, CollectorRuntime.getInstance().getQueueDepth(CollectorRuntime.Level.METRIC));
+
+        } finally {
+            CollectorRuntime.getInstance().shutdown();
+        }
+    }
+
+    @Test
+    public void testSharedPoolsAreSizedForEveryNamespace() throws Exception {
+        ConcurrencyConfig concurrencyConfig = new ConcurrencyConfig();
+        concurrencyConfig.setNoOfAccountThreads(2);
+        concurrencyConfig.setNoOfRegionThreadsPerAccount(3);
+        concurrencyConfig.setNoOfMetricThreadsPerRegion(4);
+
+        CollectorRuntime.getInstance().start(concurrencyConfig, 5);
+
+        try {
+            assertEquals(10, CollectorRuntime.getInstance().getExecutor(CollectorRuntime.Level.ACCOUNT).getMaximumPoolSize());
+            assertEquals(30, CollectorRuntime.getInstance().getExecutor(CollectorRuntime.Level.REGION).getMaximumPoolSize());
+            assertEquals(120, CollectorRuntime.getInstance().getExecutor(CollectorRuntime.Level.METRIC).getMaximumPoolSize());
+            //Threads not used by the cycles are released
+            assertTrue(CollectorRuntime.getInstance().getExecutor(CollectorRuntime.Level.METRIC).allowsCoreThreadTimeOut());
+
+        } finally {
+            CollectorRuntime.getInstance().shutdown();
+        }
+    }
+
+    @Test
+    public void testTaskIsCancelledIfNoThreadFreesUpByTheDeadline() throws Exception {
+        ConcurrencyConfig concurrencyConfig = new ConcurrencyConfig();
+        concurrencyConfig.setNoOfAccountThreads(1);
+        concurrencyConfig.setNoOfRegionThreadsPerAccount(1);
+        concurrencyConfig.setNoOfMetricThreadsPerRegion(1);
+
+        CollectorRuntime.getInstance().start(concurrencyConfig);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try {
+            CollectorExecutor executor = CollectorExecutor.create(CollectorRuntime.Level.METRIC, false, 1);
+
+            FutureTask<String> runningTask = new FutureTask<String>(() -> {
+                release.await();
+                return "done";
+            });
+            executor.submit("CollectorExecutorTest", runningTask, TaskCompletionQueue.deadlineIn(5));
+
+            FutureTask<String> waitingTask = new FutureTask<String>(() -> "done");
+            executor.submit("CollectorExecutorTest", waitingTask,
+                    System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100));
+
+            assertTrue(waitingTask.isCancelled());
+
+            release.countDown();
+            assertEquals("done", runningTask.get(5, TimeUnit.SECONDS));
+
+        } finally {
+            release.countDown();
+            CollectorRuntime.getInstance().shutdown();
+        }
+    }
+
+    @Test
+    public void testTaskSubmittedAfterTheDeadlineIsCancelled() throws Exception {
+        CollectorExecutor executor = CollectorExecutor.create(CollectorRuntime.Level.METRIC, false, 1);
+
+        try {
+            FutureTask<String> task = new FutureTask<String>(() -> "done");
+            executor.submit("CollectorExecutorTest", task, System.nanoTime());
+
+            assertTrue(task.isCancelled());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private String runTask(CollectorExecutor executor) throws Exception {
+        FutureTask<String> task = new FutureTask<String>(() -> "done");
+        executor.submit("CollectorExecutorTest", task, TaskCompletionQueue.deadlineIn(5));
+        return task.get(5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2018. AppDynamics LLC and its affiliates.
+ * All Rights Reserved.
+ * This is unpublished proprietary source code of AppDynamics LLC and its affiliates.
+ * The copyright notice above does not evidence any actual or intended publication of such source code.
+ */
+
+package com.appdynamics.extensions.aws.collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class CycleDeadlineTest {
+
+    @Test
+    public void testRemainingTimeUntilDeadline() {
+        CycleDeadline cycleDeadline = CycleDeadline.after(30, TimeUnit.SECONDS);
+
+        assertFalse(cycleDeadline.isExpired());
+        assertTrue(cycleDeadline.remainingNanos() > TimeUnit.SECONDS.toNanos(29));
+        assertTrue(cycleDeadline.remainingNanos() <= TimeUnit.SECONDS.toNanos(30));
+        assertEquals(cycleDeadline.getDeadlineNanos(), CycleDeadline.deadlineNanos(cycleDeadline, 60));
+    }
+
+    @Test
+    public void testEachLevelWaitsLongerThanTheLevelBelow() {
+        CycleDeadline cycleDeadline = CycleDeadline.after(30, TimeUnit.SECONDS);
+
+        long previousDeadlineNanos = cycleDeadline.getDeadlineNanos();
+        for (CycleDeadline.Level level : CycleDeadline.Level.values()) {
+            assertTrue(cycleDeadline.getDeadlineNanos(level) > previousDeadlineNanos);
+            previousDeadlineNanos = cycleDeadline.getDeadlineNanos(level);
+        }
+
+        assertEquals(cycleDeadline.getDeadlineNanos(CycleDeadline.Level.REGION),
+                CycleDeadline.deadlineNanos(cycleDeadline, CycleDeadline.Level.REGION, 60));
+    }
+
+    @Test
+    public void testExpiredDeadlineStillGivesMinimumApiCallTimeout() {
+        CycleDeadline cycleDeadline = CycleDeadline.after(0, TimeUnit.SECONDS);
+
+        assertTrue(cycleDeadline.isExpired());
+        assertEquals(100, cycleDeadline.toOverrideConfiguration().apiCallTimeout().get().toMillis());
+    }
+
+    @Test
+    public void testThreadTimeOutWithoutCycleDeadline() {
+        long deadlineNanos = CycleDeadline.deadlineNanos(null, 30);
+        long remainingNanos = deadlineNanos - System.nanoTime();
+
+        assertTrue(remainingNanos > TimeUnit.SECONDS.toNanos(29));
+        assertTrue(remainingNanos <= TimeUnit.SECONDS.toNanos(30));
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2018. AppDynamics LLC and its affiliates.
+ * All Rights Reserved.
+ * This is unpublished proprietary source code of AppDynamics LLC and its affiliates.
+ * The copyright notice above does not evidence any actual or intended publication of such source code.
+ */
+
+package com.appdynamics.extensions.aws.collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.appdynamics.extensions.aws.config.IncludeMetric;
+import com.appdynamics.extensions.aws.config.MetricsTimeRange;
+import com.appdynamics.extensions.aws.dto.AWSMetric;
+import com.appdynamics.extensions.aws.exceptions.AwsException;
+import com.appdynamics.extensions.aws.metric.MetricStatistic;
+import com.appdynamics.extensions.aws.metric.StatisticType;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.RateLimiter;
+import org.joda.time.DateTime;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import software.amazon.awssdk.core.exception.ApiCallTimeoutException;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchAsyncClient;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchClient;
+import software.amazon.awssdk.services.cloudwatch.model.Dimension;
+import software.amazon.awssdk.services.cloudwatch.model.GetMetricDataRequest;
+import software.amazon.awssdk.services.cloudwatch.model.GetMetricDataResponse;
+import software.amazon.awssdk.services.cloudwatch.model.Metric;
+import software.amazon.awssdk.services.cloudwatch.model.MetricDataResult;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+@RunWith(MockitoJUnitRunner.class)
+public class MetricDataBatchCollectorTest {
+
+    private MetricDataBatchCollector classUnderTest;
+
+    @Mock
+    private CloudWatchClient mockAwsCloudWatch;
+
+    @Mock
+    private CloudWatchAsyncClient mockAwsCloudWatchAsync;
+
+    private LongAdder requestCounter = new LongAdder();
+
+    @Test
+    public void testLatestValueIsUsedAcrossPages() throws Exception {
+        List<AWSMetric> testMetrics = getTestMetrics(2);
+
+        Instant now = DateTime.now().toDate().toInstant();
+        Instant fiveMinsAgo = DateTime.now().minusMinutes(5).toDate().toInstant();
+
+        GetMetricDataResponse firstPage = GetMetricDataResponse.builder()
+                .metricDataResults(
+                        MetricDataResult.builder().id("m0").timestamps(fiveMinsAgo).values(1.0).build(),
+                        MetricDataResult.builder().id("m1").build())
+                .nextToken("token")
+                .build();
+
+        GetMetricDataResponse secondPage = GetMetricDataResponse.builder()
+                .metricDataResults(
+                        MetricDataResult.builder().id("m0").timestamps(now).values(2.0).build())
+                .build();
+
+        when(mockAwsCloudWatch.getMetricData(any(GetMetricDataRequest.class)))
+                .thenReturn(firstPage, secondPage);
+
+        classUnderTest = new MetricDataBatchCollector.Builder()
+                .withMetricsTimeRange(new MetricsTimeRange())
+                .withMetricStatistics(getTestMetricStatistics(testMetrics, StatisticType.SUM))
+                .withAwsCloudWatch(mockAwsCloudWatch)
+                .withAWSRequestCounter(requestCounter)
+                .build();
+
+        List<MetricStatistic> result = classUnderTest.call();
+
+        assertEquals(2, result.size());
+        assertEquals(testMetrics.get(0), result.get(0).getMetric());
+        assertEquals(Double.valueOf(2.0), result.get(0).getValue());
+        assertEquals(testMetrics.get(1), result.get(1).getMetric());
+        assertNull(result.get(1).getValue());
+        assertEquals(2, requestCounter.intValue());
+        verify(mockAwsCloudWatch, times(2)).getMetricData(any(GetMetricDataRequest.class));
+    }
+
+    @Test
+    public void testPagesAreRateLimitedWhenCollectedAsynchronously() throws Exception {
+        List<AWSMetric> testMetrics = getTestMetrics(1);
+
+        Instant now = DateTime.now().toDate().toInstant();
+
+        GetMetricDataResponse firstPage = GetMetricDataResponse.builder()
+                .metricDataResults(MetricDataResult.builder().id("m0").build())
+                .nextToken("token1")
+                .build();
+
+        GetMetricDataResponse secondPage = GetMetricDataResponse.builder()
+                .metricDataResults(MetricDataResult.builder().id("m0").build())
+                .nextToken("token2")
+                .build();
+
+        GetMetricDataResponse thirdPage = GetMetricDataResponse.builder()
+                .metricDataResults(MetricDataResult.builder().id("m0").timestamps(now).values(3.0).build())
+                .build();
+
+        when(mockAwsCloudWatchAsync.getMetricData(any(GetMetricDataRequest.class))).thenReturn(
+                CompletableFuture.completedFuture(firstPage),
+                CompletableFuture.completedFuture(secondPage),
+                CompletableFuture.completedFuture(thirdPage));
+
+        classUnderTest = new MetricDataBatchCollector.Builder()
+                .withMetricsTimeRange(new MetricsTimeRange())
+                .withMetricStatistics(getTestMetricStatistics(testMetrics, StatisticType.SUM))
+                .withAWSRequestCounter(requestCounter)
+                .withRateLimiter(RateLimiter.create(10))
+                .build();
+
+        // The permit of the third page is only available after 100ms, taken once it is
+        List<MetricStatistic> result = classUnderTest.callAsync(mockAwsCloudWatchAsync).get(5, TimeUnit.SECONDS);
+
+        assertEquals(Double.valueOf(3.0), result.get(0).getValue());
+        assertEquals(3, requestCounter.intValue());
+        verify(mockAwsCloudWatchAsync, times(3)).getMetricData(any(GetMetricDataRequest.class));
+    }
+
+    @Test
+    public void testPagesReadAreKeptWhenNextPageTimesOut() throws Exception {
+        List<AWSMetric> testMetrics = getTestMetrics(2);
+
+        Instant now = DateTime.now().toDate().toInstant();
+
+        GetMetricDataResponse firstPage = GetMetricDataResponse.builder()
+                .metricDataResults(
+                        MetricDataResult.builder().id("m0").timestamps(now).values(1.0).build(),
+                        MetricDataResult.builder().id("m1").build())
+                .nextToken("token")
+                .build();
+
+        when(mockAwsCloudWatch.getMetricData(any(GetMetricDataRequest.class)))
+                .thenReturn(firstPage)
+                .thenThrow(ApiCallTimeoutException.builder().message("Timed out").build());
+
+        classUnderTest = new MetricDataBatchCollector.Builder()
+                .withMetricsTimeRange(new MetricsTimeRange())
+                .withMetricStatistics(getTestMetricStatistics(testMetrics, StatisticType.SUM))
+                .withAwsCloudWatch(mockAwsCloudWatch)
+                .withAWSRequestCounter(requestCounter)
+                .withCycleDeadline(CycleDeadline.after(1, TimeUnit.MINUTES))
+                .build();
+
+        List<MetricStatistic> result = classUnderTest.call();
+
+        assertEquals(Double.valueOf(1.0), result.get(0).getValue());
+        assertNull(result.get(1).getValue());
+        verify(mockAwsCloudWatch, times(2)).getMetricData(any(GetMetricDataRequest.class));
+    }
+
+    @Test(expected = AwsException.class)
+    public void testBatchLargerThanLimitThrowsException() throws Exception {
+        classUnderTest = new MetricDataBatchCollector.Builder()
+                .withMetricsTimeRange(new MetricsTimeRange())
+                .withMetricStatistics(getTestMetricStatistics(getTestMetrics(501), StatisticType.AVE))
+                .withAwsCloudWatch(mockAwsCloudWatch)
+                .withAWSRequestCounter(requestCounter)
+                .build();
+
+        classUnderTest.call();
+    }
+
+    @Test
+    public void testOneQueryPerStatisticOfTheSameMetric() throws Exception {
+        List<AWSMetric> testMetrics = getTestMetrics(1);
+        List<MetricStatistic> metricStatistics = MetricStatisticCollector.createMetricStatistics(
+                testMetrics.get(0), Lists.newArrayList(StatisticType.AVE, StatisticType.MAX), null);
+
+        Instant now = DateTime.now().toDate().toInstant();
+
+        GetMetricDataResponse response = GetMetricDataResponse.builder()
+                .metricDataResults(
+                        MetricDataResult.builder().id("m0").timestamps(now).values(1.5).build(),
+                        MetricDataResult.builder().id("m1").timestamps(now).values(9.0).build())
+                .build();
+
+        when(mockAwsCloudWatch.getMetricData(any(GetMetricDataRequest.class))).thenReturn(response);
+
+        classUnderTest = new MetricDataBatchCollector.Builder()
+                .withMetricsTimeRange(new MetricsTimeRange())
+                .withMetricStatistics(metricStatistics)
+                .withAwsCloudWatch(mockAwsCloudWatch)
+                .withAWSRequestCounter(requestCounter)
+                .build();
+
+        List<MetricStatistic> result = classUnderTest.call();
+
+        assertEquals(2, result.size());
+        assertEquals(StatisticType.AVE, result.get(0).getStatType());
+        assertEquals(Double.valueOf(1.5), result.get(0).getValue());
+        assertEquals(StatisticType.MAX, result.get(1).getStatType());
+        assertEquals(Double.valueOf(9.0), result.get(1).getValue());
+        assertEquals(1, requestCounter.intValue());
+    }
+
+    private List<MetricStatistic> getTestMetricStatistics(List<AWSMetric> testMetrics, StatisticType statType) {
+        List<MetricStatistic> metricStatistics = Lists.newArrayList();
+
+        for (AWSMetric testMetric : testMetrics) {
+            metricStatistics.addAll(MetricStatisticCollector.createMetricStatistics(
+                    testMetric, Lists.newArrayList(statType), null));
+        }
+
+        return metricStatistics;
+    }
+
+    private List<AWSMetric> getTestMetrics(int size) {
+        List<AWSMetric> testMetrics = Lists.newArrayList();
+
+        for (int index = 0; index < size; index++) {
+            IncludeMetric includeMetric = new IncludeMetric();
+            includeMetric.setName("testMetric" + index);
+
+            Dimension dimension = Dimension.builder().name("testDimesionName").value("testDimesionValue" + index).build();
+            Metric metric = Metric.builder().metricName("testMetric" + index).namespace("testNamespace")
+                    .dimensions(Lists.newArrayList(dimension)).build();
+
+            AWSMetric awsMetric = new AWSMetric();
+            awsMetric.setIncludeMetric(includeMetric);
+            awsMetric.setMetric(metric);
+
+            testMetrics.add(awsMetric);
+        }
+
+        return testMetrics;
+    }
+}
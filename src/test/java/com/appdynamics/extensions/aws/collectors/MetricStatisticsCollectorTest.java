@@ -9,34 +9,45 @@ package com.appdynamics.extensions.aws.collectors;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.appdynamics.extensions.aws.config.IncludeMetric;
+import com.appdynamics.extensions.aws.config.MetricsConfig;
 import com.appdynamics.extensions.aws.config.MetricsTimeRange;
 import com.appdynamics.extensions.aws.dto.AWSMetric;
 import com.appdynamics.extensions.aws.exceptions.AwsException;
 import com.appdynamics.extensions.aws.metric.MetricStatistic;
 import com.appdynamics.extensions.aws.metric.StatisticType;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.RateLimiter;
 import org.joda.time.DateTime;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import software.amazon.awssdk.core.exception.SdkServiceException;
 import software.amazon.awssdk.services.cloudwatch.CloudWatchClient;
 import software.amazon.awssdk.services.cloudwatch.model.Datapoint;
+import software.amazon.awssdk.services.cloudwatch.model.Dimension;
 import software.amazon.awssdk.services.cloudwatch.model.GetMetricStatisticsRequest;
 import software.amazon.awssdk.services.cloudwatch.model.GetMetricStatisticsResponse;
 import software.amazon.awssdk.services.cloudwatch.model.Metric;
 import software.amazon.awssdk.services.cloudwatch.model.StandardUnit;
+import software.amazon.awssdk.services.cloudwatch.model.Statistic;
 
 import java.lang.reflect.Field;
 import java.util.Date;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.LongAdder;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -62,6 +73,9 @@ public class MetricStatisticsCollectorTest {
     @Mock
     private MetricsTimeRange mockMetricsTimeRange;
 
+    @Mock
+    private RateLimiter mockRateLimiter;
+
     private LongAdder requestCounter = new LongAdder();
 
     @Before
@@ -127,12 +141,158 @@ public class MetricStatisticsCollectorTest {
                 .withAWSRequestCounter(requestCounter)
                 .build();
 
-        MetricStatistic result = classUnderTest.call();
+        MetricStatistic result = classUnderTest.call().get(0);
 
         assertEquals(latestDatapoint.sum(), result.getValue());
         assertEquals(latestDatapoint.unit(), result.getUnit());
     }
 
+    @Test
+    public void testMultipleStatisticTypesInOneRequest() throws Exception {
+        Datapoint latestDatapoint = createTestDatapoint(
+                DateTime.now().toDate());
+
+        when(mockAwsCloudWatch.getMetricStatistics(any(GetMetricStatisticsRequest.class)))
+                .thenReturn(mockGetMetricStatsResult);
+
+        when(mockGetMetricStatsResult.datapoints()).thenReturn(Lists.newArrayList(latestDatapoint));
+
+        classUnderTest = new MetricStatisticCollector.Builder()
+                .withMetricsTimeRange(new MetricsTimeRange())
+                .withMetric(mockAWSMetric)
+                .withAwsCloudWatch(mockAwsCloudWatch)
+                .withStatTypes(Lists.newArrayList(StatisticType.AVE, StatisticType.MAX))
+                .withAWSRequestCounter(requestCounter)
+                .build();
+
+        List<MetricStatistic> result = classUnderTest.call();
+
+        assertEquals(2, result.size());
+        assertEquals(latestDatapoint.average(), result.get(0).getValue());
+        assertEquals(StatisticType.AVE.getTypeName(), result.get(0).getStatSuffix());
+        assertEquals(latestDatapoint.maximum(), result.get(1).getValue());
+        assertEquals(StatisticType.MAX.getTypeName(), result.get(1).getStatSuffix());
+        assertEquals(1, requestCounter.intValue());
+        verify(mockAwsCloudWatch, times(1)).getMetricStatistics(any(GetMetricStatisticsRequest.class));
+    }
+
+    @Test
+    public void testRequestIsBoundedByCycleDeadline() throws Exception {
+        when(mockAwsCloudWatch.getMetricStatistics(any(GetMetricStatisticsRequest.class)))
+                .thenReturn(mockGetMetricStatsResult);
+
+        when(mockGetMetricStatsResult.datapoints()).thenReturn(Lists.newArrayList(
+                createTestDatapoint(DateTime.now().toDate())));
+
+        classUnderTest = new MetricStatisticCollector.Builder()
+                .withMetricsTimeRange(new MetricsTimeRange())
+                .withMetric(mockAWSMetric)
+                .withAwsCloudWatch(mockAwsCloudWatch)
+                .withStatType(StatisticType.SUM)
+                .withAWSRequestCounter(requestCounter)
+                .withCycleDeadline(CycleDeadline.after(30, TimeUnit.SECONDS))
+                .build();
+
+        classUnderTest.call();
+
+        ArgumentCaptor<GetMetricStatisticsRequest> request = ArgumentCaptor.forClass(GetMetricStatisticsRequest.class);
+        verify(mockAwsCloudWatch).getMetricStatistics(request.capture());
+
+        long apiCallTimeout = request.getValue().overrideConfiguration().get().apiCallTimeout().get().getSeconds();
+        assertTrue(apiCallTimeout > 0 && apiCallTimeout <= 30);
+    }
+
+    @Test
+    public void testNoRequestAfterCycleDeadline() throws Exception {
+        classUnderTest = new MetricStatisticCollector.Builder()
+                .withMetricsTimeRange(new MetricsTimeRange())
+                .withMetric(mockAWSMetric)
+                .withAwsCloudWatch(mockAwsCloudWatch)
+                .withStatType(StatisticType.SUM)
+                .withAWSRequestCounter(requestCounter)
+                .withCycleDeadline(CycleDeadline.after(0, TimeUnit.SECONDS))
+                .build();
+
+        assertTrue(classUnderTest.call().isEmpty());
+        assertEquals(0, requestCounter.intValue());
+        verify(mockAwsCloudWatch, never()).getMetricStatistics(any(GetMetricStatisticsRequest.class));
+    }
+
+    @Test
+    public void testExtendedStatisticTypes() throws Exception {
+        Datapoint latestDatapoint = createTestDatapoint(DateTime.now().toDate()).toBuilder()
+                .extendedStatistics(ImmutableMap.of("p99", 42.0, "p50", 7.0))
+                .build();
+
+        when(mockAwsCloudWatch.getMetricStatistics(any(GetMetricStatisticsRequest.class)))
+                .thenReturn(mockGetMetricStatsResult);
+
+        when(mockGetMetricStatsResult.datapoints()).thenReturn(Lists.newArrayList(latestDatapoint));
+
+        classUnderTest = new MetricStatisticCollector.Builder()
+                .withMetricsTimeRange(new MetricsTimeRange())
+                .withMetric(mockAWSMetric)
+                .withAwsCloudWatch(mockAwsCloudWatch)
+                .withStatTypes(Lists.newArrayList(StatisticType.AVE, StatisticType.P99, StatisticType.P50))
+                .withAWSRequestCounter(requestCounter)
+                .withRateLimiter(mockRateLimiter)
+                .build();
+
+        List<MetricStatistic> result = classUnderTest.call();
+
+        assertEquals(3, result.size());
+        assertEquals(latestDatapoint.average(), result.get(0).getValue());
+        assertEquals(Double.valueOf(42.0), result.get(1).getValue());
+        assertEquals("p99", result.get(1).getStatSuffix());
+        assertEquals(Double.valueOf(7.0), result.get(2).getValue());
+
+        // Statistics and ExtendedStatistics cannot be mixed in a GetMetricStatistics request
+        ArgumentCaptor<GetMetricStatisticsRequest> requestCaptor = ArgumentCaptor.forClass(GetMetricStatisticsRequest.class);
+        verify(mockAwsCloudWatch, times(2)).getMetricStatistics(requestCaptor.capture());
+        assertEquals(Lists.newArrayList(Statistic.AVERAGE), requestCaptor.getAllValues().get(0).statistics());
+        assertEquals(Lists.newArrayList("p99", "p50"), requestCaptor.getAllValues().get(1).extendedStatistics());
+        assertEquals(2, requestCounter.intValue());
+
+        // The permit of the first request is taken by the caller
+        verify(mockRateLimiter, times(1)).acquire();
+    }
+
+    @Test
+    public void testWatermarkLimitsNextTimeWindow() throws Exception {
+        SeriesWatermarkStore.getInstance().clear();
+
+        MetricsConfig metricsConfig = new MetricsConfig();
+        metricsConfig.setIncrementalTimeWindows(true);
+        when(mockMetric.dimensions()).thenReturn(Lists.<Dimension>newArrayList());
+
+        Datapoint datapoint = createTestDatapoint(DateTime.now().minusMinutes(2).toDate());
+
+        when(mockAwsCloudWatch.getMetricStatistics(any(GetMetricStatisticsRequest.class)))
+                .thenReturn(mockGetMetricStatsResult);
+
+        when(mockGetMetricStatsResult.datapoints()).thenReturn(Lists.newArrayList(datapoint));
+
+        MetricStatisticCollector.Builder builder = new MetricStatisticCollector.Builder()
+                .withMetricsTimeRange(new MetricsTimeRange())
+                .withMetric(mockAWSMetric)
+                .withAwsCloudWatch(mockAwsCloudWatch)
+                .withStatType(StatisticType.SUM)
+                .withAWSRequestCounter(requestCounter)
+                .withMetricsConfig(metricsConfig);
+
+        assertEquals(datapoint.sum(), builder.build().call().get(0).getValue());
+
+        // Same datapoint is returned again, its value is reported again from the watermark
+        assertEquals(datapoint.sum(), builder.build().call().get(0).getValue());
+
+        ArgumentCaptor<GetMetricStatisticsRequest> requestCaptor = ArgumentCaptor.forClass(GetMetricStatisticsRequest.class);
+        verify(mockAwsCloudWatch, times(2)).getMetricStatistics(requestCaptor.capture());
+        assertEquals(datapoint.timestamp().plusSeconds(metricsConfig.getDefaultPeriod()),
+                requestCaptor.getAllValues().get(1).startTime());
+
+        SeriesWatermarkStore.getInstance().clear();
+    }
+
     @Test
     public void testNullDatapoint() throws Exception {
         List<Datapoint> testDatapoints = Lists.newArrayList(null, null);
@@ -150,7 +310,7 @@ public class MetricStatisticsCollectorTest {
                 .withAWSRequestCounter(requestCounter)
                 .build();
 
-        MetricStatistic result = classUnderTest.call();
+        MetricStatistic result = classUnderTest.call().get(0);
 
         assertNull(result.getValue());
         assertNull(result.getUnit());
@@ -42,7 +42,9 @@ import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.atomic.LongAdder;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.isA;
@@ -52,7 +54,7 @@ import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.whenNew;
 
 @RunWith(PowerMockRunner.class)
-@PrepareForTest({NamespaceMetricStatisticsCollector.class,
+@PrepareForTest({CollectorExecutor.class, NamespaceMetricStatisticsCollector.class,
         ExecutorCompletionService.class})
 @PowerMockIgnore({"org.apache.*, javax.xml.*"})
 public class NamespaceMetricStatisticsCollectorTest {
@@ -100,6 +102,10 @@ public class NamespaceMetricStatisticsCollectorTest {
         when(mockBuilder.withRateLimiter(any(RateLimiter.class))).thenReturn(mockBuilder);
         when(mockBuilder.withAWSRequestCounter(any(LongAdder.class))).thenReturn(mockBuilder);
         when(mockBuilder.withPrefix(anyString())).thenReturn(mockBuilder);
+        when(mockBuilder.withVirtualThreads(anyBoolean())).thenReturn(mockBuilder);
+        when(mockBuilder.withMaxConcurrentRequestsPerRegion(anyInt())).thenReturn(mockBuilder);
+        when(mockBuilder.withMetricSink(any())).thenReturn(mockBuilder);
+        when(mockBuilder.withCycleDeadline(any())).thenReturn(mockBuilder);
 
         when(mockBuilder.build()).thenReturn(mockAccountStatsCollector1, mockAccountStatsCollector2);
 
@@ -128,6 +134,26 @@ public class NamespaceMetricStatisticsCollectorTest {
         assertEquals(accountStats2, result.getAccountMetricStatisticsList().get(1));
     }
 
+    @Test
+    public void testCollectorQueueDepthIsReportedOnceThePoolsAreStarted() {
+        assertTrue(NamespaceMetricStatisticsCollector.createCollectorRuntimeMetrics("Test|Prefix|").isEmpty());
+
+        CollectorRuntime.getInstance().start(new ConcurrencyConfig());
+
+        try {
+            List<com.appdynamics.extensions.metrics.Metric> metrics =
+                    NamespaceMetricStatisticsCollector.createCollectorRuntimeMetrics("Test|Prefix|");
+
+            assertEquals(8, metrics.size());
+            assertEquals("Test|Prefix|Collector Queue Depth|Account", metrics.get(0).getMetricPath());
+            assertEquals("0", metrics.get(0).getMetricValue());
+            assertEquals("Test|Prefix|Collector Active Tasks|Region", metrics.get(3).getMetricPath());
+
+        } finally {
+            CollectorRuntime.getInstance().shutdown();
+        }
+    }
+
     private List<Account> getTestAccounts() {
         List<Account> testAccounts = Lists.newArrayList();
 
@@ -213,6 +239,10 @@ public class NamespaceMetricStatisticsCollectorTest {
         when(mockBuilder.withRateLimiter(any(RateLimiter.class))).thenReturn(mockBuilder);
         when(mockBuilder.withAWSRequestCounter(any(LongAdder.class))).thenReturn(mockBuilder);
         when(mockBuilder.withPrefix(anyString())).thenReturn(mockBuilder);
+        when(mockBuilder.withVirtualThreads(anyBoolean())).thenReturn(mockBuilder);
+        when(mockBuilder.withMaxConcurrentRequestsPerRegion(anyInt())).thenReturn(mockBuilder);
+        when(mockBuilder.withMetricSink(any())).thenReturn(mockBuilder);
+        when(mockBuilder.withCycleDeadline(any())).thenReturn(mockBuilder);
 
         when(mockBuilder.build()).thenReturn(mockAccountStatsCollector1);
 
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2018. AppDynamics LLC and its affiliates.
+ * All Rights Reserved.
+ * This is unpublished proprietary source code of AppDynamics LLC and its affiliates.
+ * The copyright notice above does not evidence any actual or intended publication of such source code.
+ */
+
+package com.appdynamics.extensions.aws.collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import com.google.common.util.concurrent.RateLimiter;
+import org.junit.Test;
+
+public class RateLimiterRegistryTest {
+
+    private RateLimiterRegistry classUnderTest = RateLimiterRegistry.getInstance();
+
+    @Test
+    public void testSameLimiterIsSharedPerAccountRegionAndApi() {
+        RateLimiter rateLimiter = classUnderTest.getRateLimiter("testAccount", "us-east-1",
+                RateLimiterRegistry.GET_METRIC_STATISTICS, 400);
+
+        assertSame(rateLimiter, classUnderTest.getRateLimiter("testAccount", "us-east-1",
+                RateLimiterRegistry.GET_METRIC_STATISTICS, 400));
+        assertNotSame(rateLimiter, classUnderTest.getRateLimiter("testAccount", "us-east-1",
+                RateLimiterRegistry.GET_METRIC_DATA, 400));
+        assertNotSame(rateLimiter, classUnderTest.getRateLimiter("testAccount", "us-west-2",
+                RateLimiterRegistry.GET_METRIC_STATISTICS, 400));
+        assertNotSame(rateLimiter, classUnderTest.getRateLimiter("otherAccount", "us-east-1",
+                RateLimiterRegistry.GET_METRIC_STATISTICS, 400));
+    }
+
+    @Test
+    public void testReconfiguredRateIsApplied() {
+        RateLimiter rateLimiter = classUnderTest.getRateLimiter("rateAccount", "us-east-1",
+                RateLimiterRegistry.GET_METRIC_STATISTICS, 400);
+
+        assertSame(rateLimiter, classUnderTest.getRateLimiter("rateAccount", "us-east-1",
+                RateLimiterRegistry.GET_METRIC_STATISTICS, 50));
+        assertEquals(50, rateLimiter.getRate(), 0.0);
+    }
+}
@@ -9,8 +9,10 @@ package com.appdynamics.extensions.aws.collectors;
 
 import com.appdynamics.extensions.aws.config.AwsClientConfig;
 import com.appdynamics.extensions.aws.config.IncludeMetric;
+import com.appdynamics.extensions.aws.config.MetricsConfig;
 import com.appdynamics.extensions.aws.config.MetricsTimeRange;
 import com.appdynamics.extensions.aws.dto.AWSMetric;
+import com.appdynamics.extensions.aws.exceptions.AwsException;
 import com.appdynamics.extensions.aws.metric.MetricStatistic;
 import com.appdynamics.extensions.aws.metric.RegionMetricStatistics;
 import com.appdynamics.extensions.aws.metric.StatisticType;
@@ -31,6 +33,7 @@ import org.powermock.modules.junit4.PowerMockRunner;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
 import software.amazon.awssdk.awscore.client.builder.AwsClientBuilder;
 import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchAsyncClient;
 import software.amazon.awssdk.services.cloudwatch.CloudWatchClient;
 import software.amazon.awssdk.services.cloudwatch.CloudWatchClientBuilder;
 import software.amazon.awssdk.services.cloudwatch.endpoints.CloudWatchEndpointProvider;
@@ -40,10 +43,14 @@ import software.amazon.awssdk.services.cloudwatch.model.Metric;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.LongAdder;
 
 import static org.junit.Assert.assertEquals;
@@ -52,13 +59,14 @@ import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
 import static org.powermock.api.mockito.PowerMockito.whenNew;
 
 @RunWith(PowerMockRunner.class)
-@PrepareForTest({RegionEndpointProvider.class,
+@PrepareForTest({CollectorExecutor.class, RegionEndpointProvider.class,
         RegionMetricStatisticsCollector.class,
         ExecutorCompletionService.class,
         RateLimiter.class, CloudWatchClientBuilder.class, AwsClientBuilder.class, AwsClientBuilder.class})
@@ -123,6 +131,28 @@ public class RegionMetricStatisticsCollectorTest {
         assertTrue(result.getMetricStatisticsList().isEmpty());
     }
 
+    @Test
+    public void testMetricsAreNotListedOnceCycleDeadlineReached() throws Exception {
+        when(mockMetricsProcessor.getNamespace()).thenReturn("testNamespace");
+        when(mockRegionEndpointProvider.getEndpoint(anyString())).thenReturn("test-endpoint");
+
+        String testRegion = "testRegion";
+
+        classUnderTest = new RegionMetricStatisticsCollector.Builder()
+                .withMetricsProcessor(mockMetricsProcessor)
+                .withRegion(testRegion)
+                .withAWSRequestCounter(requestsCounter)
+                .withAmazonCloudWatchConfig(mockAWSCredentials, mockAwsClientConfig)
+                .withCycleDeadline(CycleDeadline.after(0, TimeUnit.MILLISECONDS))
+                .build();
+
+        RegionMetricStatistics result = classUnderTest.call();
+
+        assertEquals(testRegion, result.getRegion());
+        assertTrue(result.getMetricStatisticsList().isEmpty());
+        verify(mockMetricsProcessor, never()).getMetrics(any(CloudWatchClient.class), anyString(), any(LongAdder.class));
+    }
+
     @Test
     public void testMetricsRetrievalIsSuccessful() throws Exception {
         when(mockRegionEndpointProvider.getEndpoint(anyString())).thenReturn("test-endpoint");
@@ -135,11 +165,11 @@ public class RegionMetricStatisticsCollectorTest {
 
         MetricStatisticCollector mockMetricStatsCollector1 = mock(MetricStatisticCollector.class);
         MetricStatistic metricStatistic1 = createTestMetricStatistics(testMetrics.get(0));
-        when(mockMetricStatsCollector1.call()).thenReturn(metricStatistic1);
+        when(mockMetricStatsCollector1.call()).thenReturn(Lists.newArrayList(metricStatistic1));
 
         MetricStatisticCollector mockMetricStatsCollector2 = mock(MetricStatisticCollector.class);
         MetricStatistic metricStatistic2 = createTestMetricStatistics(testMetrics.get(1));
-        when(mockMetricStatsCollector2.call()).thenReturn(metricStatistic2);
+        when(mockMetricStatsCollector2.call()).thenReturn(Lists.newArrayList(metricStatistic2));
 
         // simulate creation of metric stats collector
         MetricStatisticCollector.Builder mockBuilder = mock(MetricStatisticCollector.Builder.class);
@@ -150,8 +180,12 @@ public class RegionMetricStatisticsCollectorTest {
         when(mockBuilder.withMetricsTimeRange(any(MetricsTimeRange.class))).thenReturn(mockBuilder);
         when(mockBuilder.withRegion(anyString())).thenReturn(mockBuilder);
         when(mockBuilder.withStatType(any(StatisticType.class))).thenReturn(mockBuilder);
+        when(mockBuilder.withStatTypes(any(List.class))).thenReturn(mockBuilder);
         when(mockBuilder.withAWSRequestCounter(requestsCounter)).thenReturn(mockBuilder);
         when(mockBuilder.withPrefix(anyString())).thenReturn(mockBuilder);
+        when(mockBuilder.withCycleDeadline(any())).thenReturn(mockBuilder);
+        when(mockBuilder.withRateLimiter(any())).thenReturn(mockBuilder);
+        when(mockBuilder.withAdaptiveRateController(any())).thenReturn(mockBuilder);
         when(mockBuilder.build()).thenReturn(mockMetricStatsCollector1, mockMetricStatsCollector2);
 
         String testRegion = "testRegion";
@@ -176,6 +210,125 @@ public class RegionMetricStatisticsCollectorTest {
         assertEquals(metricStatistic2, result.getMetricStatisticsList().get(1));
     }
 
+    @Test
+    public void testCallAsyncSkipsFailedTasksAndReleasesPermits() throws Exception {
+        when(mockRegionEndpointProvider.getEndpoint(anyString())).thenReturn("test-endpoint");
+
+        List<AWSMetric> testMetrics = getTestMetrics();
+        when(mockMetricsProcessor.getMetrics(any(CloudWatchClient.class), anyString(), any(LongAdder.class))).thenReturn(testMetrics);
+        when(mockMetricsProcessor.getStatisticType(any(AWSMetric.class))).thenReturn(StatisticType.AVE);
+        when(mockMetricsProcessor.getNamespace()).thenReturn("testNamespace");
+
+        CloudWatchAsyncClient mockAsyncClient = mock(CloudWatchAsyncClient.class);
+
+        MetricStatisticCollector mockMetricStatsCollector1 = mock(MetricStatisticCollector.class);
+        MetricStatistic metricStatistic1 = createTestMetricStatistics(testMetrics.get(0));
+        when(mockMetricStatsCollector1.callAsync(mockAsyncClient))
+                .thenReturn(CompletableFuture.completedFuture(Lists.newArrayList(metricStatistic1)));
+
+        MetricStatisticCollector mockMetricStatsCollector2 = mock(MetricStatisticCollector.class);
+        when(mockMetricStatsCollector2.callAsync(mockAsyncClient))
+                .thenReturn(CompletableFuture.failedFuture(new AwsException("test failure")));
+
+        // simulate creation of metric stats collector
+        MetricStatisticCollector.Builder mockBuilder = mock(MetricStatisticCollector.Builder.class);
+        whenNew(MetricStatisticCollector.Builder.class).withNoArguments().thenReturn(mockBuilder);
+        when(mockBuilder.withAccountName(anyString())).thenReturn(mockBuilder);
+        when(mockBuilder.withAwsCloudWatch(any(CloudWatchClient.class))).thenReturn(mockBuilder);
+        when(mockBuilder.withMetric(any(AWSMetric.class))).thenReturn(mockBuilder);
+        when(mockBuilder.withMetricsTimeRange(any(MetricsTimeRange.class))).thenReturn(mockBuilder);
+        when(mockBuilder.withRegion(anyString())).thenReturn(mockBuilder);
+        when(mockBuilder.withStatType(any(StatisticType.class))).thenReturn(mockBuilder);
+        when(mockBuilder.withStatTypes(any(List.class))).thenReturn(mockBuilder);
+        when(mockBuilder.withAWSRequestCounter(requestsCounter)).thenReturn(mockBuilder);
+        when(mockBuilder.withPrefix(anyString())).thenReturn(mockBuilder);
+        when(mockBuilder.withCycleDeadline(any())).thenReturn(mockBuilder);
+        when(mockBuilder.withRateLimiter(any())).thenReturn(mockBuilder);
+        when(mockBuilder.withAdaptiveRateController(any())).thenReturn(mockBuilder);
+        when(mockBuilder.build()).thenReturn(mockMetricStatsCollector1, mockMetricStatsCollector2);
+
+        String testRegion = "testRegion";
+
+        classUnderTest = new RegionMetricStatisticsCollector.Builder()
+                .withMetricsProcessor(mockMetricsProcessor)
+                .withMetricsTimeRange(new MetricsTimeRange())
+                .withAccountName("testAccount")
+                .withRegion(testRegion)
+                .withRateLimiter(RateLimiter.create(400))
+                .withAWSRequestCounter(requestsCounter)
+                .withPrefix("Custom Metrics|AWS|")
+                .withAmazonCloudWatchConfig(mockAWSCredentials, mockAwsClientConfig)
+                .build();
+
+        Semaphore inFlightRequests = new Semaphore(1);
+
+        RegionMetricStatistics result = classUnderTest.callAsync(mockAsyncClient, inFlightRequests).get();
+
+        assertEquals(testRegion, result.getRegion());
+        assertEquals(1, result.getMetricStatisticsList().size());
+        assertEquals(metricStatistic1, result.getMetricStatisticsList().get(0));
+        assertEquals(1, inFlightRequests.availablePermits());
+    }
+
+    @Test
+    public void testTasksAreOnlyCreatedWhenAThreadIsFree() throws Exception {
+        when(mockRegionEndpointProvider.getEndpoint(anyString())).thenReturn("test-endpoint");
+
+        List<AWSMetric> testMetrics = getTestMetrics();
+        testMetrics.addAll(getTestAdditionalMetrics());
+        when(mockMetricsProcessor.getMetrics(any(CloudWatchClient.class), anyString(), any(LongAdder.class))).thenReturn(testMetrics);
+        when(mockMetricsProcessor.getStatisticType(any(AWSMetric.class))).thenReturn(StatisticType.AVE);
+        when(mockMetricsProcessor.getNamespace()).thenReturn("testNamespace");
+
+        AtomicInteger pendingTasks = new AtomicInteger();
+        AtomicInteger maxPendingTasks = new AtomicInteger();
+
+        // simulate creation of metric stats collector
+        MetricStatisticCollector.Builder mockBuilder = mock(MetricStatisticCollector.Builder.class);
+        whenNew(MetricStatisticCollector.Builder.class).withNoArguments().thenReturn(mockBuilder);
+        when(mockBuilder.withAccountName(anyString())).thenReturn(mockBuilder);
+        when(mockBuilder.withAwsCloudWatch(any(CloudWatchClient.class))).thenReturn(mockBuilder);
+        when(mockBuilder.withMetric(any(AWSMetric.class))).thenReturn(mockBuilder);
+        when(mockBuilder.withMetricsTimeRange(any(MetricsTimeRange.class))).thenReturn(mockBuilder);
+        when(mockBuilder.withRegion(anyString())).thenReturn(mockBuilder);
+        when(mockBuilder.withStatType(any(StatisticType.class))).thenReturn(mockBuilder);
+        when(mockBuilder.withStatTypes(any(List.class))).thenReturn(mockBuilder);
+        when(mockBuilder.withAWSRequestCounter(requestsCounter)).thenReturn(mockBuilder);
+        when(mockBuilder.withPrefix(anyString())).thenReturn(mockBuilder);
+        when(mockBuilder.withCycleDeadline(any())).thenReturn(mockBuilder);
+        when(mockBuilder.withRateLimiter(any())).thenReturn(mockBuilder);
+        when(mockBuilder.withAdaptiveRateController(any())).thenReturn(mockBuilder);
+        when(mockBuilder.build()).thenAnswer(invocation -> {
+            maxPendingTasks.accumulateAndGet(pendingTasks.incrementAndGet(), Math::max);
+
+            MetricStatisticCollector mockMetricStatsCollector = mock(MetricStatisticCollector.class);
+            when(mockMetricStatsCollector.call()).thenAnswer(callInvocation -> {
+                pendingTasks.decrementAndGet();
+                return Lists.newArrayList(createTestMetricStatistics(testMetrics.get(0)));
+            });
+
+            return mockMetricStatsCollector;
+        });
+
+        classUnderTest = new RegionMetricStatisticsCollector.Builder()
+                .withMetricsProcessor(mockMetricsProcessor)
+                .withMetricsTimeRange(new MetricsTimeRange())
+                .withAccountName("testAccount")
+                .withRegion("testRegion")
+                .withNoOfMetricThreadsPerRegion(1)
+                .withThreadTimeOut(30)
+                .withRateLimiter(RateLimiter.create(400))
+                .withAWSRequestCounter(requestsCounter)
+                .withPrefix("Custom Metrics|AWS|")
+                .withAmazonCloudWatchConfig(mockAWSCredentials, mockAwsClientConfig)
+                .build();
+
+        RegionMetricStatistics result = classUnderTest.call();
+
+        assertEquals(testMetrics.size(), result.getMetricStatisticsList().size());
+        assertEquals(1, maxPendingTasks.get());
+    }
+
     @Test
     public void testRateLimit() throws Exception {
         when(mockRegionEndpointProvider.getEndpoint(anyString())).thenReturn("test-endpoint");
@@ -191,19 +344,19 @@ public class RegionMetricStatisticsCollectorTest {
 
         MetricStatisticCollector mockMetricStatsCollector1 = mock(MetricStatisticCollector.class);
         MetricStatistic metricStatistic1 = createTestMetricStatistics(testMetrics.get(0));
-        when(mockMetricStatsCollector1.call()).thenReturn(metricStatistic1);
+        when(mockMetricStatsCollector1.call()).thenReturn(Lists.newArrayList(metricStatistic1));
 
         MetricStatisticCollector mockMetricStatsCollector2 = mock(MetricStatisticCollector.class);
         MetricStatistic metricStatistic2 = createTestMetricStatistics(testMetrics.get(1));
-        when(mockMetricStatsCollector2.call()).thenReturn(metricStatistic2);
+        when(mockMetricStatsCollector2.call()).thenReturn(Lists.newArrayList(metricStatistic2));
 
         MetricStatisticCollector mockMetricStatsCollector3 = mock(MetricStatisticCollector.class);
         MetricStatistic metricStatistic3 = createTestMetricStatistics(testMetrics.get(2));
-        when(mockMetricStatsCollector3.call()).thenReturn(metricStatistic3);
+        when(mockMetricStatsCollector3.call()).thenReturn(Lists.newArrayList(metricStatistic3));
 
         MetricStatisticCollector mockMetricStatsCollector4 = mock(MetricStatisticCollector.class);
         MetricStatistic metricStatistic4 = createTestMetricStatistics(testMetrics.get(3));
-        when(mockMetricStatsCollector4.call()).thenReturn(metricStatistic4);
+        when(mockMetricStatsCollector4.call()).thenReturn(Lists.newArrayList(metricStatistic4));
 
         // simulate creation of metric stats collector
         MetricStatisticCollector.Builder mockBuilder = mock(MetricStatisticCollector.Builder.class);
@@ -214,8 +367,12 @@ public class RegionMetricStatisticsCollectorTest {
         when(mockBuilder.withMetricsTimeRange(any(MetricsTimeRange.class))).thenReturn(mockBuilder);
         when(mockBuilder.withRegion(anyString())).thenReturn(mockBuilder);
         when(mockBuilder.withStatType(any(StatisticType.class))).thenReturn(mockBuilder);
+        when(mockBuilder.withStatTypes(any(List.class))).thenReturn(mockBuilder);
         when(mockBuilder.withAWSRequestCounter(requestsCounter)).thenReturn(mockBuilder);
         when(mockBuilder.withPrefix(anyString())).thenReturn(mockBuilder);
+        when(mockBuilder.withCycleDeadline(any())).thenReturn(mockBuilder);
+        when(mockBuilder.withRateLimiter(any())).thenReturn(mockBuilder);
+        when(mockBuilder.withAdaptiveRateController(any())).thenReturn(mockBuilder);
         when(mockBuilder.build()).thenReturn(mockMetricStatsCollector1, mockMetricStatsCollector2, mockMetricStatsCollector3, mockMetricStatsCollector4);
 
         String testRegion = "testRegion";
@@ -280,11 +437,11 @@ public class RegionMetricStatisticsCollectorTest {
 
         MetricStatisticCollector mockMetricStatsCollector1 = mock(MetricStatisticCollector.class);
         MetricStatistic metricStatistic1 = createTestMetricStatistics(testMetrics.get(0));
-        when(mockMetricStatsCollector1.call()).thenReturn(metricStatistic1);
+        when(mockMetricStatsCollector1.call()).thenReturn(Lists.newArrayList(metricStatistic1));
 
         MetricStatisticCollector mockMetricStatsCollector2 = mock(MetricStatisticCollector.class);
         MetricStatistic metricStatistic2 = createTestMetricStatistics(testMetrics.get(1));
-        when(mockMetricStatsCollector2.call()).thenReturn(metricStatistic2);
+        when(mockMetricStatsCollector2.call()).thenReturn(Lists.newArrayList(metricStatistic2));
 
         // simulate creation of metric stats collector
         MetricStatisticCollector.Builder mockBuilder = mock(MetricStatisticCollector.Builder.class);
@@ -295,8 +452,12 @@ public class RegionMetricStatisticsCollectorTest {
         when(mockBuilder.withMetricsTimeRange(any(MetricsTimeRange.class))).thenReturn(mockBuilder);
         when(mockBuilder.withRegion(anyString())).thenReturn(mockBuilder);
         when(mockBuilder.withStatType(any(StatisticType.class))).thenReturn(mockBuilder);
+        when(mockBuilder.withStatTypes(any(List.class))).thenReturn(mockBuilder);
         when(mockBuilder.withAWSRequestCounter(requestsCounter)).thenReturn(mockBuilder);
         when(mockBuilder.withPrefix(anyString())).thenReturn(mockBuilder);
+        when(mockBuilder.withCycleDeadline(any())).thenReturn(mockBuilder);
+        when(mockBuilder.withRateLimiter(any())).thenReturn(mockBuilder);
+        when(mockBuilder.withAdaptiveRateController(any())).thenReturn(mockBuilder);
         when(mockBuilder.build()).thenReturn(mockMetricStatsCollector1, mockMetricStatsCollector2);
 
         String testRegion = "testRegion";
@@ -350,6 +511,18 @@ public class RegionMetricStatisticsCollectorTest {
         return testMetrics;
     }
 
+    @Test
+    public void testRateLimitOfApiInUse() {
+        MetricsConfig metricsConfig = new MetricsConfig();
+        assertEquals(400, RegionMetricStatisticsCollector.getRateLimit(metricsConfig));
+
+        metricsConfig.setMetricsCollectionMode(MetricsConfig.MetricsCollectionMode.GET_METRIC_DATA.getMode());
+        assertEquals(50, RegionMetricStatisticsCollector.getRateLimit(metricsConfig));
+
+        metricsConfig.setGetMetricDataRateLimit(20);
+        assertEquals(20, RegionMetricStatisticsCollector.getRateLimit(metricsConfig));
+    }
+
     private MetricStatistic createTestMetricStatistics(AWSMetric metric) {
         MetricStatistic metricStatistic = new MetricStatistic();
         metricStatistic.setMetric(metric);
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2018. AppDynamics LLC and its affiliates.
+ * All Rights Reserved.
+ * This is unpublished proprietary source code of AppDynamics LLC and its affiliates.
+ * The copyright notice above does not evidence any actual or intended publication of such source code.
+ */
+
+package com.appdynamics.extensions.aws.collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.appdynamics.extensions.aws.metric.AccountMetricStatistics;
+import com.appdynamics.extensions.aws.metric.NamespaceMetricStatistics;
+import com.appdynamics.extensions.aws.metric.RegionMetricStatistics;
+import com.appdynamics.extensions.aws.metric.processors.MetricsProcessor;
+import com.appdynamics.extensions.metrics.Metric;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.List;
+
+public class RegionMetricsWriterTest {
+
+    @Test
+    public void testRegionIsConvertedAndWrittenOnItsOwn() {
+        MetricsProcessor metricsProcessor = mock(MetricsProcessor.class);
+        MetricSink metricSink = mock(MetricSink.class);
+        List<Metric> metrics = Lists.newArrayList(new Metric("testMetric", "1", "testAccount|us-east-1|testMetric"));
+
+        ArgumentCaptor<NamespaceMetricStatistics> namespaceStats = ArgumentCaptor.forClass(NamespaceMetricStatistics.class);
+        when(metricsProcessor.getNamespace()).thenReturn("testNamespace");
+        when(metricsProcessor.createMetricStatsMapForUpload(namespaceStats.capture())).thenReturn(metrics);
+
+        RegionMetricStatistics regionStats = new RegionMetricStatistics();
+        regionStats.setRegion("us-east-1");
+
+        assertNull(new RegionMetricsWriter(metricSink, metricsProcessor).write("testAccount", regionStats));
+
+        verify(metricSink).write(metrics);
+        assertEquals("testNamespace", namespaceStats.getValue().getNamespace());
+
+        AccountMetricStatistics accountStats = namespaceStats.getValue().getAccountMetricStatisticsList().get(0);
+        assertEquals("testAccount", accountStats.getAccountName());
+        assertSame(regionStats, accountStats.getRegionMetricStatisticsList().get(0));
+    }
+
+    @Test
+    public void testFailedRegionIsNotWritten() {
+        MetricsProcessor metricsProcessor = mock(MetricsProcessor.class);
+        MetricSink metricSink = mock(MetricSink.class);
+
+        assertNull(new RegionMetricsWriter(metricSink, metricsProcessor).write("testAccount", null));
+
+        verify(metricsProcessor, never()).createMetricStatsMapForUpload(any(NamespaceMetricStatistics.class));
+        verify(metricSink, never()).write(any());
+    }
+}
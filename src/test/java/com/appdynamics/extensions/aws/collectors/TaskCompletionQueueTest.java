@@ -0,0 +1,96 @@
+/*
+ * Copyright 2018. AppDynamics LLC and its affiliates.
+ * All Rights Reserved.
+ * This is unpublished proprietary source code of AppDynamics LLC and its affiliates.
+ * The copyright notice above does not evidence any actual or intended publication of such source code.
+ */
+
+package com.appdynamics.extensions.aws.collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class TaskCompletionQueueTest {
+
+    private ExecutorService executorService;
+
+    @Before
+    public void setUp() {
+        executorService = Executors.newFixedThreadPool(3);
+    }
+
+    @After
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testResultsAreReturnedInTaskOrder() {
+        TaskCompletionQueue<String> tasks = new TaskCompletionQueue<String>();
+        CountDownLatch secondTaskDone = new CountDownLatch(1);
+
+        executorService.execute(tasks.newTask(() -> {
+            secondTaskDone.await();
+            return "first";
+        }));
+        executorService.execute(tasks.newTask(() -> {
+            secondTaskDone.countDown();
+            return "second";
+        }));
+
+        List<String> results = tasks.collect(TaskCompletionQueue.deadlineIn(10));
+
+        assertEquals("first", results.get(0));
+        assertEquals("second", results.get(1));
+    }
+
+    @Test
+    public void testFailedTaskIsNotWaitedFor() {
+        TaskCompletionQueue<String> tasks = new TaskCompletionQueue<String>();
+
+        executorService.execute(tasks.newTask(() -> {
+            throw new IllegalStateException("failed");
+        }));
+        executorService.execute(tasks.newTask(() -> "done"));
+
+        List<String> results = tasks.collect(TaskCompletionQueue.deadlineIn(10));
+
+        assertNull(results.get(0));
+        assertEquals("done", results.get(1));
+    }
+
+    @Test
+    public void testAllTasksShareTheDeadline() {
+        TaskCompletionQueue<String> tasks = new TaskCompletionQueue<String>();
+        CountDownLatch never = new CountDownLatch(1);
+
+        executorService.execute(tasks.newTask(() -> "done"));
+
+        for (int index = 0; index < 2; index++) {
+            executorService.execute(tasks.newTask(() -> {
+                never.await();
+                return "late";
+            }));
+        }
+
+        long start = System.nanoTime();
+        List<String> results = tasks.collect(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals("done", results.get(0));
+        assertNull(results.get(1));
+        assertNull(results.get(2));
+        assertTrue(elapsedMillis < 2000);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2018. AppDynamics LLC and its affiliates.
+ * All Rights Reserved.
+ * This is unpublished proprietary source code of AppDynamics LLC and its affiliates.
+ * The copyright notice above does not evidence any actual or intended publication of such source code.
+ */
+
+package com.appdynamics.extensions.aws.metric;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+public class ConcurrentAppendListTest {
+
+    @Test
+    public void testElementsAreKeptInOrderAcrossChunks() {
+        ConcurrentAppendList<Integer> list = new ConcurrentAppendList<Integer>();
+
+        for (int index = 0; index < 10000; index++) {
+            list.add(index);
+        }
+
+        assertEquals(10000, list.size());
+
+        int expected = 0;
+        for (Integer element : list) {
+            assertEquals(Integer.valueOf(expected), list.get(expected));
+            assertEquals(Integer.valueOf(expected++), element);
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testGetBeyondSizeThrowsException() {
+        ConcurrentAppendList<Integer> list = new ConcurrentAppendList<Integer>();
+        list.add(1);
+
+        list.get(1);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testRemoveIsNotSupported() {
+        ConcurrentAppendList<Integer> list = new ConcurrentAppendList<Integer>();
+        list.add(1);
+
+        list.remove(0);
+    }
+
+    @Test
+    public void testConcurrentAppendsAreAllKept() throws Exception {
+        ConcurrentAppendList<String> list = new ConcurrentAppendList<String>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<Thread>();
+
+        for (int threadIndex = 0; threadIndex < 4; threadIndex++) {
+            String prefix = "thread" + threadIndex + "-";
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                for (int index = 0; index < 5000; index++) {
+                    list.add(prefix + index);
+                }
+            });
+
+            thread.start();
+            threads.add(thread);
+        }
+
+        start.countDown();
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(20000, list.size());
+
+        // each thread's elements are in the order it appended them
+        Map<String, Integer> nextIndexes = new HashMap<String, Integer>();
+        for (String element : list) {
+            String prefix = element.substring(0, element.indexOf('-') + 1);
+            int index = Integer.parseInt(element.substring(prefix.length()));
+            assertEquals(nextIndexes.getOrDefault(prefix, 0).intValue(), index);
+            nextIndexes.put(prefix, index + 1);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2018. AppDynamics LLC and its affiliates.
+ * All Rights Reserved.
+ * This is unpublished proprietary source code of AppDynamics LLC and its affiliates.
+ * The copyright notice above does not evidence any actual or intended publication of such source code.
+ */
+
+package com.appdynamics.extensions.aws.metric.processors;
+
+import com.google.common.collect.Lists;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import software.amazon.awssdk.services.cloudwatch.model.Dimension;
+import software.amazon.awssdk.services.cloudwatch.model.Metric;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DiscoverySnapshotFileTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testWrittenMetricsAreReadBack() throws Exception {
+        Path snapshotFile = temporaryFolder.getRoot().toPath().resolve("snapshots/discovery-snapshot.gz");
+
+        Map<String, List<Metric>> metricsByKey = new HashMap<String, List<Metric>>();
+        metricsByKey.put("account1|us-east-1|AWS/EC2|InstanceId=null,", Lists.newArrayList(
+                Metric.builder().namespace("AWS/EC2").metricName("CPUUtilization")
+                        .dimensions(Dimension.builder().name("InstanceId").value("i-1").build()).build(),
+                Metric.builder().namespace("AWS/EC2").metricName("NetworkIn")
+                        .dimensions(Dimension.builder().name("InstanceId").value("i-1").build(),
+                                Dimension.builder().name("AutoScalingGroupName").value("asg-1").build()).build()));
+        metricsByKey.put("account1|us-west-2|AWS/EBS|", Lists.<Metric>newArrayList());
+
+        DiscoverySnapshotFile.write(snapshotFile, metricsByKey);
+
+        assertEquals(metricsByKey, DiscoverySnapshotFile.read(snapshotFile));
+
+        metricsByKey.remove("account1|us-west-2|AWS/EBS|");
+        DiscoverySnapshotFile.write(snapshotFile, metricsByKey);
+
+        assertEquals(metricsByKey, DiscoverySnapshotFile.read(snapshotFile));
+    }
+
+    @Test
+    public void testMissingFileHasNoMetrics() throws Exception {
+        assertTrue(DiscoverySnapshotFile.read(temporaryFolder.getRoot().toPath().resolve("missing.gz")).isEmpty());
+    }
+}
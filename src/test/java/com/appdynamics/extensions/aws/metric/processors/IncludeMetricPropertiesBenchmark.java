@@ -0,0 +1,100 @@
+/*
+ * Copyright 2018. AppDynamics LLC and its affiliates.
+ * All Rights Reserved.
+ * This is unpublished proprietary source code of AppDynamics LLC and its affiliates.
+ * The copyright notice above does not evidence any actual or intended publication of such source code.
+ */
+
+package com.appdynamics.extensions.aws.metric.processors;
+
+import com.appdynamics.extensions.aws.config.IncludeMetric;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metric properties of 1000 metrics, of 50 include metrics with two statistics each,
+ * built per metric as before and shared through {@link IncludeMetricProperties}.
+ * <p>
+ * Run with the test classpath, e.g. from the IDE, through {@link #main}, which adds
+ * the GC profiler: compare the gc.alloc.rate.norm of both benchmarks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IncludeMetricPropertiesBenchmark {
+
+    private static final String[] STAT_SUFFIXES = {"Average", "Maximum"};
+
+    private List<IncludeMetric> includeMetrics;
+
+    @Setup
+    public void setUp() {
+        includeMetrics = new ArrayList<IncludeMetric>();
+
+        for (int index = 0; index < 500; index++) {
+            IncludeMetric includeMetric = new IncludeMetric();
+            includeMetric.setName("Metric" + index / 10);
+            includeMetric.setAlias("Alias" + index / 10);
+            includeMetric.setStatType("ave");
+            includeMetric.setAggregationType("AVERAGE");
+            includeMetric.setTimeRollUpType("AVERAGE");
+            includeMetric.setClusterRollUpType("INDIVIDUAL");
+            includeMetrics.add(index % 10 == 0 ? includeMetric : includeMetrics.get(index - index % 10));
+        }
+    }
+
+    @Benchmark
+    public void propertiesPerMetric(Blackhole blackhole) {
+        for (IncludeMetric includeMetric : includeMetrics) {
+            for (String statSuffix : STAT_SUFFIXES) {
+                Map<String, Object> metricProperties = new HashMap<>();
+                metricProperties.put("alias", includeMetric.getAlias() != null ?
+                        MetricsProcessorHelper.withStatSuffix(includeMetric.getAlias(), statSuffix) : null);
+                metricProperties.put("multiplier", includeMetric.getMultiplier());
+                metricProperties.put("aggregationType", includeMetric.getAggregationType());
+                metricProperties.put("timeRollUpType", includeMetric.getTimeRollUpType());
+                metricProperties.put("clusterRollUpType", includeMetric.getClusterRollUpType());
+                metricProperties.put("delta", includeMetric.isDelta());
+                blackhole.consume(metricProperties);
+            }
+        }
+    }
+
+    @Benchmark
+    public void sharedProperties(Blackhole blackhole) {
+        for (IncludeMetric includeMetric : includeMetrics) {
+            for (String statSuffix : STAT_SUFFIXES) {
+                blackhole.consume(IncludeMetricProperties.forStatistic(includeMetric, statSuffix));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(IncludeMetricPropertiesBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
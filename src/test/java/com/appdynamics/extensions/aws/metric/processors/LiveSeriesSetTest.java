@@ -0,0 +1,77 @@
+/*
+ * Copyright 2018. AppDynamics LLC and its affiliates.
+ * All Rights Reserved.
+ * This is unpublished proprietary source code of AppDynamics LLC and its affiliates.
+ * The copyright notice above does not evidence any actual or intended publication of such source code.
+ */
+
+package com.appdynamics.extensions.aws.metric.processors;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+import software.amazon.awssdk.services.cloudwatch.model.Dimension;
+import software.amazon.awssdk.services.cloudwatch.model.Metric;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LiveSeriesSetTest {
+
+    private static final long FULL_DISCOVERY_INTERVAL = TimeUnit.HOURS.toNanos(24);
+
+    private static final Metric RUNNING_INSTANCE = createMetric("i-running");
+
+    private static final Metric TERMINATED_INSTANCE = createMetric("i-terminated");
+
+    private static final Metric NEW_INSTANCE = createMetric("i-new");
+
+    @Test
+    public void testInactiveSeriesAreEvictedAndNotAddedBackByFullListing() {
+        LiveSeriesSet liveSeriesSet = new LiveSeriesSet();
+        long now = 0;
+
+        List<Metric> metrics = liveSeriesSet.discover(lister(
+                Lists.newArrayList(RUNNING_INSTANCE, TERMINATED_INSTANCE),
+                Lists.newArrayList(RUNNING_INSTANCE)), FULL_DISCOVERY_INTERVAL, now);
+
+        assertEquals(2, metrics.size());
+
+        now += LiveSeriesSet.RECENTLY_ACTIVE_NANOS + 1;
+        metrics = liveSeriesSet.discover(lister(null,
+                Lists.newArrayList(RUNNING_INSTANCE, NEW_INSTANCE)), FULL_DISCOVERY_INTERVAL, now);
+
+        assertEquals(Lists.newArrayList(RUNNING_INSTANCE, NEW_INSTANCE), metrics);
+
+        now += FULL_DISCOVERY_INTERVAL;
+        metrics = liveSeriesSet.discover(lister(
+                Lists.newArrayList(RUNNING_INSTANCE, TERMINATED_INSTANCE, NEW_INSTANCE),
+                Lists.newArrayList(RUNNING_INSTANCE, NEW_INSTANCE)), FULL_DISCOVERY_INTERVAL, now);
+
+        assertTrue(metrics.contains(RUNNING_INSTANCE));
+        assertTrue(metrics.contains(NEW_INSTANCE));
+        assertFalse(metrics.contains(TERMINATED_INSTANCE));
+    }
+
+    private static MetricDiscoveryCache.MetricsLister lister(List<Metric> allMetrics,
+                                                             List<Metric> recentlyActiveMetrics) {
+        return recentlyActiveOnly -> {
+            if (!recentlyActiveOnly && allMetrics == null) {
+                throw new AssertionError("Unexpected full listing");
+            }
+
+            return recentlyActiveOnly ? recentlyActiveMetrics : allMetrics;
+        };
+    }
+
+    private static Metric createMetric(String instanceId) {
+        return Metric.builder()
+                .namespace("AWS/EC2")
+                .metricName("CPUUtilization")
+                .dimensions(Dimension.builder().name("InstanceId").value(instanceId).build())
+                .build();
+    }
+}
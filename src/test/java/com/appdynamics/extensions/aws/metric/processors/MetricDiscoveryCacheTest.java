@@ -0,0 +1,181 @@
+/*
+ * Copyright 2018. AppDynamics LLC and its affiliates.
+ * All Rights Reserved.
+ * This is unpublished proprietary source code of AppDynamics LLC and its affiliates.
+ * The copyright notice above does not evidence any actual or intended publication of such source code.
+ */
+
+package com.appdynamics.extensions.aws.metric.processors;
+
+import com.google.common.collect.Lists;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import software.amazon.awssdk.services.cloudwatch.model.DimensionFilter;
+import software.amazon.awssdk.services.cloudwatch.model.Metric;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MetricDiscoveryCacheTest {
+
+    private static final List<DimensionFilter> DIMENSIONS = Lists.newArrayList(
+            DimensionFilter.builder().name("InstanceId").build());
+
+    private MetricDiscoveryCache discoveryCache = MetricDiscoveryCache.getInstance();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Before
+    public void setUp() {
+        discoveryCache.reset(null);
+    }
+
+    @After
+    public void tearDown() {
+        discoveryCache.reset(null);
+    }
+
+    @Test
+    public void testMetricsAreListedEveryTimeOutsideOfScope() {
+        AtomicInteger loads = new AtomicInteger();
+
+        discoveryCache.getMetrics("AWS/EC2", DIMENSIONS, recentlyActiveOnly -> listMetrics(loads, "CPUUtilization"));
+        discoveryCache.getMetrics("AWS/EC2", DIMENSIONS, recentlyActiveOnly -> listMetrics(loads, "CPUUtilization"));
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testMetricsAreListedOncePerAccountAndRegionWithinTtl() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            List<Metric> metrics = discoveryCache.withScope(scope("us-east-1", 5, TimeUnit.MINUTES), () ->
+                    discoveryCache.getMetrics("AWS/EC2", DIMENSIONS, recentlyActiveOnly -> listMetrics(loads, "CPUUtilization")));
+
+            assertEquals("CPUUtilization", metrics.get(0).metricName());
+        }
+
+        assertEquals(1, loads.get());
+
+        discoveryCache.withScope(scope("us-west-2", 5, TimeUnit.MINUTES), () ->
+                discoveryCache.getMetrics("AWS/EC2", DIMENSIONS, recentlyActiveOnly -> listMetrics(loads, "CPUUtilization")));
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testZeroTtlDisablesCache() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+
+        for (int i = 0; i < 2; i++) {
+            discoveryCache.withScope(scope("us-east-1", 0, TimeUnit.MINUTES), () ->
+                    discoveryCache.getMetrics("AWS/EC2", DIMENSIONS, recentlyActiveOnly -> listMetrics(loads, "CPUUtilization")));
+        }
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testExpiredMetricsAreServedWhileRefreshing() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch refreshStarted = new CountDownLatch(1);
+        CountDownLatch refreshAllowed = new CountDownLatch(1);
+
+        discoveryCache.withScope(scope("us-east-1", 1, TimeUnit.NANOSECONDS), () ->
+                discoveryCache.getMetrics("AWS/EBS", DIMENSIONS, recentlyActiveOnly -> listMetrics(loads, "VolumeReadOps")));
+
+        List<Metric> metrics = discoveryCache.withScope(scope("us-east-1", 1, TimeUnit.NANOSECONDS), () ->
+                discoveryCache.getMetrics("AWS/EBS", DIMENSIONS, recentlyActiveOnly -> {
+                    refreshStarted.countDown();
+                    awaitQuietly(refreshAllowed);
+                    return listMetrics(loads, "VolumeWriteOps");
+                }));
+
+        assertEquals("VolumeReadOps", metrics.get(0).metricName());
+
+        refreshStarted.await(5, TimeUnit.SECONDS);
+        refreshAllowed.countDown();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        do {
+            Thread.sleep(10);
+            metrics = discoveryCache.withScope(scope("us-east-1", 1, TimeUnit.HOURS), () ->
+                    discoveryCache.getMetrics("AWS/EBS", DIMENSIONS, recentlyActiveOnly -> listMetrics(loads, "VolumeIdleTime")));
+        } while ("VolumeReadOps".equals(metrics.get(0).metricName()) && System.currentTimeMillis() < deadline);
+
+        assertEquals("VolumeWriteOps", metrics.get(0).metricName());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testIncrementalDiscoveryListsRecentlyActiveMetricsBetweenFullListings() throws Exception {
+        AtomicInteger fullListings = new AtomicInteger();
+        AtomicInteger recentlyActiveListings = new AtomicInteger();
+        MetricDiscoveryCache.Scope scope = new MetricDiscoveryCache.Scope("account1", "us-east-1", 0,
+                true, TimeUnit.HOURS.toNanos(24), 0);
+
+        for (int i = 0; i < 3; i++) {
+            discoveryCache.withScope(scope, () -> discoveryCache.getMetrics("AWS/EC2", DIMENSIONS,
+                    recentlyActiveOnly -> listMetrics(recentlyActiveOnly ? recentlyActiveListings : fullListings,
+                            "CPUUtilization")));
+        }
+
+        assertEquals(1, fullListings.get());
+        assertEquals(3, recentlyActiveListings.get());
+    }
+
+    @Test
+    public void testRestoredMetricsAreServedWhileListedAgain() throws Exception {
+        Path snapshotFile = temporaryFolder.getRoot().toPath().resolve("discovery-snapshot.gz");
+        Map<String, List<Metric>> savedMetrics = new HashMap<String, List<Metric>>();
+        savedMetrics.put("account1|us-east-1|AWS/EBS|InstanceId=null,",
+                Lists.newArrayList(Metric.builder().metricName("VolumeReadOps").build()));
+        DiscoverySnapshotFile.write(snapshotFile, savedMetrics);
+
+        discoveryCache.reset(snapshotFile.toString());
+
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch refreshed = new CountDownLatch(1);
+
+        List<Metric> metrics = discoveryCache.withScope(scope("us-east-1", 1, TimeUnit.HOURS), () ->
+                discoveryCache.getMetrics("AWS/EBS", DIMENSIONS, recentlyActiveOnly -> {
+                    List<Metric> listedMetrics = listMetrics(loads, "VolumeWriteOps");
+                    refreshed.countDown();
+                    return listedMetrics;
+                }));
+
+        assertEquals("VolumeReadOps", metrics.get(0).metricName());
+        assertTrue(refreshed.await(5, TimeUnit.SECONDS));
+        assertEquals(1, loads.get());
+    }
+
+    private static MetricDiscoveryCache.Scope scope(String region, long ttl, TimeUnit unit) {
+        return new MetricDiscoveryCache.Scope("account1", region, unit.toNanos(ttl), false, 0, 0);
+    }
+
+    private static List<Metric> listMetrics(AtomicInteger loads, String metricName) {
+        loads.incrementAndGet();
+        return Lists.newArrayList(Metric.builder().metricName(metricName).build());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
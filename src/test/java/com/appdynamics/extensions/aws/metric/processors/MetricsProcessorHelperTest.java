@@ -9,6 +9,11 @@ package com.appdynamics.extensions.aws.metric.processors;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 import com.appdynamics.extensions.aws.config.IncludeMetric;
 import com.appdynamics.extensions.aws.dto.AWSMetric;
@@ -17,16 +22,24 @@ import com.appdynamics.extensions.aws.metric.MetricStatistic;
 import com.appdynamics.extensions.aws.metric.NamespaceMetricStatistics;
 import com.appdynamics.extensions.aws.metric.RegionMetricStatistics;
 import com.appdynamics.extensions.aws.metric.StatisticType;
+import com.appdynamics.extensions.aws.predicate.MultiDimensionPredicate;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import org.junit.Test;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchClient;
 import software.amazon.awssdk.services.cloudwatch.model.Dimension;
+import software.amazon.awssdk.services.cloudwatch.model.DimensionFilter;
+import software.amazon.awssdk.services.cloudwatch.model.ListMetricsRequest;
+import software.amazon.awssdk.services.cloudwatch.model.ListMetricsResponse;
 import software.amazon.awssdk.services.cloudwatch.model.Metric;
+import software.amazon.awssdk.services.cloudwatch.paginators.ListMetricsIterable;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
 
 public class MetricsProcessorHelperTest {
 
@@ -112,6 +125,51 @@ public class MetricsProcessorHelperTest {
         }
     }
 
+    @Test
+    public void testCreateMetricStatsMapForUploadReusesMetricPathsOfSameDictionary() {
+        NamespaceMetricStatistics testNamespaceStats = createTestNamespaceMetricStatistics("testNamespace");
+        Map<String, String> testDimensionDictionary = Maps.newHashMap();
+        testDimensionDictionary.put("testDimesionName", "My Test Dimension");
+
+        String metricPath = MetricsProcessorHelper.createMetricStatsMapForUpload(
+                testNamespaceStats, testDimensionDictionary, true).get(0).getMetricPath();
+
+        assertSame(metricPath, MetricsProcessorHelper.createMetricStatsMapForUpload(
+                testNamespaceStats, testDimensionDictionary, true).get(0).getMetricPath());
+
+        Map<String, String> reloadedDimensionDictionary = Maps.newHashMap();
+        reloadedDimensionDictionary.put("testDimesionName", "My Reloaded Dimension");
+
+        assertEquals("Custom Metrics|AWS|testNamespace|account0|region0|My Reloaded Dimension|testDimesionValue|testMetric0",
+                MetricsProcessorHelper.createMetricStatsMapForUpload(
+                        testNamespaceStats, reloadedDimensionDictionary, true).get(0).getMetricPath());
+    }
+
+    @Test
+    public void testCreateMetricStatsMapForUploadSharesPropertiesOfIncludeMetric() {
+        NamespaceMetricStatistics testNamespaceStats = createTestNamespaceMetricStatistics("testNamespace");
+        IncludeMetric includeMetric = new IncludeMetric();
+        includeMetric.setName("testMetric");
+        includeMetric.setAlias("Test Metric");
+
+        for (AccountMetricStatistics accountStats : testNamespaceStats.getAccountMetricStatisticsList()) {
+            for (RegionMetricStatistics regionStats : accountStats.getRegionMetricStatisticsList()) {
+                for (MetricStatistic metricStats : regionStats.getMetricStatisticsList()) {
+                    metricStats.getMetric().setIncludeMetric(includeMetric);
+                    metricStats.setStatSuffix("Maximum");
+                }
+            }
+        }
+
+        List<com.appdynamics.extensions.metrics.Metric> result = MetricsProcessorHelper.createMetricStatsMapForUpload(
+                testNamespaceStats, null, true);
+
+        Map<String, ?> metricProperties = IncludeMetricProperties.forStatistic(includeMetric, "Maximum");
+        assertEquals("Test Metric (Maximum)", metricProperties.get("alias"));
+        assertSame(metricProperties, IncludeMetricProperties.forStatistic(includeMetric, "Maximum"));
+        assertEquals(8, result.size());
+    }
+
     @Test
     public void testCreateMetricStatsMapForUploadNotUsingNamespaceAsPrefixAndNullDimensionDictionary() {
         NamespaceMetricStatistics testNamespaceStats = createTestNamespaceMetricStatistics("testNamespace");
@@ -133,6 +191,150 @@ public class MetricsProcessorHelperTest {
         }
     }
 
+    @Test
+    public void testFilterMetricsWithRegexInclude() {
+        IncludeMetric networkMetrics = new IncludeMetric();
+        networkMetrics.setName("regex:Network(In|Out)");
+        networkMetrics.setStatType("sum");
+
+        IncludeMetric networkIn = new IncludeMetric();
+        networkIn.setName("NetworkIn");
+
+        List<Metric> testMetrics = Lists.newArrayList(
+                Metric.builder().metricName("NetworkIn").build(),
+                Metric.builder().metricName("CPUUtilization").build(),
+                Metric.builder().metricName("NetworkOut").build());
+
+        List<AWSMetric> result = MetricsProcessorHelper.filterMetrics(testMetrics,
+                Lists.newArrayList(networkMetrics, networkIn));
+
+        assertEquals(3, result.size());
+        assertEquals("NetworkIn", result.get(0).getIncludeMetric().getName());
+        assertEquals("sum", result.get(0).getIncludeMetric().getStatType());
+        assertEquals(networkIn, result.get(1).getIncludeMetric());
+        assertEquals("NetworkOut", result.get(2).getIncludeMetric().getName());
+        assertEquals("NetworkOut", result.get(2).getMetric().metricName());
+    }
+
+    @Test
+    public void testFilterMetricsMatchesNamesWithoutPrefixExactly() {
+        IncludeMetric dottedName = new IncludeMetric();
+        dottedName.setName("Disk.Read");
+
+        IncludeMetric repeatedWord = new IncludeMetric();
+        repeatedWord.setName("regex:(\\w+)And\\1");
+
+        List<Metric> testMetrics = Lists.newArrayList(
+                Metric.builder().metricName("Disk.Read").build(),
+                Metric.builder().metricName("DiskXRead").build(),
+                Metric.builder().metricName("disk.read").build(),
+                Metric.builder().metricName("ReadAndRead").build(),
+                Metric.builder().metricName("ReadAndWrite").build());
+
+        List<AWSMetric> result = MetricsProcessorHelper.filterMetrics(testMetrics,
+                Lists.newArrayList(dottedName, repeatedWord));
+
+        assertEquals(2, result.size());
+        assertEquals(dottedName, result.get(0).getIncludeMetric());
+        assertEquals("ReadAndRead", result.get(1).getIncludeMetric().getName());
+    }
+
+    @Test
+    public void testFilterMetricsInParallelKeepsOrder() {
+        IncludeMetric includeMetric = new IncludeMetric();
+        includeMetric.setName("regex:metric\\d*0");
+
+        List<Metric> testMetrics = new ArrayList<>();
+        for (int index = 0; index < 10000; index++) {
+            testMetrics.add(Metric.builder().metricName("metric" + index).build());
+        }
+
+        List<AWSMetric> sequentialResult = MetricsProcessorHelper.filterMetrics(testMetrics,
+                Lists.newArrayList(includeMetric), false);
+        List<AWSMetric> parallelResult = MetricsProcessorHelper.filterMetrics(testMetrics,
+                Lists.newArrayList(includeMetric), true);
+
+        assertEquals(1000, sequentialResult.size());
+        assertEquals(sequentialResult.size(), parallelResult.size());
+
+        for (int index = 0; index < sequentialResult.size(); index++) {
+            assertEquals(sequentialResult.get(index).getMetric(), parallelResult.get(index).getMetric());
+        }
+    }
+
+    @Test
+    public void testLiteralDimensionValuesArePushedDownWithinLimit() throws Exception {
+        CloudWatchClient awsCloudWatch = mock(CloudWatchClient.class);
+        List<ListMetricsRequest> requests = new ArrayList<>();
+
+        when(awsCloudWatch.listMetricsPaginator(any(ListMetricsRequest.class))).thenAnswer(invocation ->
+                new ListMetricsIterable(awsCloudWatch, invocation.getArgument(0)));
+        when(awsCloudWatch.listMetrics(any(ListMetricsRequest.class))).thenAnswer(invocation -> {
+            ListMetricsRequest request = invocation.getArgument(0);
+            requests.add(request);
+
+            String instanceId = request.dimensions().get(0).value();
+            List<Metric> metrics = instanceId != null ? Lists.newArrayList(createInstanceMetric(instanceId)) :
+                    Lists.newArrayList(createInstanceMetric("i-1"), createInstanceMetric("i-2"), createInstanceMetric("i-3"));
+
+            return ListMetricsResponse.builder().metrics(metrics).build();
+        });
+
+        com.appdynamics.extensions.aws.config.Dimension dimension = new com.appdynamics.extensions.aws.config.Dimension();
+        dimension.setName("InstanceId");
+        dimension.setValues(Sets.newHashSet("i-1", "i-2"));
+        MultiDimensionPredicate predicate = new MultiDimensionPredicate(Lists.newArrayList(dimension));
+        List<DimensionFilter> dimensionFilters = Lists.newArrayList(DimensionFilter.builder().name("InstanceId").build());
+
+        List<Metric> metrics = MetricDiscoveryCache.getInstance().withScope(
+                new MetricDiscoveryCache.Scope("account1", "us-east-1", 0, false, 0, 10), () ->
+                        MetricsProcessorHelper.getMetrics(awsCloudWatch, new LongAdder(), "AWS/EC2", dimensionFilters, predicate));
+
+        assertEquals(2, requests.size());
+        assertEquals(2, metrics.size());
+
+        requests.clear();
+        metrics = MetricDiscoveryCache.getInstance().withScope(
+                new MetricDiscoveryCache.Scope("account1", "us-east-1", 0, false, 0, 1), () ->
+                        MetricsProcessorHelper.getMetrics(awsCloudWatch, new LongAdder(), "AWS/EC2", dimensionFilters, predicate));
+
+        assertEquals(1, requests.size());
+        assertNull(requests.get(0).dimensions().get(0).value());
+        assertEquals(3, metrics.size());
+    }
+
+    @Test
+    public void testRemoveDuplicatesOfOverlappingFilters() {
+        IncludeMetric cpuUtilization = new IncludeMetric();
+        cpuUtilization.setName("CPUUtilization");
+
+        IncludeMetric cpuUtilizationMax = new IncludeMetric();
+        cpuUtilizationMax.setName("CPUUtilization");
+        cpuUtilizationMax.setStatType("max");
+
+        Dimension dimension = Dimension.builder().name("InstanceId").value("i-1").build();
+        List<Metric> listedByInstanceId = Lists.newArrayList(Metric.builder().metricName("CPUUtilization")
+                .dimensions(Lists.newArrayList(dimension)).build());
+        List<Metric> listedByInstanceIdValue = Lists.newArrayList(Metric.builder().metricName("CPUUtilization")
+                .dimensions(Lists.newArrayList(dimension)).build());
+
+        List<AWSMetric> metrics = MetricsProcessorHelper.filterMetrics(listedByInstanceId,
+                Lists.newArrayList(cpuUtilization, cpuUtilizationMax));
+        metrics.addAll(MetricsProcessorHelper.filterMetrics(listedByInstanceIdValue,
+                Lists.newArrayList(cpuUtilization)));
+
+        List<AWSMetric> result = MetricsProcessorHelper.removeDuplicates(metrics);
+
+        assertEquals(2, result.size());
+        assertEquals(cpuUtilization, result.get(0).getIncludeMetric());
+        assertEquals(cpuUtilizationMax, result.get(1).getIncludeMetric());
+    }
+
+    private static Metric createInstanceMetric(String instanceId) {
+        return Metric.builder().namespace("AWS/EC2").metricName("CPUUtilization")
+                .dimensions(Dimension.builder().name("InstanceId").value(instanceId).build()).build();
+    }
+
     private NamespaceMetricStatistics createTestNamespaceMetricStatistics(String namespace) {
         NamespaceMetricStatistics namespaceStats = new NamespaceMetricStatistics();
         namespaceStats.setNamespace(namespace);
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2018. AppDynamics LLC and its affiliates.
+ * All Rights Reserved.
+ * This is unpublished proprietary source code of AppDynamics LLC and its affiliates.
+ * The copyright notice above does not evidence any actual or intended publication of such source code.
+ */
+
+package com.appdynamics.extensions.aws.metric.processors;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class SingleFlightTest {
+
+    private SingleFlight<String, String> singleFlight = new SingleFlight<String, String>();
+
+    @Test
+    public void testConcurrentCallsOfSameKeyShareOneCall() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch callStarted = new CountDownLatch(1);
+        CountDownLatch callAllowed = new CountDownLatch(1);
+
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+
+        try {
+            Future<String> first = executorService.submit(() -> singleFlight.execute("AWS/EC2", () -> {
+                calls.incrementAndGet();
+                callStarted.countDown();
+                awaitQuietly(callAllowed);
+                return "metrics";
+            }));
+
+            callStarted.await(5, TimeUnit.SECONDS);
+
+            Future<String> second = executorService.submit(() -> singleFlight.execute("AWS/EC2", () -> {
+                calls.incrementAndGet();
+                return "other metrics";
+            }));
+
+            Thread.sleep(100);
+            callAllowed.countDown();
+
+            assertEquals("metrics", first.get(5, TimeUnit.SECONDS));
+            assertEquals("metrics", second.get(5, TimeUnit.SECONDS));
+            assertEquals(1, calls.get());
+
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCallsAreMadeAgainOnceCompleted() {
+        AtomicInteger calls = new AtomicInteger();
+
+        singleFlight.execute("AWS/EC2", () -> "metrics" + calls.incrementAndGet());
+
+        assertEquals("metrics2", singleFlight.execute("AWS/EC2", () -> "metrics" + calls.incrementAndGet()));
+    }
+
+    @Test
+    public void testErrorIsThrownAndNextCallIsMade() {
+        try {
+            singleFlight.execute("AWS/EC2", () -> {
+                throw new IllegalStateException("Throttled");
+            });
+            fail("Expected the error of the call");
+
+        } catch (IllegalStateException e) {
+            assertEquals("Throttled", e.getMessage());
+        }
+
+        assertEquals("metrics", singleFlight.execute("AWS/EC2", () -> "metrics"));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
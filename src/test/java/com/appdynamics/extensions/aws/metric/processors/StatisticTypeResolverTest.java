@@ -0,0 +1,53 @@
+/*
+ * Copyright 2018. AppDynamics LLC and its affiliates.
+ * All Rights Reserved.
+ * This is unpublished proprietary source code of AppDynamics LLC and its affiliates.
+ * The copyright notice above does not evidence any actual or intended publication of such source code.
+ */
+
+package com.appdynamics.extensions.aws.metric.processors;
+
+import com.appdynamics.extensions.aws.config.IncludeMetric;
+import com.appdynamics.extensions.aws.metric.StatisticType;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class StatisticTypeResolverTest {
+
+    @Test
+    public void testResolverIsBuiltOncePerIncludeMetricList() {
+        List<IncludeMetric> includeMetrics = Lists.newArrayList(createIncludeMetric("Latency", "max"));
+
+        StatisticTypeResolver resolver = StatisticTypeResolver.forIncludeMetrics(includeMetrics);
+
+        assertSame(resolver, StatisticTypeResolver.forIncludeMetrics(includeMetrics));
+        assertNotSame(resolver, StatisticTypeResolver.forIncludeMetrics(Lists.newArrayList(includeMetrics)));
+    }
+
+    @Test
+    public void testFirstMatchingIncludeMetricWins() {
+        StatisticTypeResolver resolver = StatisticTypeResolver.forIncludeMetrics(Lists.newArrayList(
+                createIncludeMetric("Request.*", "sum"),
+                createIncludeMetric("RequestCount", "samplecount"),
+                createIncludeMetric("Invalid(Regex", "min")));
+
+        assertEquals(StatisticType.SUM, resolver.resolve("RequestCount"));
+        assertEquals(StatisticType.SUM, resolver.resolve("requestcount"));
+        assertEquals(StatisticType.MIN, resolver.resolve("Invalid(Regex"));
+        assertEquals(StatisticType.AVE, resolver.resolve("Latency"));
+        assertEquals(StatisticType.AVE, resolver.resolve(null));
+    }
+
+    private static IncludeMetric createIncludeMetric(String name, String statType) {
+        IncludeMetric includeMetric = new IncludeMetric();
+        includeMetric.setName(name);
+        includeMetric.setStatType(statType);
+        return includeMetric;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2018. AppDynamics LLC and its affiliates.
+ * All Rights Reserved.
+ * This is unpublished proprietary source code of AppDynamics LLC and its affiliates.
+ * The copyright notice above does not evidence any actual or intended publication of such source code.
+ */
+
+package com.appdynamics.extensions.aws.predicate;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matching of instance id dimension values against the configured values,
+ * with the previous chain of containsPattern predicates and with {@link DimensionValueMatcher}.
+ * One in ten dimension values is configured.
+ * <p>
+ * Run with the test classpath, e.g. from the IDE, through {@link #main}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DimensionValueMatcherBenchmark {
+
+    @Param({"10", "100", "500"})
+    private int noOfValues;
+
+    private Predicate<CharSequence> containsPatternChain;
+
+    private DimensionValueMatcher dimensionValueMatcher;
+
+    private List<String> dimensionValues;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        List<String> values = new ArrayList<String>();
+
+        for (int index = 0; index < noOfValues; index++) {
+            values.add(createInstanceId(random));
+        }
+
+        Set<String> configuredValues = new HashSet<String>(values);
+        configuredValues.add("asg-web-.*");
+        configuredValues.add("^batch-[0-9]+$");
+
+        for (String value : configuredValues) {
+            Predicate<CharSequence> valuePredicate = Predicates.containsPattern(value);
+            containsPatternChain = containsPatternChain == null ? valuePredicate :
+                    Predicates.or(containsPatternChain, valuePredicate);
+        }
+
+        dimensionValueMatcher = DimensionValueMatcher.compile(configuredValues);
+
+        dimensionValues = new ArrayList<String>();
+        for (int index = 0; index < 1000; index++) {
+            dimensionValues.add(index % 10 == 0 ? values.get(random.nextInt(values.size())) : createInstanceId(random));
+        }
+    }
+
+    @Benchmark
+    public void containsPatternChain(Blackhole blackhole) {
+        for (String dimensionValue : dimensionValues) {
+            blackhole.consume(containsPatternChain.apply(dimensionValue));
+        }
+    }
+
+    @Benchmark
+    public void dimensionValueMatcher(Blackhole blackhole) {
+        for (String dimensionValue : dimensionValues) {
+            blackhole.consume(dimensionValueMatcher.apply(dimensionValue));
+        }
+    }
+
+    private static String createInstanceId(Random random) {
+        return String.format("i-%017x", random.nextLong() & 0xfffffffffffffffL);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(DimensionValueMatcherBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
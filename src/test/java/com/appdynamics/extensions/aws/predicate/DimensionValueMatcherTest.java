@@ -0,0 +1,84 @@
+/*
+ * Copyright 2018. AppDynamics LLC and its affiliates.
+ * All Rights Reserved.
+ * This is unpublished proprietary source code of AppDynamics LLC and its affiliates.
+ * The copyright notice above does not evidence any actual or intended publication of such source code.
+ */
+
+package com.appdynamics.extensions.aws.predicate;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DimensionValueMatcherTest {
+
+    @Test
+    public void testNoValuesMatchNothing() {
+        assertNull(DimensionValueMatcher.compile(null));
+        assertNull(DimensionValueMatcher.compile(Sets.<String>newHashSet()));
+    }
+
+    @Test
+    public void testLiteralValuesMatchWhenContained() {
+        DimensionValueMatcher matcher = DimensionValueMatcher.compile(Sets.newHashSet("i-0abc", "i-0def", "queue"));
+
+        assertTrue(matcher.apply("i-0abc"));
+        assertTrue(matcher.apply("prefix-i-0def-suffix"));
+        assertTrue(matcher.apply("orders-queue"));
+        assertFalse(matcher.apply("i-0ab"));
+        assertFalse(matcher.apply("i-0123"));
+    }
+
+    @Test
+    public void testOnlyAnchoredLiteralsAreExactValues() {
+        DimensionValueMatcher matcher = DimensionValueMatcher.compile(Sets.newHashSet("^i-0abc$", "^i-0def$"));
+
+        assertEquals(Sets.newHashSet("i-0abc", "i-0def"), matcher.getExactValues());
+        assertTrue(matcher.apply("i-0abc"));
+        assertFalse(matcher.apply("prefix-i-0abc"));
+
+        assertNull(DimensionValueMatcher.compile(Sets.newHashSet("^i-0abc$", "i-0def")).getExactValues());
+        assertNull(DimensionValueMatcher.compile(Sets.newHashSet("^i-0.*$")).getExactValues());
+    }
+
+    @Test
+    public void testSameResultsAsContainsPatternChain() {
+        Set<String> values = Sets.newHashSet("i-0abc", "abcab", "bca", "^orders-.*$", "targetgroup/app.*",
+                "(a+)\\1", "x|y", "");
+        List<String> dimensionValues = Lists.newArrayList("i-0abc", "xabcabz", "abca", "orders-eu", "my-orders-eu",
+                "targetgroup/app1/abcd", "aaaa", "y", "z", "");
+
+        DimensionValueMatcher matcher = DimensionValueMatcher.compile(values);
+        Set<String> valuesWithoutEmpty = Sets.newHashSet(values);
+        valuesWithoutEmpty.remove("");
+        DimensionValueMatcher matcherWithoutEmpty = DimensionValueMatcher.compile(valuesWithoutEmpty);
+
+        for (String dimensionValue : dimensionValues) {
+            assertEquals(dimensionValue, containsPatternChain(values).apply(dimensionValue), matcher.apply(dimensionValue));
+            assertEquals(dimensionValue, containsPatternChain(valuesWithoutEmpty).apply(dimensionValue),
+                    matcherWithoutEmpty.apply(dimensionValue));
+        }
+    }
+
+    private static Predicate<CharSequence> containsPatternChain(Set<String> values) {
+        Predicate<CharSequence> predicate = null;
+
+        for (String value : values) {
+            Predicate<CharSequence> valuePredicate = Predicates.containsPattern(value);
+            predicate = predicate == null ? valuePredicate : Predicates.or(predicate, valuePredicate);
+        }
+
+        return predicate;
+    }
+}